@@ -0,0 +1,84 @@
+package bench;
+
+import servlet.EmployeeServlet;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Fires a burst of by-id requests at EmployeeServlet through a fixed-size "container" thread pool,
+// once in blocking mode and once in async mode, against a database with simulated network latency.
+//
+//   java -cp target/benchmarks.jar bench.AsyncLoadTest [requests] [containerThreads] [dbLatencyMs]
+public class AsyncLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int containerThreads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        long latencyMs = args.length > 2 ? Long.parseLong(args[2]) : 20;
+        int rows = 1000;
+
+        // every request has to reach the database
+        System.setProperty("cache.employee.enabled", "false");
+        // admit the whole burst so both modes serve every request
+        System.setProperty("employees.async.queue", String.valueOf(requests));
+        BenchDatabase.start("async", rows, latencyMs);
+        try {
+            for (boolean async : new boolean[] { false, true }) {
+                System.setProperty("employees.async", String.valueOf(async));
+                run(async ? "async" : "blocking", requests, containerThreads, rows);
+            }
+        } finally {
+            BenchDatabase.stop();
+        }
+    }
+
+    private static void run(String mode, int requests, int containerThreads, int rows) throws Exception {
+        EmployeeServlet servlet = new EmployeeServlet();
+        servlet.init();
+        ExecutorService container = Executors.newFixedThreadPool(containerThreads);
+        CountDownLatch done = new CountDownLatch(requests);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            String id = String.valueOf(ThreadLocalRandom.current().nextInt(1, rows + 1));
+            container.execute(() -> {
+                peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                ServletStubs.Response response = ServletStubs.response(new CountingOutputStream());
+                boolean[] async = new boolean[1];
+                Runnable complete = () -> {
+                    if (response.getStatus() >= 500) {
+                        rejected.incrementAndGet();
+                    }
+                    inFlight.decrementAndGet();
+                    done.countDown();
+                };
+                try {
+                    servlet.service(ServletStubs.asyncGet(() -> {
+                        async[0] = true;
+                        complete.run();
+                    }, "id", id), response.proxy);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                if (!"async".equals(mode)) {
+                    complete.run();
+                }
+            });
+        }
+        done.await(5, TimeUnit.MINUTES);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-8s requests=%d containerThreads=%d elapsed=%.2fs throughput=%.0f req/s "
+                        + "peakConcurrent=%d rejected=%d%n",
+                mode, requests, containerThreads, seconds, requests / seconds, peak.get(), rejected.get());
+        container.shutdown();
+        servlet.destroy();
+    }
+}
@@ -0,0 +1,146 @@
+package bench;
+
+import db.ConnectionPool;
+import db.DBConnection;
+import model.Employee;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Embedded H2 database in MySQL mode standing in for the real employees table
+public final class BenchDatabase {
+    public static final String[] DEPARTMENTS = { "IT", "Finance", "HR", "Marketing", "Sales", "Operations" };
+    private static final String[] FIRST_NAMES = { "James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael",
+            "Linda", "David", "Elizabeth", "William", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas",
+            "Sarah", "Charles", "Karen", "Priya", "Wei", "Fatima", "Carlos", "Aisha", "Hiroshi", "Olga", "Mateo" };
+    private static final String[] LAST_NAMES = { "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller",
+            "Davis", "Rodriguez", "Martinez", "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas",
+            "Taylor", "Moore", "Jackson", "Martin", "Lee", "Patel", "Chen", "Kumar", "Nakamura", "Ivanova", "Okafor" };
+
+    private BenchDatabase() {}
+
+    public static void start(String name, int employees) throws SQLException {
+        start(name, employees, 0);
+    }
+
+    // latencyMs > 0 routes every statement through SlowDriver to simulate a remote database
+    public static void start(String name, int employees, long latencyMs) throws SQLException {
+        startReplicated(name, employees, 0, latencyMs, 32);
+    }
+
+    // A primary ("<name>") and read replicas ("<name>_replica1", ...) as separate embedded databases seeded
+    // with the same rows. Nothing copies later writes to the replicas; a test that needs replication has to
+    // apply the changes itself, e.g. through the url(...) of each replica.
+    public static void startReplicated(String name, int employees, int replicas, long latencyMs, int poolSize)
+            throws SQLException {
+        List<ConnectionPool.Config> replicaConfigs = new ArrayList<>();
+        for (int i = 1; i <= replicas; i++) {
+            String url = url(name + "_replica" + i, latencyMs);
+            create(url, employees);
+            replicaConfigs.add(config(url, poolSize));
+        }
+        String url = url(name, latencyMs);
+        create(url, employees);
+        DBConnection.configure(config(url, poolSize), replicaConfigs);
+    }
+
+    // The same rows split by department over separate embedded databases "<name>_shard0", "<name>_shard1", ...,
+    // keeping their ids, as DBConnection.shardFor would place them
+    public static void startSharded(String name, int employees, int shards, long latencyMs, int poolSize)
+            throws SQLException {
+        List<ConnectionPool.Config> configs = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            String url = url(name + "_shard" + i, latencyMs);
+            create(url, 0);
+            configs.add(config(url, poolSize));
+        }
+        DBConnection.configureShards(configs);
+        List<Employee> rows = employees(employees, 42);
+        for (int i = 0; i < shards; i++) {
+            List<Employee> shardRows = new ArrayList<>();
+            for (Employee emp : rows) {
+                if (DBConnection.shardFor(emp.getDepartment()) == i) {
+                    shardRows.add(emp);
+                }
+            }
+            try (Connection conn = DriverManager.getConnection(url(name + "_shard" + i, 0), "sa", "")) {
+                seed(conn, shardRows, true);
+            }
+        }
+    }
+
+    public static String url(String name, long latencyMs) {
+        String url = "jdbc:h2:mem:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        return latencyMs > 0 ? SlowDriver.url(latencyMs, url) : url;
+    }
+
+    private static ConnectionPool.Config config(String url, int poolSize) {
+        ConnectionPool.Config config = new ConnectionPool.Config(url, "sa", "");
+        config.minSize = Math.min(4, poolSize);
+        config.maxSize = poolSize;
+        config.leakThresholdMs = 0;
+        return config;
+    }
+
+    public static void stop() {
+        DBConnection.shutdown();
+    }
+
+    private static void create(String url, int employees) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url, "sa", "")) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP TABLE IF EXISTS employees");
+                stmt.execute("CREATE TABLE employees ("
+                        + "id INT AUTO_INCREMENT PRIMARY KEY, "
+                        + "name VARCHAR(50) NOT NULL, "
+                        + "department VARCHAR(50) NOT NULL, "
+                        + "salary DECIMAL(10,2) NOT NULL)");
+                stmt.execute("CREATE INDEX idx_employees_department ON employees (department, id)");
+            }
+            seed(conn, employees(employees, 42), false);
+        }
+    }
+
+    private static void seed(Connection conn, List<Employee> rows, boolean withIds) throws SQLException {
+        String sql = withIds
+                ? "INSERT INTO employees (name, department, salary, id) VALUES (?, ?, ?, ?)"
+                : "INSERT INTO employees (name, department, salary) VALUES (?, ?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false);
+            int i = 0;
+            for (Employee emp : rows) {
+                stmt.setString(1, emp.getName());
+                stmt.setString(2, emp.getDepartment());
+                stmt.setDouble(3, emp.getSalary());
+                if (withIds) {
+                    stmt.setInt(4, emp.getId());
+                }
+                stmt.addBatch();
+                if (++i % 1000 == 0) {
+                    stmt.executeBatch();
+                }
+            }
+            stmt.executeBatch();
+            conn.commit();
+        }
+    }
+
+    public static List<Employee> employees(int count, long seed) {
+        Random random = new Random(seed);
+        List<Employee> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                    + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            list.add(new Employee(i + 1, name,
+                    DEPARTMENTS[random.nextInt(DEPARTMENTS.length)],
+                    30000 + random.nextInt(90000)));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,80 @@
+package bench;
+
+import dao.EmployeeDAO;
+import dao.SingleFlight;
+import metrics.Metrics;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// A dashboard refresh fanning out to many users at once: every client thread issues the same
+// getAllEmployees / getAllDepartments / getAverageSalary calls at the same moment, against a database
+// with simulated latency. Run once with every call going to the database and once through SingleFlight.
+//
+//   java -cp target/benchmarks.jar bench.CoalescingLoadTest [clients] [rounds] [dbLatencyMs]
+public class CoalescingLoadTest {
+
+    private static final String[] QUERIES = { "getAllEmployees", "getAllDepartments", "getAverageSalary" };
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        long latencyMs = args.length > 2 ? Long.parseLong(args[2]) : 20;
+
+        BenchDatabase.start("coalescing", 1000, latencyMs);
+        try {
+            // no in-memory department statistics, so the aggregate reads reach the database too
+            run("direct", new EmployeeDAO(null, null, null, null), clients, rounds);
+            run("coalesced", new EmployeeDAO(null, null, null, new SingleFlight(null, 10000)), clients, rounds);
+        } finally {
+            BenchDatabase.stop();
+        }
+    }
+
+    private static void run(String mode, EmployeeDAO dao, int clients, int rounds) throws Exception {
+        long queriesBefore = queryCount();
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            String department = BenchDatabase.DEPARTMENTS[round % BenchDatabase.DEPARTMENTS.length];
+            CountDownLatch go = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(clients);
+            for (int i = 0; i < clients; i++) {
+                pool.execute(() -> {
+                    try {
+                        go.await();
+                        dao.getAllEmployees();
+                        dao.getAllDepartments();
+                        dao.getAverageSalary(department);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            go.countDown();
+            done.await(5, TimeUnit.MINUTES);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        long calls = (long) clients * rounds * QUERIES.length;
+        long queries = queryCount() - queriesBefore;
+        SingleFlight singleFlight = dao.getSingleFlight();
+        System.out.printf("%-9s calls=%d dbQueries=%d coalesced=%d elapsed=%.2fs throughput=%.0f calls/s%n",
+                mode, calls, queries, singleFlight != null ? singleFlight.getCoalesced() : 0,
+                seconds, calls / seconds);
+    }
+
+    private static long queryCount() {
+        long count = 0;
+        for (String query : QUERIES) {
+            Metrics.Operation op = Metrics.get().getQuery(query);
+            count += op != null ? op.getCount() : 0;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,26 @@
+package bench;
+
+import java.io.OutputStream;
+
+// Discards everything written to it but keeps the byte count, so the JIT cannot drop the writes
+public final class CountingOutputStream extends OutputStream {
+    private long count;
+
+    @Override
+    public void write(int b) {
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        count += len;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void reset() {
+        count = 0;
+    }
+}
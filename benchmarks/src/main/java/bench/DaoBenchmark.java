@@ -0,0 +1,106 @@
+package bench;
+
+import dao.DepartmentStats;
+import dao.EmployeeCache;
+import dao.EmployeeDAO;
+import dao.EmployeeSearchIndex;
+import model.Employee;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaoBenchmark {
+
+    @Param({ "1000", "10000" })
+    public int rows;
+
+    // Whether the in-memory id cache, department stats and search index sit in front of the database
+    @Param({ "true", "false" })
+    public boolean caches;
+
+    private EmployeeDAO dao;
+    private List<Employee> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchDatabase.start("dao", rows);
+        dao = caches
+                ? new EmployeeDAO(new EmployeeCache(rows, 0, 30000), new DepartmentStats(), new EmployeeSearchIndex())
+                : new EmployeeDAO(null, null);
+        batch = BenchDatabase.employees(100, 7);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchDatabase.stop();
+    }
+
+    @Benchmark
+    public List<Employee> getAllEmployees() {
+        return dao.getAllEmployees();
+    }
+
+    @Benchmark
+    public Employee getEmployeeById() {
+        return dao.getEmployeeById(ThreadLocalRandom.current().nextInt(1, rows + 1));
+    }
+
+    @Benchmark
+    public double getAverageSalary() {
+        return dao.getAverageSalary(BenchDatabase.DEPARTMENTS[ThreadLocalRandom.current().nextInt(BenchDatabase.DEPARTMENTS.length)]);
+    }
+
+    private static final String[] QUERIES = { "ma", "john", "pat", "lee", "chen k", "sarah mil", "o" };
+
+    // Name prefix search, from the index or with LIKE over the table
+    @Benchmark
+    public List<Employee> searchEmployees() {
+        return dao.searchEmployees(QUERIES[ThreadLocalRandom.current().nextInt(QUERIES.length)], null, null, null, 20);
+    }
+
+    @Benchmark
+    public boolean addEmployee() {
+        return dao.addEmployee(new Employee("Bench", "IT", 50000));
+    }
+
+    // 100 rows one statement at a time versus one batched call; compare per-op time of the two
+    @Benchmark
+    @OperationsPerInvocation(100)
+    public int addEmployeesSingleRow() {
+        int added = 0;
+        for (Employee emp : batch) {
+            if (dao.addEmployee(new Employee(emp.getName(), emp.getDepartment(), emp.getSalary()))) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(100)
+    public int addEmployeesBatched() {
+        return dao.addEmployees(batch, 100).getSucceeded();
+    }
+}
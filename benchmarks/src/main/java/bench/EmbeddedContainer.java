@@ -0,0 +1,64 @@
+package bench;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import servlet.EmployeeServlet;
+import servlet.MetricsServlet;
+
+import jakarta.servlet.http.HttpServlet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// EmployeeServlet and the metrics endpoint in an embedded Tomcat on a free local port, mapped as in the
+// deployed application. The database is whatever DBConnection is configured with when the servlet starts.
+public class EmbeddedContainer implements AutoCloseable {
+
+    // kept so the level is not reset when the logger is collected; the shared DAO threads outlive the context
+    // and would otherwise be reported as leaks on every shutdown
+    private static final Logger TOMCAT_LOG = Logger.getLogger("org.apache");
+
+    private final Tomcat tomcat = new Tomcat();
+    private final File baseDir;
+
+    public EmbeddedContainer(int threads) throws Exception {
+        TOMCAT_LOG.setLevel(Level.SEVERE);
+        baseDir = Files.createTempDirectory("ems-tomcat").toFile();
+        tomcat.setBaseDir(baseDir.getAbsolutePath());
+        tomcat.setPort(0);
+        Connector connector = tomcat.getConnector();
+        connector.setProperty("maxThreads", String.valueOf(threads));
+        connector.setProperty("acceptCount", String.valueOf(threads * 4));
+
+        Context context = tomcat.addContext("", baseDir.getAbsolutePath());
+        add(context, "employees", new EmployeeServlet(), "/api/employees");
+        add(context, "metrics", new MetricsServlet(), "/api/metrics");
+        tomcat.start();
+    }
+
+    private static void add(Context context, String name, HttpServlet servlet, String path) {
+        Wrapper wrapper = Tomcat.addServlet(context, name, servlet);
+        wrapper.setAsyncSupported(true);
+        wrapper.setLoadOnStartup(1);
+        context.addServletMappingDecoded(path, name);
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + tomcat.getConnector().getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            tomcat.stop();
+            tomcat.destroy();
+        } catch (LifecycleException e) {
+            throw new IOException("Could not stop Tomcat", e);
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package bench;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// Sustained HTTP load against EmployeeServlet running in an embedded Tomcat over an embedded database. Requests are
+// sent at a constant arrival rate (an open model): each one is due at a fixed time whether or not earlier ones have
+// answered, and its latency is counted from that time, so a server that falls behind shows it in the percentiles
+// instead of slowing the generator down. Requests that would exceed maxInFlight are dropped and reported.
+// Writes a JSON report with throughput, p50/p99/p999 latency and error counts, overall and per operation.
+//
+//   java -cp target/benchmarks.jar bench.HttpLoadTest [rate=500] [seconds=30] [warmup=5] [employees=10000]
+//       [mix=byId:50,byDepartment:10,avgSalary:10,page:5,list:1,insert:8,update:11,delete:5] [dbLatencyMs=1]
+//       [poolSize=10] [threads=200] [maxInFlight=2000] [timeoutMs=10000] [report=target/http-load-report.json]
+public class HttpLoadTest {
+
+    private static final Gson GSON = new Gson();
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("rate", "500");
+        options.put("seconds", "30");
+        options.put("warmup", "5");
+        options.put("employees", "10000");
+        options.put("mix", "byId:50,byDepartment:10,avgSalary:10,page:5,list:1,insert:8,update:11,delete:5");
+        options.put("dbLatencyMs", "1");
+        options.put("poolSize", "10");
+        options.put("threads", "200");
+        options.put("maxInFlight", "2000");
+        options.put("timeoutMs", "10000");
+        options.put("report", "target/http-load-report.json");
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0 || !options.containsKey(arg.substring(0, eq))) {
+                throw new IllegalArgumentException("Unknown option " + arg + "; options are " + options.keySet());
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+
+        int employees = Integer.parseInt(options.get("employees"));
+        List<Operation> mix = parseMix(options.get("mix"));
+        BenchDatabase.startReplicated("httpload", employees, 0, Long.parseLong(options.get("dbLatencyMs")),
+                Integer.parseInt(options.get("poolSize")));
+        try (EmbeddedContainer container = new EmbeddedContainer(Integer.parseInt(options.get("threads")))) {
+            JsonObject report = run(container.getBaseUrl() + "/api/employees", mix, employees,
+                    Double.parseDouble(options.get("rate")), Integer.parseInt(options.get("seconds")),
+                    Integer.parseInt(options.get("warmup")), Integer.parseInt(options.get("maxInFlight")),
+                    Long.parseLong(options.get("timeoutMs")));
+            JsonObject config = new JsonObject();
+            options.forEach(config::addProperty);
+            report.add("config", config);
+
+            String json = new GsonBuilder().setPrettyPrinting().create().toJson(report);
+            Path path = Paths.get(options.get("report"));
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Files.write(path, json.getBytes(StandardCharsets.UTF_8));
+            System.out.println(json);
+        } finally {
+            BenchDatabase.stop();
+        }
+    }
+
+    private static JsonObject run(String url, List<Operation> mix, int employees, double rate, int seconds, int warmup,
+                                  int maxInFlight, long timeoutMs) throws Exception {
+        ExecutorService callbacks = Executors.newFixedThreadPool(4, r -> {
+            Thread t = new Thread(r, "http-load-client");
+            t.setDaemon(true);
+            return t;
+        });
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(timeoutMs))
+                .executor(callbacks)
+                .build();
+        Map<String, Recorder> recorders = new TreeMap<>();
+        for (Operation op : mix) {
+            recorders.put(op.name, new Recorder());
+        }
+        int totalWeight = mix.stream().mapToInt(op -> op.weight).sum();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger nextId = new AtomicInteger(employees);
+
+        long interval = (long) (1e9 / rate);
+        long begin = System.nanoTime();
+        long measureFrom = begin + TimeUnit.SECONDS.toNanos(warmup);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(seconds);
+        for (long i = 0; ; i++) {
+            long due = begin + i * interval;
+            if (due >= end) {
+                break;
+            }
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Operation op = pick(mix, totalWeight);
+            Recorder recorder = due >= measureFrom ? recorders.get(op.name) : null;
+            if (inFlight.get() >= maxInFlight) {
+                if (recorder != null) {
+                    recorder.dropped();
+                }
+                continue;
+            }
+            inFlight.incrementAndGet();
+            HttpRequest request = op.request(url, employees, nextId, timeoutMs);
+            client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+                long latency = System.nanoTime() - due;
+                inFlight.decrementAndGet();
+                if (recorder != null) {
+                    recorder.record(latency, response != null ? response.statusCode() : -1,
+                            response != null && response.body().contains("\"success\":false"));
+                }
+            });
+        }
+        // the last requests are given the timeout to finish
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        callbacks.shutdownNow();
+
+        JsonObject report = new JsonObject();
+        Recorder total = new Recorder();
+        JsonObject operations = new JsonObject();
+        for (Map.Entry<String, Recorder> entry : recorders.entrySet()) {
+            operations.add(entry.getKey(), entry.getValue().summary(seconds));
+            total.addAll(entry.getValue());
+        }
+        report.add("total", total.summary(seconds));
+        report.add("operations", operations);
+        report.addProperty("offeredRate", rate);
+        report.addProperty("unfinished", inFlight.get());
+        return report;
+    }
+
+    private static Operation pick(List<Operation> mix, int totalWeight) {
+        int n = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Operation op : mix) {
+            n -= op.weight;
+            if (n < 0) {
+                return op;
+            }
+        }
+        return mix.get(mix.size() - 1);
+    }
+
+    private static List<Operation> parseMix(String mix) {
+        List<Operation> operations = new ArrayList<>();
+        for (String part : mix.split(",")) {
+            String[] nameWeight = part.trim().split(":");
+            int weight = nameWeight.length > 1 ? Integer.parseInt(nameWeight[1].trim()) : 1;
+            if (!Operation.NAMES.contains(nameWeight[0].trim())) {
+                throw new IllegalArgumentException("Unknown operation " + nameWeight[0] + "; operations are " + Operation.NAMES);
+            }
+            if (weight > 0) {
+                operations.add(new Operation(nameWeight[0].trim(), weight));
+            }
+        }
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException("The mix has no operations");
+        }
+        return operations;
+    }
+
+    private static final class Operation {
+        static final List<String> NAMES = Arrays.asList(
+                "list", "page", "byId", "byDepartment", "avgSalary", "insert", "update", "delete");
+
+        final String name;
+        final int weight;
+
+        Operation(String name, int weight) {
+            this.name = name;
+            this.weight = weight;
+        }
+
+        HttpRequest request(String url, int employees, AtomicInteger nextId, long timeoutMs) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int id = 1 + random.nextInt(employees);
+            String department = BenchDatabase.DEPARTMENTS[random.nextInt(BenchDatabase.DEPARTMENTS.length)];
+            Duration timeout = Duration.ofMillis(timeoutMs);
+            switch (name) {
+                case "list":
+                    return HttpRequest.newBuilder(URI.create(url)).timeout(timeout).build();
+                case "page":
+                    return HttpRequest.newBuilder(URI.create(url + "?afterId=" + (id - 1) + "&limit=50"))
+                            .timeout(timeout).build();
+                case "byId":
+                    return HttpRequest.newBuilder(URI.create(url + "?id=" + id)).timeout(timeout).build();
+                case "byDepartment":
+                    return HttpRequest.newBuilder(URI.create(url + "?department=" + department)).timeout(timeout).build();
+                case "avgSalary":
+                    return HttpRequest.newBuilder(URI.create(url + "?action=avgSalary&department=" + department))
+                            .timeout(timeout).build();
+                case "insert":
+                    return HttpRequest.newBuilder(URI.create(url)).timeout(timeout)
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString(employee(0, nextId.incrementAndGet(), department)))
+                            .build();
+                case "update":
+                    return HttpRequest.newBuilder(URI.create(url)).timeout(timeout)
+                            .header("Content-Type", "application/json")
+                            .PUT(HttpRequest.BodyPublishers.ofString(employee(id, id, department)))
+                            .build();
+                default:
+                    return HttpRequest.newBuilder(URI.create(url + "?id=" + id)).timeout(timeout).DELETE().build();
+            }
+        }
+
+        private static String employee(int id, int n, String department) {
+            JsonObject emp = new JsonObject();
+            if (id > 0) {
+                emp.addProperty("id", id);
+            }
+            emp.addProperty("name", "Load Test " + n);
+            emp.addProperty("department", department);
+            emp.addProperty("salary", 30000 + ThreadLocalRandom.current().nextInt(90000));
+            return GSON.toJson(emp);
+        }
+    }
+
+    // Latencies and outcomes of one operation, counted from each request's due time
+    private static final class Recorder {
+        private long[] latencies = new long[1024];
+        private int count;
+        private long httpErrors;
+        private long transportErrors;
+        private long failedResponses;
+        private long dropped;
+        private final Map<Integer, Long> statuses = new TreeMap<>();
+
+        synchronized void record(long latencyNanos, int status, boolean failed) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyNanos;
+            if (status < 0) {
+                transportErrors++;
+            } else {
+                statuses.merge(status, 1L, Long::sum);
+                if (status >= 400) {
+                    httpErrors++;
+                } else if (failed) {
+                    failedResponses++;
+                }
+            }
+        }
+
+        synchronized void dropped() {
+            dropped++;
+        }
+
+        synchronized void addAll(Recorder other) {
+            synchronized (other) {
+                for (int i = 0; i < other.count; i++) {
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = other.latencies[i];
+                }
+                httpErrors += other.httpErrors;
+                transportErrors += other.transportErrors;
+                failedResponses += other.failedResponses;
+                dropped += other.dropped;
+                other.statuses.forEach((status, n) -> statuses.merge(status, n, Long::sum));
+            }
+        }
+
+        synchronized JsonObject summary(int seconds) {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            long attempted = count + dropped;
+            long errors = httpErrors + transportErrors + dropped;
+            JsonObject summary = new JsonObject();
+            summary.addProperty("requests", attempted);
+            summary.addProperty("completed", count);
+            summary.addProperty("throughput", round((count - transportErrors) / (double) seconds));
+            summary.addProperty("errorRate", attempted == 0 ? 0 : round(errors / (double) attempted));
+            summary.addProperty("httpErrors", httpErrors);
+            summary.addProperty("transportErrors", transportErrors);
+            summary.addProperty("dropped", dropped);
+            summary.addProperty("failedResponses", failedResponses);
+            summary.addProperty("p50Ms", percentile(sorted, 0.50));
+            summary.addProperty("p99Ms", percentile(sorted, 0.99));
+            summary.addProperty("p999Ms", percentile(sorted, 0.999));
+            summary.addProperty("maxMs", sorted.length == 0 ? 0 : round(sorted[sorted.length - 1] / 1e6));
+            JsonObject byStatus = new JsonObject();
+            statuses.forEach((status, n) -> byStatus.addProperty(String.valueOf(status), n));
+            summary.add("statuses", byStatus);
+            return summary;
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(p * sorted.length) - 1;
+            return round(sorted[Math.max(0, index)] / 1e6);
+        }
+
+        private static double round(double value) {
+            return Math.round(value * 1000) / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package bench;
+
+import model.Employee;
+import model.EmployeeTypeAdapter;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Serialization of employee lists the way EmployeeServlet does it
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+
+    @Param({ "10", "1000", "100000" })
+    public int size;
+
+    private final Gson gson = new Gson();
+    private final Gson adapterGson = new GsonBuilder().registerTypeAdapter(Employee.class, ADAPTER).create();
+    private static final EmployeeTypeAdapter ADAPTER = new EmployeeTypeAdapter();
+    private static final Type LIST_TYPE = new TypeToken<List<Employee>>() {}.getType();
+    private final CountingOutputStream sink = new CountingOutputStream();
+    private List<Employee> employees;
+    private String json;
+
+    @Setup
+    public void setUp() {
+        employees = BenchDatabase.employees(size, 42);
+        json = gson.toJson(employees);
+    }
+
+    // Builds a JsonObject tree and then a String, as the non-streaming doGet branches used to
+    @Benchmark
+    public String treeThenString() {
+        JsonObject result = new JsonObject();
+        result.addProperty("success", true);
+        result.add("data", gson.toJsonTree(employees));
+        return gson.toJson(result);
+    }
+
+    // EmployeeTypeAdapter writing straight into the response text, as the doGet list branches do now
+    @Benchmark
+    public String adapterToString() throws IOException {
+        StringWriter out = new StringWriter(64 + employees.size() * 80);
+        JsonWriter writer = adapterGson.newJsonWriter(out);
+        writer.beginObject();
+        writer.name("success").value(true);
+        writer.name("data").beginArray();
+        for (Employee emp : employees) {
+            ADAPTER.write(writer, emp);
+        }
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+        return out.toString();
+    }
+
+    @Benchmark
+    public String listToString() {
+        return gson.toJson(employees);
+    }
+
+    // Writes each employee straight to the output with reflective Gson, as the streamed list used to
+    @Benchmark
+    public long streamToOutput() throws IOException {
+        sink.reset();
+        JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(sink, StandardCharsets.UTF_8)));
+        writer.beginObject();
+        writer.name("success").value(true);
+        writer.name("data").beginArray();
+        for (Employee emp : employees) {
+            gson.toJson(emp, Employee.class, writer);
+        }
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+        return sink.getCount();
+    }
+
+    // The streamed list as written now, through EmployeeTypeAdapter
+    @Benchmark
+    public long streamToOutputAdapter() throws IOException {
+        sink.reset();
+        JsonWriter writer = adapterGson.newJsonWriter(new BufferedWriter(new OutputStreamWriter(sink, StandardCharsets.UTF_8)));
+        writer.beginObject();
+        writer.name("success").value(true);
+        writer.name("data").beginArray();
+        for (Employee emp : employees) {
+            ADAPTER.write(writer, emp);
+        }
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+        return sink.getCount();
+    }
+
+    // Decoding a bulk request body
+    @Benchmark
+    public List<Employee> parseReflective() {
+        return gson.fromJson(json, LIST_TYPE);
+    }
+
+    @Benchmark
+    public List<Employee> parseAdapter() {
+        return adapterGson.fromJson(json, LIST_TYPE);
+    }
+}
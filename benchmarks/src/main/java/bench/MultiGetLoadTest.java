@@ -0,0 +1,121 @@
+package bench;
+
+import dao.EmployeeDAO;
+import dao.EmployeeLoader;
+import model.Employee;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Resolving many employees by id: a list of ids looked up one query at a time and with getEmployeesByIds, then
+// concurrent single-id lookups each running their own query and batched by the EmployeeLoader. The cache is
+// off and every lookup hits a database with simulated latency behind a small pool.
+//
+//   java -cp target/benchmarks.jar bench.MultiGetLoadTest [clients] [seconds] [dbLatencyMs] [windowMs]
+public class MultiGetLoadTest {
+
+    private static final int EMPLOYEES = 10000;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long latencyMs = args.length > 2 ? Long.parseLong(args[2]) : 2;
+        long windowMs = args.length > 3 ? Long.parseLong(args[3]) : 2;
+
+        BenchDatabase.startReplicated("multiget", EMPLOYEES, 0, latencyMs, 4);
+        try {
+            EmployeeDAO dao = new EmployeeDAO(null, null, null, null);
+            for (int count : new int[] { 10, 100, 1000 }) {
+                List<Integer> ids = randomIds(count);
+                double oneByOne = time(() -> {
+                    for (int id : ids) {
+                        dao.getEmployeeById(id);
+                    }
+                });
+                double batched = time(() -> dao.getEmployeesByIds(ids));
+                System.out.printf("%4d ids      one query per id %.1f ms, getEmployeesByIds %.1f ms (%d found)%n",
+                        count, oneByOne, batched, dao.getEmployeesByIds(ids).size());
+            }
+
+            for (int n : new int[] { 1, clients }) {
+                run("per id", dao, n, seconds);
+                EmployeeLoader loader = new EmployeeLoader(dao, windowMs, 500, 4);
+                dao.setLoader(loader);
+                run("loader", dao, n, seconds);
+                System.out.printf("              %d lookups in %d batches (%.1f ids per query, %d shared an id)%n",
+                        loader.getRequests(), loader.getBatches(), (double) loader.getLoaded() / loader.getBatches(),
+                        loader.getShared());
+                dao.setLoader(null);
+                loader.close();
+            }
+        } finally {
+            BenchDatabase.stop();
+        }
+    }
+
+    private static void run(String mode, EmployeeDAO dao, int clients, int seconds) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<long[]> samples = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        for (int i = 0; i < clients; i++) {
+            pool.execute(() -> {
+                long[] nanos = new long[1 << 20];
+                int n = 0;
+                while (running.get() && n < nanos.length) {
+                    long start = System.nanoTime();
+                    Employee emp = dao.getEmployeeById(1 + ThreadLocalRandom.current().nextInt(EMPLOYEES));
+                    nanos[n++] = System.nanoTime() - start;
+                    if (emp == null) {
+                        throw new IllegalStateException("Lookup failed");
+                    }
+                }
+                long[] taken = new long[n];
+                System.arraycopy(nanos, 0, taken, 0, n);
+                samples.add(taken);
+            });
+        }
+        long start = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+
+        List<Long> all = new ArrayList<>();
+        long total = 0;
+        for (long[] taken : samples) {
+            for (long nanos : taken) {
+                all.add(nanos);
+                total += nanos;
+            }
+        }
+        Collections.sort(all);
+        System.out.printf("%-13s clients=%d lookups=%d throughput=%.0f lookups/s mean %.2f ms p99 %.2f ms%n",
+                mode, clients, all.size(), all.size() / elapsed, total / 1e6 / all.size(),
+                all.get((int) (all.size() * 0.99)) / 1e6);
+    }
+
+    private static List<Integer> randomIds(int count) {
+        List<Integer> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(1 + ThreadLocalRandom.current().nextInt(EMPLOYEES));
+        }
+        return ids;
+    }
+
+    private static double time(Runnable call) {
+        int calls = 5;
+        call.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            call.run();
+        }
+        return (System.nanoTime() - start) / 1e6 / calls;
+    }
+}
@@ -0,0 +1,188 @@
+package bench;
+
+import dao.EmployeeChangeListener;
+import dao.EmployeeDAO;
+import db.DBConnection;
+import db.ReplicaSet;
+import metrics.Metrics;
+import model.Employee;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Read throughput of by-department lists with every read on the primary and with reads spread over
+// replicas, each database behind the same simulated latency and pool size. The replicated run also has
+// a writer that checks it reads its own updates back while replication lags, and a replica that is
+// broken halfway through.
+//
+//   java -cp target/benchmarks.jar bench.ReplicaLoadTest [readers] [seconds] [replicas] [dbLatencyMs]
+public class ReplicaLoadTest {
+
+    private static final long REPLICATION_LAG_MS = 300;
+
+    public static void main(String[] args) throws Exception {
+        int readers = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int replicas = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        long latencyMs = args.length > 3 ? Long.parseLong(args[3]) : 2;
+        int poolSize = 4;
+        System.setProperty("db.replica.healthCheckMs", "200");
+
+        BenchDatabase.startReplicated("primaryonly", 1000, 0, latencyMs, poolSize);
+        try {
+            run("primary only", readers, seconds, 0);
+        } finally {
+            BenchDatabase.stop();
+        }
+        BenchDatabase.startReplicated("replicated", 1000, replicas, latencyMs, poolSize);
+        try {
+            run(replicas + " replicas", readers, seconds, replicas);
+        } finally {
+            BenchDatabase.stop();
+        }
+    }
+
+    private static void run(String mode, int readers, int seconds, int replicas) throws Exception {
+        // every read has to reach a database
+        EmployeeDAO dao = new EmployeeDAO(null, null, null, null);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong reads = new AtomicLong();
+        AtomicLong ownWrites = new AtomicLong();
+        AtomicLong ownWritesMissed = new AtomicLong();
+        AtomicLong unpinnedStale = new AtomicLong();
+        long errorsBefore = errors();
+
+        ExecutorService pool = Executors.newFixedThreadPool(readers + 1);
+        for (int i = 0; i < readers; i++) {
+            pool.execute(() -> {
+                while (running.get()) {
+                    String department = BenchDatabase.DEPARTMENTS[
+                            ThreadLocalRandom.current().nextInt(BenchDatabase.DEPARTMENTS.length)];
+                    dao.getEmployeesByDepartment(department);
+                    reads.incrementAndGet();
+                }
+            });
+        }
+        if (replicas > 0) {
+            dao.addChangeListener(new LaggingReplication("replicated", replicas));
+            pool.execute(() -> {
+                int n = 0;
+                while (running.get()) {
+                    int id = 1 + n % 1000;
+                    double salary = 40000 + (n++ % 1000);
+                    dao.updateSalary(id, salary);
+                    Employee emp = dao.getEmployeeById(id);
+                    ownWrites.incrementAndGet();
+                    if (emp == null || emp.getSalary() != salary) {
+                        ownWritesMissed.incrementAndGet();
+                    }
+                    // the same read without the pin goes to a replica that has not caught up yet
+                    DBConnection.readFromPrimaryUntil(0);
+                    Employee fromReplica = dao.getEmployeeById(id);
+                    if (fromReplica == null || fromReplica.getSalary() != salary) {
+                        unpinnedStale.incrementAndGet();
+                    }
+                    sleep(20);
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        sleep(seconds * 500L);
+        if (replicas > 1) {
+            breakReplica("replicated_replica1");
+        }
+        sleep(seconds * 500L);
+        running.set(false);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+
+        System.out.printf("%-12s readers=%d reads=%d throughput=%.0f reads/s failedReads=%d%n",
+                mode, readers, reads.get(), reads.get() / elapsed, errors() - errorsBefore);
+        ReplicaSet set = DBConnection.getReplicas();
+        if (set != null) {
+            System.out.printf("             reads per replica=%s healthy=%d/%d; writer read back %d of its own "
+                            + "updates, %d stale (%d stale without the pin)%n",
+                    Arrays.toString(set.getReads()), set.getHealthyCount(), set.size(),
+                    ownWrites.get(), ownWritesMissed.get(), unpinnedStale.get());
+        }
+    }
+
+    // Takes the data away from one replica; its health checks start failing
+    private static void breakReplica(String name) {
+        try (Connection conn = DriverManager.getConnection(BenchDatabase.url(name, 0), "sa", "");
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE employees");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static long errors() {
+        Metrics.Operation op = Metrics.get().getQuery("getEmployeesByDepartment");
+        return op != null ? op.getErrors() : 0;
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Copies salary updates to the replicas REPLICATION_LAG_MS after they commit on the primary
+    private static final class LaggingReplication implements EmployeeChangeListener {
+        private final String name;
+        private final int replicas;
+        private final ScheduledExecutorService applier =
+                Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "replication");
+                    t.setDaemon(true);
+                    return t;
+                });
+
+        LaggingReplication(String name, int replicas) {
+            this.name = name;
+            this.replicas = replicas;
+        }
+
+        @Override
+        public void employeeInserted(Employee emp) {
+        }
+
+        @Override
+        public void employeeUpdated(Employee before, Employee after) {
+            int id = after.getId();
+            double salary = after.getSalary();
+            applier.schedule(() -> {
+                for (int i = 1; i <= replicas; i++) {
+                    try (Connection conn = DriverManager.getConnection(
+                            BenchDatabase.url(name + "_replica" + i, 0), "sa", "");
+                         PreparedStatement stmt = conn.prepareStatement("UPDATE employees SET salary = ? WHERE id = ?")) {
+                        stmt.setDouble(1, salary);
+                        stmt.setInt(2, id);
+                        stmt.executeUpdate();
+                    } catch (Exception e) {
+                        // the broken replica has no table any more
+                    }
+                }
+            }, REPLICATION_LAG_MS, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void employeeDeleted(Employee before) {
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package bench;
+
+import dao.DepartmentStats;
+import dao.EmployeeCache;
+import dao.EmployeeDAO;
+import dao.SalaryAdjustmentResult;
+import db.DBConnection;
+import model.Employee;
+import model.SalaryAdjustment;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A 10% raise for one department: one updateSalary per employee, then one set-based UPDATE, then the same
+// UPDATE in transactions over 500 ids each. A writer keeps updating other employees of that department meanwhile
+// and reports its longest wait, which is the time it spent behind the adjustment's row locks. Afterwards the
+// cached employees and department averages are checked against the table.
+//
+//   java -cp target/benchmarks.jar bench.SalaryAdjustLoadTest [employees] [dbLatencyMs]
+public class SalaryAdjustLoadTest {
+
+    private static final String DEPARTMENT = "IT";
+
+    public static void main(String[] args) throws Exception {
+        int employees = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        long latencyMs = args.length > 1 ? Long.parseLong(args[1]) : 2;
+
+        BenchDatabase.startReplicated("adjust", employees, 0, latencyMs, 4);
+        try {
+            EmployeeDAO dao = new EmployeeDAO(new EmployeeCache(employees, 0, 30000), new DepartmentStats(), null, null);
+            List<Employee> department = dao.getEmployeesByDepartment(DEPARTMENT);
+            // warm the cache so a missed invalidation would show up below
+            for (Employee emp : department) {
+                dao.getEmployeeById(emp.getId());
+            }
+            System.out.printf("%s has %d of %d employees, average %.2f%n",
+                    DEPARTMENT, department.size(), employees, dao.getAverageSalary(DEPARTMENT));
+
+            run("one updateSalary per row", dao, department, () -> {
+                for (Employee emp : dao.getEmployeesByDepartment(DEPARTMENT)) {
+                    dao.updateSalary(emp.getId(), Math.round(emp.getSalary() * 110) / 100.0);
+                }
+                return department.size();
+            });
+            run("one set-based UPDATE", dao, department,
+                    () -> dao.adjustSalaries(SalaryAdjustment.byPercent(DEPARTMENT, 10), 0).getAffected());
+            run("UPDATE per 500 ids", dao, department,
+                    () -> dao.adjustSalaries(SalaryAdjustment.byPercent(DEPARTMENT, 10), 500).getAffected());
+
+            SalaryAdjustment capped = SalaryAdjustment.byPercent(DEPARTMENT, 10);
+            capped.setMinSalary(100000.0);
+            capped.setCap(150000.0);
+            SalaryAdjustmentResult result = dao.adjustSalaries(capped, 0);
+            System.out.printf("%-26s %d rows, complete=%b, now %s%n", capped, result.getAffected(),
+                    result.isComplete(), result.getDepartments().get(0));
+            check(dao, department);
+        } finally {
+            BenchDatabase.stop();
+        }
+    }
+
+    private interface Adjustment {
+        int apply();
+    }
+
+    private static void run(String mode, EmployeeDAO dao, List<Employee> department, Adjustment adjustment)
+            throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong writes = new AtomicLong();
+        AtomicLong longestWait = new AtomicLong();
+        Thread writer = new Thread(() -> {
+            while (running.get()) {
+                Employee emp = department.get(ThreadLocalRandom.current().nextInt(department.size()));
+                long start = System.nanoTime();
+                dao.updateEmployee(new Employee(emp.getId(), emp.getName(), DEPARTMENT, 50000));
+                longestWait.accumulateAndGet(System.nanoTime() - start, Math::max);
+                writes.incrementAndGet();
+            }
+        });
+        writer.start();
+        Thread.sleep(200);
+        long start = System.nanoTime();
+        int rows = adjustment.apply();
+        double ms = (System.nanoTime() - start) / 1e6;
+        running.set(false);
+        writer.join();
+        System.out.printf("%-26s %d rows in %.0f ms; concurrent writer made %d updates, longest wait %.0f ms%n",
+                mode, rows, ms, writes.get(), longestWait.get() / 1e6);
+    }
+
+    // Every cached employee and the department average must match the table
+    private static void check(EmployeeDAO dao, List<Employee> department) throws Exception {
+        int stale = 0;
+        double total = 0;
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT id, salary FROM employees WHERE department = ?")) {
+            stmt.setString(1, DEPARTMENT);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    total += rs.getDouble(2);
+                    if (dao.getEmployeeById(rs.getInt(1)).getSalary() != rs.getDouble(2)) {
+                        stale++;
+                    }
+                }
+            }
+        }
+        System.out.printf("cache: %d of %d employees stale; average in memory %.2f, in the table %.2f%n",
+                stale, department.size(), dao.getAverageSalary(DEPARTMENT), total / department.size());
+    }
+}
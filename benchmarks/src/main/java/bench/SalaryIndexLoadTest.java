@@ -0,0 +1,130 @@
+package bench;
+
+import dao.EmployeeDAO;
+import dao.SalaryIndex;
+import model.Employee;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+// "Top 10 earners per department" and "everyone between two salaries": fetching the rows and sorting them in
+// the caller, the bounded-heap stream the DAO falls back to without the salary index, and the index itself.
+// Then salary changes, department moves and deletes run through the DAO and every answer from the index is
+// compared with the streamed one.
+//
+//   java -cp target/benchmarks.jar bench.SalaryIndexLoadTest [employees] [dbLatencyMs]
+public class SalaryIndexLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int employees = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        long latencyMs = args.length > 1 ? Long.parseLong(args[1]) : 2;
+
+        BenchDatabase.startReplicated("salaryindex", employees, 0, latencyMs, 4);
+        try {
+            EmployeeDAO streamed = new EmployeeDAO(null, null, null, null);
+            EmployeeDAO indexed = new EmployeeDAO(null, null, null, null);
+            SalaryIndex index = new SalaryIndex();
+            indexed.setSalaryIndex(index);
+            long start = System.nanoTime();
+            index.ensureLoaded();
+            System.out.printf("index of %d employees loaded in %.0f ms%n", index.size(), (System.nanoTime() - start) / 1e6);
+
+            Comparator<Employee> highestFirst = Comparator.comparingDouble(Employee::getSalary).reversed()
+                    .thenComparingInt(Employee::getId);
+            report("top 10 per department", () -> {
+                for (String department : BenchDatabase.DEPARTMENTS) {
+                    List<Employee> all = new ArrayList<>(streamed.getEmployeesByDepartment(department));
+                    all.sort(highestFirst);
+                    all.subList(0, Math.min(10, all.size()));
+                }
+                return null;
+            }, () -> {
+                for (String department : BenchDatabase.DEPARTMENTS) {
+                    streamed.getTopEarners(department, 10);
+                }
+                return null;
+            }, () -> {
+                for (String department : BenchDatabase.DEPARTMENTS) {
+                    indexed.getTopEarners(department, 10);
+                }
+                return null;
+            });
+            report("salaries 60000..60500", () -> {
+                List<Employee> all = new ArrayList<>(streamed.getAllEmployees());
+                all.removeIf(emp -> emp.getSalary() < 60000 || emp.getSalary() > 60500);
+                all.sort(Comparator.comparingDouble(Employee::getSalary).thenComparingInt(Employee::getId));
+                return null;
+            }, () -> streamed.getEmployeesBySalaryRange(null, 60000.0, 60500.0, 1000),
+                    () -> indexed.getEmployeesBySalaryRange(null, 60000.0, 60500.0, 1000));
+
+            check(streamed, indexed, employees);
+            System.out.printf("index reloads: %d%n", index.getReloads());
+        } finally {
+            BenchDatabase.stop();
+        }
+    }
+
+    private static void report(String query, Supplier<?> sortInCaller, Supplier<?> stream, Supplier<?> index) {
+        System.out.printf("%-22s fetch and sort %.2f ms, bounded-heap stream %.2f ms, salary index %.3f ms%n",
+                query, time(sortInCaller), time(stream), time(index));
+    }
+
+    private static void check(EmployeeDAO streamed, EmployeeDAO indexed, int employees) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int writes = 2000;
+        for (int i = 0; i < writes; i++) {
+            int id = 1 + random.nextInt(employees);
+            int op = random.nextInt(10);
+            if (op < 7) {
+                indexed.updateSalary(id, 30000 + random.nextInt(90000));
+            } else if (op < 9) {
+                Employee emp = indexed.getEmployeeById(id);
+                if (emp != null) {
+                    emp.setDepartment(BenchDatabase.DEPARTMENTS[random.nextInt(BenchDatabase.DEPARTMENTS.length)]);
+                    indexed.updateEmployee(emp);
+                }
+            } else {
+                indexed.deleteEmployee(id);
+            }
+        }
+        int queries = 0;
+        int mismatches = 0;
+        for (String department : BenchDatabase.DEPARTMENTS) {
+            queries += 3;
+            mismatches += same(indexed.getTopEarners(department, 25), streamed.getTopEarners(department, 25)) ? 0 : 1;
+            mismatches += same(indexed.getLowestEarners(department, 25), streamed.getLowestEarners(department, 25)) ? 0 : 1;
+            mismatches += same(indexed.getEmployeesBySalaryRange(department, 50000.0, 52000.0, 1000),
+                    streamed.getEmployeesBySalaryRange(department, 50000.0, 52000.0, 1000)) ? 0 : 1;
+        }
+        queries++;
+        mismatches += same(indexed.getTopEarners(null, 100), streamed.getTopEarners(null, 100)) ? 0 : 1;
+        System.out.printf("after %d random writes: %d of %d index answers differ from the database%n",
+                writes, mismatches, queries);
+    }
+
+    private static boolean same(List<Employee> a, List<Employee> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i).getId() != b.get(i).getId() || a.get(i).getSalary() != b.get(i).getSalary()
+                    || !a.get(i).getDepartment().equals(b.get(i).getDepartment())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double time(Supplier<?> call) {
+        int calls = 20;
+        call.get();
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            call.get();
+        }
+        return (System.nanoTime() - start) / 1e6 / calls;
+    }
+}
@@ -0,0 +1,95 @@
+package bench;
+
+import servlet.EmployeeServlet;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+// The full doGet dispatch path: parameter parsing, DAO call and JSON response, or a 304 revalidation
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServletBenchmark {
+
+    @Param({ "1000" })
+    public int rows;
+
+    @Param({ "list", "listGzip", "listNotModified", "byId", "byDepartment", "departments", "avgSalary" })
+    public String action;
+
+    // false renders every response from scratch, as before the response cache existed
+    @Param({ "true", "false" })
+    public boolean responseCache;
+
+    private EmployeeServlet servlet;
+    private HttpServletRequest request;
+    private final CountingOutputStream sink = new CountingOutputStream();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchDatabase.start("servlet", rows);
+        System.setProperty("response.cache.enabled", String.valueOf(responseCache));
+        servlet = new EmployeeServlet();
+        servlet.init();
+        switch (action) {
+            case "byId":
+                request = ServletStubs.get("id", String.valueOf(rows / 2));
+                break;
+            case "byDepartment":
+                request = ServletStubs.get("department", "IT");
+                break;
+            case "departments":
+                request = ServletStubs.get("action", "departments");
+                break;
+            case "avgSalary":
+                request = ServletStubs.get("action", "avgSalary", "department", "IT");
+                break;
+            case "listGzip":
+                request = ServletStubs.request("GET", Collections.<String, String>emptyMap(),
+                        Collections.singletonMap("accept-encoding", "gzip, deflate, br"), null);
+                break;
+            case "listNotModified":
+                // a poller that already holds the current list and revalidates it with its ETag
+                ServletStubs.Response first = ServletStubs.response(sink);
+                servlet.service(ServletStubs.get(), first.proxy);
+                request = ServletStubs.request("GET", Collections.<String, String>emptyMap(),
+                        Collections.singletonMap("if-none-match", first.getHeader("ETag")), null);
+                break;
+            default:
+                request = ServletStubs.get();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        servlet.destroy();
+        BenchDatabase.stop();
+    }
+
+    @Benchmark
+    public long doGet() throws Exception {
+        sink.reset();
+        ServletStubs.Response response = ServletStubs.response(sink);
+        servlet.service(request, response.proxy);
+        response.flush();
+        return sink.getCount();
+    }
+}
@@ -0,0 +1,226 @@
+package bench;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Minimal request/response stand-ins so servlet code can be driven without a container
+public final class ServletStubs {
+
+    private ServletStubs() {}
+
+    public static HttpServletRequest request(String method, Map<String, String> params, Map<String, String> headers,
+                                             String body) {
+        return request(method, "/api/employees", params, headers,
+                () -> new StringReader(body == null ? "" : body));
+    }
+
+    // body is opened lazily so a large upload can be generated while the servlet reads it
+    public static HttpServletRequest request(String method, String path, Map<String, String> params,
+                                             Map<String, String> headers, Supplier<Reader> body) {
+        return (HttpServletRequest) Proxy.newProxyInstance(ServletStubs.class.getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class }, (proxy, m, args) -> {
+                    switch (m.getName()) {
+                        case "getMethod":
+                            return method;
+                        case "getParameter":
+                            return params.get((String) args[0]);
+                        case "getParameterMap":
+                            return Collections.unmodifiableMap(params);
+                        case "getHeader":
+                            return headers.get(((String) args[0]).toLowerCase());
+                        case "getHeaders":
+                            String value = headers.get(((String) args[0]).toLowerCase());
+                            return Collections.enumeration(value == null
+                                    ? Collections.<String>emptyList() : Collections.singletonList(value));
+                        case "getDateHeader":
+                            return -1L;
+                        case "getReader":
+                            return new BufferedReader(body.get());
+                        case "getContentType":
+                            return headers.get("content-type");
+                        case "getRequestURI":
+                        case "getServletPath":
+                            return path;
+                        case "getProtocol":
+                            return "HTTP/1.1";
+                        default:
+                            return defaultValue(m.getReturnType());
+                    }
+                });
+    }
+
+    // A GET request whose startAsync() returns a context that runs onComplete when completed
+    public static HttpServletRequest asyncGet(Runnable onComplete, String... keyValues) {
+        HttpServletRequest base = get(keyValues);
+        Object[] pair = new Object[2];
+        AsyncContext async = (AsyncContext) Proxy.newProxyInstance(ServletStubs.class.getClassLoader(),
+                new Class<?>[] { AsyncContext.class }, (proxy, m, args) -> {
+                    switch (m.getName()) {
+                        case "complete":
+                            onComplete.run();
+                            return null;
+                        case "getRequest":
+                            return pair[0];
+                        case "getResponse":
+                            return pair[1];
+                        default:
+                            return defaultValue(m.getReturnType());
+                    }
+                });
+        return (HttpServletRequest) Proxy.newProxyInstance(ServletStubs.class.getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class }, (proxy, m, args) -> {
+                    switch (m.getName()) {
+                        case "isAsyncSupported":
+                            return true;
+                        case "startAsync":
+                            pair[0] = args != null && args.length == 2 ? args[0] : proxy;
+                            pair[1] = args != null && args.length == 2 ? args[1] : null;
+                            return async;
+                        default:
+                            try {
+                                return m.invoke(base, args);
+                            } catch (java.lang.reflect.InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                    }
+                });
+    }
+
+    public static HttpServletRequest get(String... keyValues) {
+        Map<String, String> params = new HashMap<>();
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            params.put(keyValues[i], keyValues[i + 1]);
+        }
+        return request("GET", params, Collections.<String, String>emptyMap(), null);
+    }
+
+    public static Response response(OutputStream sink) {
+        return new Response(sink);
+    }
+
+    // A response whose getOutputStream() is the given stream, e.g. one that simulates a slow client
+    public static Response response(ServletOutputStream stream) {
+        Response response = new Response(stream);
+        response.stream = stream;
+        return response;
+    }
+
+    public static final class Response {
+        private final OutputStream sink;
+        private final Map<String, String> headers = new HashMap<>();
+        private int status = 200;
+        private PrintWriter writer;
+        private ServletOutputStream stream;
+        public final HttpServletResponse proxy;
+
+        Response(OutputStream sink) {
+            this.sink = sink;
+            this.proxy = (HttpServletResponse) Proxy.newProxyInstance(ServletStubs.class.getClassLoader(),
+                    new Class<?>[] { HttpServletResponse.class }, (p, m, args) -> {
+                        switch (m.getName()) {
+                            case "getWriter":
+                                if (writer == null) {
+                                    writer = new PrintWriter(new OutputStreamWriter(sink, StandardCharsets.UTF_8));
+                                }
+                                return writer;
+                            case "getOutputStream":
+                                if (stream == null) {
+                                    stream = new SinkStream(sink);
+                                }
+                                return stream;
+                            case "setStatus":
+                            case "sendError":
+                                status = (Integer) args[0];
+                                return null;
+                            case "getStatus":
+                                return status;
+                            case "setHeader":
+                            case "addHeader":
+                                headers.put(((String) args[0]).toLowerCase(), (String) args[1]);
+                                return null;
+                            case "setDateHeader":
+                            case "setIntHeader":
+                                headers.put(((String) args[0]).toLowerCase(), String.valueOf(args[1]));
+                                return null;
+                            case "getHeader":
+                                return headers.get(((String) args[0]).toLowerCase());
+                            case "flushBuffer":
+                                flush();
+                                return null;
+                            default:
+                                return defaultValue(m.getReturnType());
+                        }
+                    });
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getHeader(String name) {
+            return headers.get(name.toLowerCase());
+        }
+
+        public void flush() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            sink.flush();
+        }
+    }
+
+    private static final class SinkStream extends ServletOutputStream {
+        private final OutputStream sink;
+
+        SinkStream(OutputStream sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            sink.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            sink.write(b, off, len);
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+        }
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
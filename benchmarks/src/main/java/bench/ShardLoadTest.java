@@ -0,0 +1,172 @@
+package bench;
+
+import dao.EmployeeDAO;
+import db.DBConnection;
+import model.Employee;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Department traffic (by-department lists, averages and salary changes) against one database and against the
+// same rows split over several shards, every database with the same simulated latency and pool size, plus the
+// time taken by the queries that go to every shard. The sharded run then checks that concurrent inserts get
+// unique ids, that the merged list is in id order and that a department change moves the row to its new shard.
+//
+//   java -cp target/benchmarks.jar bench.ShardLoadTest [clients] [seconds] [shards] [dbLatencyMs]
+public class ShardLoadTest {
+
+    private static final int EMPLOYEES = 10000;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int shards = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        long latencyMs = args.length > 3 ? Long.parseLong(args[3]) : 2;
+        int poolSize = 4;
+
+        BenchDatabase.startReplicated("unsharded", EMPLOYEES, 0, latencyMs, poolSize);
+        try {
+            run("1 database", clients, seconds);
+        } finally {
+            BenchDatabase.stop();
+        }
+        BenchDatabase.startSharded("sharded", EMPLOYEES, shards, latencyMs, poolSize);
+        try {
+            run(shards + " shards", clients, seconds);
+            System.out.printf("             connections per shard=%s%n",
+                    Arrays.toString(DBConnection.getShards().getBorrows()));
+            check(shards);
+        } finally {
+            BenchDatabase.stop();
+        }
+    }
+
+    private static void run(String mode, int clients, int seconds) throws Exception {
+        // every call has to reach a database
+        EmployeeDAO dao = new EmployeeDAO(null, null, null, null);
+        List<Employee> employees = BenchDatabase.employees(EMPLOYEES, 42);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong operations = new AtomicLong();
+
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        for (int i = 0; i < clients; i++) {
+            pool.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    String department = BenchDatabase.DEPARTMENTS[random.nextInt(BenchDatabase.DEPARTMENTS.length)];
+                    int op = random.nextInt(10);
+                    if (op < 7) {
+                        dao.getEmployeesByDepartment(department);
+                    } else if (op < 9) {
+                        dao.getAverageSalary(department);
+                    } else {
+                        Employee emp = employees.get(random.nextInt(employees.size()));
+                        dao.updateEmployee(new Employee(emp.getId(), emp.getName(), emp.getDepartment(),
+                                30000 + random.nextInt(90000)));
+                    }
+                    operations.incrementAndGet();
+                }
+            });
+        }
+        long start = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+
+        double countMs = time(() -> dao.getEmployeeCount());
+        double departmentsMs = time(() -> dao.getAllDepartments());
+        double pageMs = time(() -> dao.getEmployeesPage(null, EMPLOYEES / 2, 100));
+        double allMs = time(() -> dao.getAllEmployees());
+        System.out.printf("%-12s clients=%d department ops=%d throughput=%.0f ops/s; count %.1f ms, departments %.1f ms, "
+                        + "page of 100 %.1f ms, all %d rows %.1f ms%n",
+                mode, clients, operations.get(), operations.get() / elapsed, countMs, departmentsMs, pageMs,
+                dao.getEmployeeCount(), allMs);
+    }
+
+    private static double time(Runnable call) {
+        int calls = 50;
+        call.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            call.run();
+        }
+        return (System.nanoTime() - start) / 1e6 / calls;
+    }
+
+    private static void check(int shards) throws Exception {
+        EmployeeDAO dao = new EmployeeDAO(null, null, null, null);
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        AtomicLong inserted = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        for (int t = 0; t < 16; t++) {
+            pool.execute(() -> {
+                for (Employee emp : BenchDatabase.employees(100, ThreadLocalRandom.current().nextLong())) {
+                    emp.setId(0);
+                    if (dao.addEmployee(emp)) {
+                        inserted.incrementAndGet();
+                        ids.add(emp.getId());
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+
+        List<Employee> all = dao.getAllEmployees();
+        boolean ordered = true;
+        for (int i = 1; i < all.size(); i++) {
+            ordered &= all.get(i - 1).getId() < all.get(i).getId();
+        }
+
+        Employee emp = dao.getEmployeeById(1);
+        String moveTo = null;
+        for (String department : BenchDatabase.DEPARTMENTS) {
+            if (DBConnection.shardFor(department) != DBConnection.shardFor(emp.getDepartment())) {
+                moveTo = department;
+            }
+        }
+        String moved = "no department on another shard";
+        if (moveTo != null) {
+            dao.updateEmployee(new Employee(1, emp.getName(), moveTo, emp.getSalary()));
+            moved = String.format("id 1 %s (shard %d) -> %s (shard %d): now on shards %s, read back as %s",
+                    emp.getDepartment(), DBConnection.shardFor(emp.getDepartment()), moveTo,
+                    DBConnection.shardFor(moveTo), shardsHolding(1, shards), dao.getEmployeeById(1).getDepartment());
+        }
+
+        System.out.printf("             %d concurrent inserts, %d distinct ids, all above the seeded %d: %b%n",
+                inserted.get(), ids.size(), EMPLOYEES, ids.stream().allMatch(id -> id > EMPLOYEES));
+        System.out.printf("             merged list has %d rows (count %d), in id order: %b%n",
+                all.size(), dao.getEmployeeCount(), ordered);
+        System.out.printf("             %s%n", moved);
+    }
+
+    private static List<Integer> shardsHolding(int id, int shards) throws Exception {
+        List<Integer> holding = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            try (Connection conn = DBConnection.getConnection(shard);
+                 PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM employees WHERE id = ?")) {
+                stmt.setInt(1, id);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        holding.add(shard);
+                    }
+                }
+            }
+        }
+        return holding;
+    }
+}
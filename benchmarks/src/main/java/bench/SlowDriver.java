@@ -0,0 +1,100 @@
+package bench;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+// JDBC driver for "jdbc:slow:<latencyMs>:<h2 url without jdbc:h2:>" that delegates to H2 and sleeps
+// before every statement execution, standing in for the network round trip to a real MySQL server
+public final class SlowDriver implements Driver {
+    private static final String PREFIX = "jdbc:slow:";
+    private static final Driver H2 = new org.h2.Driver();
+
+    static {
+        try {
+            DriverManager.registerDriver(new SlowDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public static String url(long latencyMs, String h2Url) {
+        return PREFIX + latencyMs + ":" + h2Url.substring("jdbc:h2:".length());
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        String rest = url.substring(PREFIX.length());
+        int colon = rest.indexOf(':');
+        long latencyMs = Long.parseLong(rest.substring(0, colon));
+        Connection conn = H2.connect("jdbc:h2:" + rest.substring(colon + 1), info);
+        return (Connection) Proxy.newProxyInstance(SlowDriver.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, (proxy, m, args) -> {
+                    Object result = invoke(conn, m, args);
+                    if (result instanceof Statement) {
+                        Class<?> type = m.getReturnType();
+                        Statement stmt = (Statement) result;
+                        return Proxy.newProxyInstance(SlowDriver.class.getClassLoader(), new Class<?>[] { type },
+                                (p, sm, sargs) -> {
+                                    if (sm.getName().startsWith("execute")) {
+                                        Thread.sleep(latencyMs);
+                                    }
+                                    return invoke(stmt, sm, sargs);
+                                });
+                    }
+                    if ("commit".equals(m.getName())) {
+                        Thread.sleep(latencyMs);
+                    }
+                    return result;
+                });
+    }
+
+    private static Object invoke(Object target, java.lang.reflect.Method m, Object[] args) throws Throwable {
+        try {
+            return m.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith(PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+}
@@ -0,0 +1,142 @@
+package bench;
+
+import dao.DepartmentStats;
+import dao.EmployeeDAO;
+import dao.EmployeeSearchIndex;
+import dao.EmployeeSnapshot;
+import dao.SalaryIndex;
+import dao.SnapshotStore;
+import db.DBConnection;
+import model.Employee;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Cold start from the database against cold start from a memory-mapped snapshot: the time to load the
+// department statistics, search index and salary index each way. Then writes through the DAO and changes
+// made behind its back with plain SQL, an incremental refresh of the file, and a row-by-row comparison of
+// the refreshed snapshot with the table.
+//
+//   java -cp target/benchmarks.jar bench.SnapshotLoadTest [employees] [dbLatencyMs] [blockSize]
+public class SnapshotLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int employees = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        long latencyMs = args.length > 1 ? Long.parseLong(args[1]) : 2;
+        int blockSize = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+
+        BenchDatabase.startReplicated("snapshot", employees, 0, latencyMs, 4);
+        Path dir = Files.createTempDirectory("employees");
+        Path file = dir.resolve("employees.snapshot");
+        try {
+            SnapshotStore store = new SnapshotStore(file, 0, blockSize);
+            long start = System.nanoTime();
+            store.refresh();
+            System.out.printf("snapshot of %d employees written in %.0f ms, %d bytes%n",
+                    store.getSnapshot().size(), ms(start), Files.size(store.getSnapshot().getPath()));
+
+            start = System.nanoTime();
+            new DepartmentStats().ensureLoaded();
+            new EmployeeSearchIndex().ensureLoaded();
+            new SalaryIndex().ensureLoaded();
+            System.out.printf("cold start from the database:  stats, search and salary index loaded in %.0f ms%n",
+                    ms(start));
+
+            start = System.nanoTime();
+            EmployeeSnapshot snapshot = EmployeeSnapshot.open(file);
+            double mapped = ms(start);
+            List<Employee> rows = snapshot.employees();
+            new DepartmentStats().warm(rows);
+            new EmployeeSearchIndex().warm(rows);
+            new SalaryIndex().warm(rows);
+            System.out.printf("cold start from the snapshot:  mapped and checked in %.1f ms, all three warmed in %.0f ms%n",
+                    mapped, ms(start));
+
+            int lookups = 100000;
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                snapshot.get(1 + ThreadLocalRandom.current().nextInt(employees));
+            }
+            System.out.printf("offline lookup by id:           %.2f us%n", ms(start) * 1000 / lookups);
+
+            refresh(store, "no changes");
+
+            EmployeeDAO dao = new EmployeeDAO(null, null, null, null);
+            dao.addChangeListener(store);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < 200; i++) {
+                dao.updateSalary(1 + random.nextInt(employees), 30000 + random.nextInt(90000));
+            }
+            refresh(store, "200 DAO updates");
+
+            Set<Integer> touched = new HashSet<>();
+            try (Connection conn = DBConnection.getConnection(); Statement stmt = conn.createStatement()) {
+                for (int i = 0; i < 20; i++) {
+                    int id = 1 + random.nextInt(employees);
+                    touched.add(id);
+                    stmt.executeUpdate("UPDATE employees SET salary = salary + 1 WHERE id = " + id);
+                }
+                for (int i = 0; i < 5; i++) {
+                    int id = 1 + random.nextInt(employees);
+                    touched.add(id);
+                    stmt.executeUpdate("DELETE FROM employees WHERE id = " + id);
+                }
+                // neither changes a row count, a salary or a length
+                int renamed = 1 + random.nextInt(employees);
+                touched.add(renamed);
+                stmt.executeUpdate("UPDATE employees SET name = CONCAT('X', SUBSTRING(name, 2)) WHERE id = " + renamed);
+                int moved = 1 + random.nextInt(employees);
+                touched.add(moved);
+                stmt.executeUpdate("UPDATE employees SET department = CASE WHEN department = 'HR' THEN 'IT' ELSE 'HR' END"
+                        + " WHERE id = " + moved + " AND CHAR_LENGTH(department) = 2");
+                stmt.executeUpdate("INSERT INTO employees (name, department, salary) VALUES ('Out Of Band', 'IT', 50000)");
+            }
+            long before = store.getExternalChanges();
+            refresh(store, "28 changes by plain SQL");
+            System.out.printf("                               %d rows reported as changed outside the DAO (%d touched)%n",
+                    store.getExternalChanges() - before, touched.size() + 1);
+
+            List<Employee> table = dao.getAllEmployees();
+            EmployeeSnapshot refreshed = store.getSnapshot();
+            int mismatches = Math.abs(table.size() - refreshed.size());
+            for (Employee emp : table) {
+                Employee copy = refreshed.get(emp.getId());
+                if (copy == null || !copy.getName().equals(emp.getName())
+                        || !Objects.equals(copy.getDepartment(), emp.getDepartment())
+                        || Math.round(copy.getSalary() * 100) != Math.round(emp.getSalary() * 100)) {
+                    mismatches++;
+                }
+            }
+            System.out.printf("snapshot against the table:     %d of %d rows differ%n", mismatches, table.size());
+        } finally {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path generation : files) {
+                    Files.deleteIfExists(generation);
+                }
+            }
+            Files.deleteIfExists(dir);
+            BenchDatabase.stop();
+        }
+    }
+
+    private static void refresh(SnapshotStore store, String label) {
+        long blocks = store.getBlocksReloaded();
+        long rows = store.getRowsReloaded();
+        long start = System.nanoTime();
+        store.refresh();
+        System.out.printf("refresh after %-17s %.0f ms, %d blocks and %d rows read again%n",
+                label + ":", ms(start), store.getBlocksReloaded() - blocks, store.getRowsReloaded() - rows);
+    }
+
+    private static double ms(long start) {
+        return (System.nanoTime() - start) / 1e6;
+    }
+}
@@ -0,0 +1,111 @@
+package bench;
+
+import dao.EmployeeDAO;
+import servlet.EmployeeStreamServlet;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Connects many idle clients to the change stream, a share of them never reading, then makes a run of
+// salary updates and measures how quickly every reading client has all of them, how many threads the
+// connections cost and what happens to the clients that do not read.
+//
+//   java -cp target/benchmarks.jar bench.StreamLoadTest [clients] [updates] [slowPercent]
+public class StreamLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int clientCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int updates = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int slowPercent = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        System.setProperty("sse.maxClients", String.valueOf(clientCount));
+        System.setProperty("sse.clientQueue", "64");
+        System.setProperty("sse.heartbeatMs", "500");
+        System.setProperty("sse.stallTimeoutMs", "2000");
+        BenchDatabase.start("stream", 1000);
+        EmployeeStreamServlet servlet = new EmployeeStreamServlet();
+        servlet.init();
+        try {
+            int threadsBefore = Thread.activeCount();
+            List<ClientStream> fast = new ArrayList<>();
+            List<ClientStream> slow = new ArrayList<>();
+            AtomicLong completed = new AtomicLong();
+            long connectStart = System.nanoTime();
+            for (int i = 0; i < clientCount; i++) {
+                ClientStream stream = new ClientStream(i % 100 >= slowPercent);
+                (stream.reading ? fast : slow).add(stream);
+                servlet.service(ServletStubs.asyncGet(completed::incrementAndGet),
+                        ServletStubs.response(stream).proxy);
+            }
+            double connectMs = (System.nanoTime() - connectStart) / 1e6;
+            System.out.printf("connected %d clients (%d not reading) in %.0f ms, threads %d -> %d%n",
+                    clientCount, slow.size(), connectMs, threadsBefore, Thread.activeCount());
+
+            EmployeeDAO dao = new EmployeeDAO();
+            long start = System.nanoTime();
+            for (int i = 0; i < updates; i++) {
+                dao.updateSalary(1 + i % 1000, 50000 + i);
+            }
+            double writeMs = (System.nanoTime() - start) / 1e6;
+            // every reading client should get the ready event plus one event per update
+            long deadline = System.currentTimeMillis() + 60000;
+            while (minMessages(fast) < updates + 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            double deliveredMs = (System.nanoTime() - start) / 1e6;
+            System.out.printf("%d updates written in %.0f ms, all reading clients had them after %.0f ms "
+                            + "(%.0f deliveries/s), min messages per client %d%n",
+                    updates, writeMs, deliveredMs, (double) updates * fast.size() / (deliveredMs / 1000),
+                    minMessages(fast), updates + 1);
+
+            Thread.sleep(3000);
+            System.out.printf("after the stall timeout: %d of %d clients still connected, %d completed%n",
+                    clientCount - completed.get(), clientCount, completed.get());
+        } finally {
+            servlet.destroy();
+            BenchDatabase.stop();
+        }
+    }
+
+    private static long minMessages(List<ClientStream> streams) {
+        long min = Long.MAX_VALUE;
+        for (ClientStream stream : streams) {
+            min = Math.min(min, stream.messages.get());
+        }
+        return min;
+    }
+
+    // Counts SSE messages (one write each, heartbeats excluded); a client that is not reading is never ready
+    private static final class ClientStream extends ServletOutputStream {
+        final boolean reading;
+        final AtomicLong messages = new AtomicLong();
+
+        ClientStream(boolean reading) {
+            this.reading = reading;
+        }
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (len > 0 && b[off] != ':') {
+                messages.incrementAndGet();
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return reading;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+        }
+    }
+}
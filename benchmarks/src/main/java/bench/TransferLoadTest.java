@@ -0,0 +1,114 @@
+package bench;
+
+import servlet.EmployeeTransferServlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+// Imports a generated CSV of N rows through /api/employees/import without ever materialising the file,
+// then exports the table again as CSV and NDJSON, printing throughput and the peak heap seen.
+//
+//   java -cp target/benchmarks.jar bench.TransferLoadTest [rows] [chunkSize]
+public class TransferLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        String chunkSize = args.length > 1 ? args[1] : "1000";
+
+        // keep the per-row listeners cheap; this measures the write path, not the cache
+        System.setProperty("cache.employee.enabled", "false");
+        BenchDatabase.start("transfer", 0);
+        EmployeeTransferServlet servlet = new EmployeeTransferServlet();
+        servlet.init();
+        Thread heapWatcher = watchHeap();
+        try {
+            Map<String, String> params = new HashMap<>();
+            params.put("chunkSize", chunkSize);
+            ByteArrayOutputStream report = new ByteArrayOutputStream();
+            ServletStubs.Response response = ServletStubs.response(report);
+            servlet.service(ServletStubs.request("POST", "/api/employees/import", params,
+                    Collections.singletonMap("content-type", "text/csv"), () -> new GeneratedCsv(rows)), response.proxy);
+            response.flush();
+            System.out.println("import  " + report);
+
+            for (String format : new String[] { "csv", "ndjson" }) {
+                CountingOutputStream sink = new CountingOutputStream();
+                ServletStubs.Response export = ServletStubs.response(sink);
+                long start = System.nanoTime();
+                servlet.service(ServletStubs.request("GET", "/api/employees/export",
+                        Collections.singletonMap("format", format), Collections.<String, String>emptyMap(),
+                        () -> null), export.proxy);
+                export.flush();
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("export  %-6s %d bytes in %.2fs (%.0f rows/s)%n", format, sink.getCount(), seconds,
+                        rows / seconds);
+            }
+            System.out.printf("peak heap used %d MB%n", peakHeap / (1024 * 1024));
+        } finally {
+            heapWatcher.interrupt();
+            servlet.destroy();
+            BenchDatabase.stop();
+        }
+    }
+
+    private static volatile long peakHeap;
+
+    private static Thread watchHeap() {
+        Thread t = new Thread(() -> {
+            Runtime rt = Runtime.getRuntime();
+            while (!Thread.currentThread().isInterrupted()) {
+                peakHeap = Math.max(peakHeap, rt.totalMemory() - rt.freeMemory());
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    // CSV produced on demand, with a header and one malformed line per 100,000 rows
+    private static final class GeneratedCsv extends Reader {
+        private final int rows;
+        private int next;
+        private String pending = "name,department,salary\n";
+        private int pos;
+
+        GeneratedCsv(int rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public int read(char[] buf, int off, int len) {
+            int copied = 0;
+            while (copied < len) {
+                if (pos == pending.length()) {
+                    if (next == rows) {
+                        break;
+                    }
+                    next++;
+                    pending = next % 100_000 == 0
+                            ? "Broken " + next + ",Engineering,not-a-number\n"
+                            : "\"Employee, " + next + "\"," + BenchDatabase.DEPARTMENTS[next % BenchDatabase.DEPARTMENTS.length]
+                                    + "," + (40000 + next % 80000) + ".50\n";
+                    pos = 0;
+                }
+                int n = Math.min(len - copied, pending.length() - pos);
+                pending.getChars(pos, pos + n, buf, off + copied);
+                pos += n;
+                copied += n;
+            }
+            return copied == 0 && len > 0 ? -1 : copied;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
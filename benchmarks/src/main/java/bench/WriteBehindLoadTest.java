@@ -0,0 +1,141 @@
+package bench;
+
+import dao.EmployeeDAO;
+import dao.WriteBehind;
+import db.DBConnection;
+import model.Employee;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Salary updates from many clients, each waiting until its update is committed: one autocommit transaction per
+// call, then the same calls through the write-behind queue, which commits whatever is queued together. Then a
+// burst of updates submitted without waiting, many of them to the same ids, checking that reads see them before
+// they are committed and that the table ends up with the last salary submitted for every id.
+//
+//   java -cp target/benchmarks.jar bench.WriteBehindLoadTest [clients] [seconds] [dbLatencyMs] [flushMs]
+public class WriteBehindLoadTest {
+
+    private static final int EMPLOYEES = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long latencyMs = args.length > 2 ? Long.parseLong(args[2]) : 2;
+        long flushMs = args.length > 3 ? Long.parseLong(args[3]) : 5;
+        int poolSize = 4;
+
+        BenchDatabase.startReplicated("writebehind", EMPLOYEES, 0, latencyMs, poolSize);
+        try {
+            // every update has to reach the database
+            EmployeeDAO dao = new EmployeeDAO(null, null, null, null);
+            run("write-through", dao, clients, seconds);
+
+            WriteBehind queue = new WriteBehind(dao, 10000, 500, flushMs);
+            dao.setWriteBehind(queue);
+            run("write-behind", dao, clients, seconds);
+            System.out.printf("              flushMs=%d: %d group commits, %.1f rows per commit%n",
+                    flushMs, queue.getBatches(), (double) queue.getCommitted() / queue.getBatches());
+
+            burst(dao, 100000);
+            dao.shutdown();
+        } finally {
+            BenchDatabase.stop();
+        }
+    }
+
+    private static void run(String mode, EmployeeDAO dao, int clients, int seconds) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong updates = new AtomicLong();
+        AtomicLong failures = new AtomicLong();
+        AtomicLong nanos = new AtomicLong();
+
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        for (int i = 0; i < clients; i++) {
+            pool.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    long start = System.nanoTime();
+                    boolean updated = dao.updateSalary(1 + random.nextInt(EMPLOYEES), 30000 + random.nextInt(90000));
+                    nanos.addAndGet(System.nanoTime() - start);
+                    updates.incrementAndGet();
+                    if (!updated) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+        }
+        long start = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+
+        System.out.printf("%-13s clients=%d updates=%d throughput=%.0f updates/s mean wait %.1f ms failed=%d%n",
+                mode, clients, updates.get(), updates.get() / elapsed, nanos.get() / 1e6 / updates.get(),
+                failures.get());
+    }
+
+    private static void burst(EmployeeDAO dao, int count) throws Exception {
+        WriteBehind queue = dao.getWriteBehind();
+        long submittedBefore = queue.getSubmitted();
+        long mergedBefore = queue.getMerged();
+        long batchesBefore = queue.getBatches();
+        Map<Integer, Double> last = new HashMap<>();
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(count);
+        int stale = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            int id = 1 + ThreadLocalRandom.current().nextInt(EMPLOYEES);
+            double salary = 30000 + i;
+            futures.add(dao.submitSalaryUpdate(id, salary));
+            last.put(id, salary);
+            if (i % 1000 == 0) {
+                Employee emp = dao.getEmployeeById(id);
+                if (emp == null || emp.getSalary() != salary) {
+                    stale++;
+                }
+            }
+        }
+        double submitMs = (System.nanoTime() - start) / 1e6;
+        int committed = 0;
+        for (CompletableFuture<Boolean> future : futures) {
+            if (future.join()) {
+                committed++;
+            }
+        }
+        double durableMs = (System.nanoTime() - start) / 1e6;
+
+        int matching = 0;
+        try (Connection conn = DBConnection.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, salary FROM employees")) {
+            while (rs.next()) {
+                Double expected = last.get(rs.getInt(1));
+                if (expected == null || expected == rs.getDouble(2)) {
+                    matching++;
+                }
+            }
+        }
+        System.out.printf("burst         %d updates to %d ids submitted in %.0f ms, all committed after %.0f ms "
+                        + "(%d acknowledged); %d merged, %d group commits; %d of %d reads before the commit were "
+                        + "stale; %d of %d rows hold the last salary submitted%n",
+                queue.getSubmitted() - submittedBefore, last.size(), submitMs, durableMs, committed,
+                queue.getMerged() - mergedBefore, queue.getBatches() - batchesBefore, stale, count / 1000,
+                matching, EMPLOYEES);
+    }
+}
@@ -1,12 +1,34 @@
 import dao.EmployeeDAO;
+import dao.EmployeeSnapshot;
+import dao.SalaryAdjustmentResult;
+import db.DBConnection;
 import model.Employee;
+import model.SalaryAdjustment;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.util.Date;
 import java.util.List;
 import java.util.Scanner;
 
 public class Main {
+    // "--offline [file]" browses a snapshot without the database; the file defaults to -Dsnapshot.path.
+    // Without the flag, an unreachable database falls back to the snapshot when there is one.
     public static void main(String[] args) {
-        EmployeeDAO dao = new EmployeeDAO();
         Scanner sc = new Scanner(System.in);
+        boolean offline = args.length > 0 && args[0].equals("--offline");
+        String snapshotPath = offline && args.length > 1 ? args[1] : System.getProperty("snapshot.path");
+        if (!offline && snapshotPath != null && !databaseReachable()) {
+            System.out.println("Database unreachable, opening the snapshot read-only");
+            offline = true;
+        }
+        if (offline) {
+            runOffline(snapshotPath, sc);
+            sc.close();
+            return;
+        }
+
+        EmployeeDAO.startShared();
+        EmployeeDAO dao = new EmployeeDAO();
         int choice;
 
         do {
@@ -17,6 +39,7 @@ public class Main {
             System.out.println("4. Add Employee");
             System.out.println("5. Update Salary");
             System.out.println("6. Delete Employee");
+            System.out.println("7. Adjust Department Salaries (%)");
             System.out.println("0. Exit");
             System.out.print("Enter choice: ");
             choice = sc.nextInt();
@@ -59,9 +82,81 @@ public class Main {
                     id = sc.nextInt();
                     dao.deleteEmployee(id);
                     break;
+                case 7:
+                    System.out.print("Enter department: ");
+                    dept = sc.next();
+                    System.out.print("Enter percent change: ");
+                    double percent = sc.nextDouble();
+                    SalaryAdjustmentResult adjusted = dao.adjustSalaries(SalaryAdjustment.byPercent(dept, percent), 0);
+                    System.out.println("Adjusted " + adjusted.getAffected() + " salaries");
+                    adjusted.getDepartments().forEach(System.out::println);
+                    break;
             }
         } while (choice != 0);
 
+        // commits queued writes, then writes the last snapshot, so the next start warms from current data
+        dao.shutdown();
+        EmployeeDAO.stopShared();
         sc.close();
     }
+
+    private static boolean databaseReachable() {
+        try (Connection conn = DBConnection.getConnection()) {
+            return conn.isValid(2);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static void runOffline(String path, Scanner sc) {
+        if (path == null) {
+            System.out.println("No snapshot file: pass --offline <file> or -Dsnapshot.path");
+            return;
+        }
+        EmployeeSnapshot snapshot;
+        try {
+            snapshot = EmployeeSnapshot.open(Paths.get(path));
+        } catch (Exception e) {
+            System.out.println("Cannot open snapshot " + path + ": " + e.getMessage());
+            return;
+        }
+        List<Employee> employees = snapshot.employees();
+        int choice;
+
+        do {
+            System.out.println("\n=== Employee Management System (offline) ===");
+            System.out.println(employees.size() + " employees as of " + new Date(snapshot.getCreatedAt()));
+            System.out.println("1. View All Employees");
+            System.out.println("2. View Employees by Department");
+            System.out.println("3. Get Average Salary by Department");
+            System.out.println("4. Find Employee by ID");
+            System.out.println("0. Exit");
+            System.out.print("Enter choice: ");
+            choice = sc.nextInt();
+
+            switch (choice) {
+                case 1:
+                    employees.forEach(System.out::println);
+                    break;
+                case 2:
+                    System.out.print("Enter department: ");
+                    String dept = sc.next();
+                    employees.stream().filter(e -> e.getDepartment().equalsIgnoreCase(dept))
+                            .forEach(System.out::println);
+                    break;
+                case 3:
+                    System.out.print("Enter department: ");
+                    String avgDept = sc.next();
+                    double avg = employees.stream().filter(e -> e.getDepartment().equalsIgnoreCase(avgDept))
+                            .mapToDouble(Employee::getSalary).average().orElse(0.0);
+                    System.out.println("Average salary in " + avgDept + " = " + avg);
+                    break;
+                case 4:
+                    System.out.print("Enter ID: ");
+                    Employee emp = snapshot.get(sc.nextInt());
+                    System.out.println(emp != null ? emp : "Employee not found");
+                    break;
+            }
+        } while (choice != 0);
+    }
 }
@@ -0,0 +1,58 @@
+package dao;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Outcome of a bulk insert/update: the id of every input row (0 if it failed) and one error per failed row
+public class BatchResult {
+    private final int[] ids;
+    private final boolean[] recorded;
+    private int succeeded;
+    private int failed;
+    private final List<RowError> errors = new ArrayList<>();
+
+    public BatchResult(int size) {
+        this.ids = new int[size];
+        this.recorded = new boolean[size];
+    }
+
+    void success(int index, int id) {
+        ids[index] = id;
+        recorded[index] = true;
+        succeeded++;
+    }
+
+    void failure(int index, String message) {
+        ids[index] = 0;
+        recorded[index] = true;
+        failed++;
+        errors.add(new RowError(index, message));
+    }
+
+    void failRemaining(String message) {
+        for (int i = 0; i < recorded.length; i++) {
+            if (!recorded[i]) {
+                failure(i, message);
+            }
+        }
+    }
+
+    // getters
+    public int[] getIds() { return ids; }
+    public int getSucceeded() { return succeeded; }
+    public int getFailed() { return failed; }
+    public List<RowError> getErrors() { return errors; }
+
+    public static class RowError {
+        private final int index;
+        private final String message;
+
+        public RowError(int index, String message) {
+            this.index = index;
+            this.message = message;
+        }
+
+        public int getIndex() { return index; }
+        public String getMessage() { return message; }
+    }
+}
@@ -0,0 +1,161 @@
+package dao;
+
+import model.Employee;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Ordered feed of committed employee changes for live clients. Every change gets the next event id and
+// is kept in a bounded history, so a client that reconnects can catch up from the last id it saw. One
+// dispatcher thread hands events to subscribers, which must not block. If the dispatcher falls behind,
+// or a write cannot be described row by row, subscribers get a RESYNC event and should refetch.
+public class ChangeFeed implements EmployeeChangeListener {
+
+    public enum Type { INSERTED, UPDATED, DELETED, RESYNC }
+
+    public static final class Event {
+        private final long id;
+        private final Type type;
+        private final Employee employee;
+
+        Event(long id, Type type, Employee employee) {
+            this.id = id;
+            this.type = type;
+            this.employee = employee;
+        }
+
+        public long getId() { return id; }
+        public Type getType() { return type; }
+        // The row after an insert or update, the removed row for a delete, null for RESYNC
+        public Employee getEmployee() { return employee; }
+    }
+
+    public interface Subscriber {
+        void onEvent(Event event);
+    }
+
+    private final int historySize;
+    private final ArrayDeque<Event> history;
+    private final BlockingQueue<Event> pending;
+    private final Set<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+    private long lastId;
+    private Thread dispatcher;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong overflows = new AtomicLong();
+
+    public ChangeFeed(int historySize, int maxPending) {
+        this.historySize = historySize;
+        this.history = new ArrayDeque<>(Math.min(historySize, 1024));
+        this.pending = new ArrayBlockingQueue<>(maxPending);
+    }
+
+    public static ChangeFeed fromSystemProperties() {
+        return new ChangeFeed(
+                Integer.getInteger("events.history", 1024),
+                Integer.getInteger("events.maxPending", 10000));
+    }
+
+    @Override
+    public void employeeInserted(Employee emp) {
+        publish(Type.INSERTED, copy(emp));
+    }
+
+    @Override
+    public void employeeUpdated(Employee before, Employee after) {
+        publish(Type.UPDATED, copy(after));
+    }
+
+    @Override
+    public void employeeDeleted(Employee before) {
+        publish(Type.DELETED, copy(before));
+    }
+
+    // For writes whose rows are not known individually
+    public void resync() {
+        publish(Type.RESYNC, null);
+    }
+
+    private synchronized void publish(Type type, Employee emp) {
+        Event event = new Event(++lastId, type, emp);
+        history.addLast(event);
+        if (history.size() > historySize) {
+            history.removeFirst();
+        }
+        published.incrementAndGet();
+        if (!pending.offer(event)) {
+            // The dispatcher is behind: what it has not sent yet is replaced by one resync
+            overflows.incrementAndGet();
+            pending.clear();
+            pending.offer(new Event(event.id, Type.RESYNC, null));
+        }
+        if (dispatcher == null) {
+            dispatcher = new Thread(this::dispatch, "employee-change-feed");
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+        }
+    }
+
+    private void dispatch() {
+        while (true) {
+            Event event;
+            try {
+                event = pending.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (Subscriber subscriber : subscribers) {
+                try {
+                    subscriber.onEvent(event);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    public void subscribe(Subscriber subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    public void unsubscribe(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    public synchronized long getLastEventId() {
+        return lastId;
+    }
+
+    // Events after the given id, oldest first, or null when some of them have left the history
+    public synchronized List<Event> eventsAfter(long id) {
+        if (id >= lastId) {
+            return Collections.emptyList();
+        }
+        Event oldest = history.peekFirst();
+        if (oldest == null || oldest.id > id + 1) {
+            return null;
+        }
+        List<Event> events = new ArrayList<>();
+        for (Event event : history) {
+            if (event.id > id) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    public long getPublished() { return published.get(); }
+    public long getOverflows() { return overflows.get(); }
+    public int getPending() { return pending.size(); }
+
+    private static Employee copy(Employee emp) {
+        return new Employee(emp.getId(), emp.getName(), emp.getDepartment(), emp.getSalary());
+    }
+}
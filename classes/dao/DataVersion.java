@@ -0,0 +1,30 @@
+package dao;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Monotonic version of the employees table as seen by this JVM, bumped after every committed write made
+// through EmployeeDAO. Responses derived from the table can be tagged with it and revalidated without a
+// query. The start time is part of the tag so versions from before a restart never match.
+public class DataVersion {
+    private final long epoch = System.currentTimeMillis();
+    private final AtomicLong version = new AtomicLong();
+    private volatile long lastModified = epoch;
+
+    public void bump() {
+        lastModified = System.currentTimeMillis();
+        version.incrementAndGet();
+    }
+
+    public long get() {
+        return version.get();
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    // Strong entity tag for the given version, e.g. "18f3c2a1b00-42"
+    public String etag(long version) {
+        return "\"" + Long.toHexString(epoch) + "-" + version + "\"";
+    }
+}
@@ -0,0 +1,321 @@
+package dao;
+
+import db.DBConnection;
+import model.DepartmentSummary;
+import model.Employee;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per-department count/sum/min/max loaded once from the database and then kept current by the DAO's
+// write methods, so the dashboard aggregates are answered from memory. Salaries are tracked in cents
+// to keep the running sums exact. A periodic reconcile reloads everything to repair drift caused by
+// writes that did not go through this JVM. Departments match in any case, as under MySQL's default collation;
+// each is listed under the spelling it was first seen with.
+public class DepartmentStats implements EmployeeChangeListener {
+
+    private static final class Dept {
+        final String name;
+        long count;
+        long sumCents;
+        boolean listed;
+        // salary in cents -> number of employees earning it, so min/max survive deletes
+        final TreeMap<Long, Integer> salaries = new TreeMap<>();
+
+        Dept(String name) {
+            this.name = name;
+        }
+
+        void add(long cents) {
+            add(cents, 1);
+        }
+
+        // A count that comes back to zero drops its salary, whichever side of zero it came from
+        void add(long cents, int n) {
+            count += n;
+            sumCents += cents * n;
+            salaries.merge(cents, n, (a, b) -> a + b == 0 ? null : a + b);
+        }
+
+        // Counts may dip below zero for a moment when two updates of the same row are reported out of
+        // order; the deltas commute, so the totals come out right once both have been applied
+        void remove(long cents) {
+            add(cents, -1);
+        }
+    }
+
+    // keyed by key(department)
+    private Map<String, Dept> departments = new HashMap<>();
+    private List<String> sortedDepartments = Collections.emptyList();
+    private long total;
+    private volatile boolean loaded;
+    // Bumped on every local write; a load that overlapped a write is discarded and retried
+    private final AtomicLong version = new AtomicLong();
+    private final Object loadLock = new Object();
+
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong driftRepairs = new AtomicLong();
+    private ScheduledExecutorService reconciler;
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public boolean ensureLoaded() {
+        if (!loaded) {
+            synchronized (loadLock) {
+                if (!loaded) {
+                    reload();
+                }
+            }
+        }
+        return loaded;
+    }
+
+    public void reconcile() {
+        synchronized (loadLock) {
+            reload();
+        }
+    }
+
+    private void reload() {
+        String sql = "SELECT department, salary, COUNT(*) AS n FROM employees GROUP BY department, salary";
+        for (int attempt = 0; attempt < 3; attempt++) {
+            long startVersion = version.get();
+            Map<String, Dept> fresh = new HashMap<>();
+            long freshTotal = 0;
+
+            // a department lives on one shard, so the shards' groups never overlap
+            try {
+                for (int shard = 0; shard < DBConnection.getShardCount(); shard++) {
+                    try (Connection conn = DBConnection.getConnection(shard);
+                         Statement stmt = conn.createStatement();
+                         ResultSet rs = stmt.executeQuery(sql)) {
+
+                        while (rs.next()) {
+                            String name = rs.getString(1);
+                            Dept dept = fresh.computeIfAbsent(key(name), k -> new Dept(name));
+                            long cents = toCents(rs.getDouble(2));
+                            int n = rs.getInt(3);
+                            dept.add(cents, n);
+                            dept.listed = true;
+                            freshTotal += n;
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                return;
+            }
+
+            synchronized (this) {
+                if (version.get() != startVersion) {
+                    continue;
+                }
+                if (loaded && !sameTotals(fresh, freshTotal)) {
+                    driftRepairs.incrementAndGet();
+                }
+                departments = fresh;
+                total = freshTotal;
+                sortedDepartments = sortedKeys(fresh);
+                loaded = true;
+                reloads.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    // Fills empty stats from a snapshot of the table instead of the database; false if already loaded
+    public boolean warm(Collection<Employee> rows) {
+        Map<String, Dept> fresh = new HashMap<>();
+        for (Employee emp : rows) {
+            Dept dept = fresh.computeIfAbsent(key(emp.getDepartment()), k -> new Dept(emp.getDepartment()));
+            dept.add(toCents(emp.getSalary()));
+            dept.listed = true;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return false;
+            }
+            version.incrementAndGet();
+            departments = fresh;
+            total = rows.size();
+            sortedDepartments = sortedKeys(fresh);
+            loaded = true;
+            return true;
+        }
+    }
+
+    private boolean sameTotals(Map<String, Dept> fresh, long freshTotal) {
+        if (freshTotal != total || fresh.size() != departments.size()) {
+            return false;
+        }
+        for (Map.Entry<String, Dept> e : fresh.entrySet()) {
+            Dept current = departments.get(e.getKey());
+            if (current == null || current.count != e.getValue().count || current.sumCents != e.getValue().sumCents) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized void startReconciler(long intervalMs) {
+        if (reconciler != null || intervalMs <= 0) {
+            return;
+        }
+        reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "department-stats-reconciler");
+            t.setDaemon(true);
+            return t;
+        });
+        reconciler.scheduleWithFixedDelay(() -> {
+            if (loaded) {
+                reconcile();
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopReconciler() {
+        if (reconciler != null) {
+            reconciler.shutdownNow();
+            reconciler = null;
+        }
+    }
+
+    // --- writes, called by EmployeeDAO after the change has been committed ---
+
+    @Override
+    public void employeeInserted(Employee emp) {
+        recordInsert(emp.getDepartment(), emp.getSalary());
+    }
+
+    @Override
+    public void employeeUpdated(Employee before, Employee after) {
+        recordUpdate(before.getDepartment(), before.getSalary(), after.getDepartment(), after.getSalary());
+    }
+
+    @Override
+    public void employeeDeleted(Employee before) {
+        recordDelete(before.getDepartment(), before.getSalary());
+    }
+
+    public synchronized void recordInsert(String department, double salary) {
+        version.incrementAndGet();
+        if (loaded) {
+            addTo(department, toCents(salary));
+        }
+    }
+
+    public synchronized void recordUpdate(String oldDepartment, double oldSalary, String newDepartment, double newSalary) {
+        version.incrementAndGet();
+        if (loaded) {
+            removeFrom(oldDepartment, toCents(oldSalary));
+            addTo(newDepartment, toCents(newSalary));
+        }
+    }
+
+    public synchronized void recordDelete(String department, double salary) {
+        version.incrementAndGet();
+        if (loaded) {
+            removeFrom(department, toCents(salary));
+        }
+    }
+
+    // For writes whose previous values are unknown; the next read reloads from the database
+    public synchronized void invalidate() {
+        version.incrementAndGet();
+        loaded = false;
+    }
+
+    private void addTo(String department, long cents) {
+        String key = key(department);
+        Dept dept = departments.computeIfAbsent(key, k -> new Dept(department));
+        dept.add(cents);
+        total++;
+        refreshListing(key, dept);
+    }
+
+    private void removeFrom(String department, long cents) {
+        String key = key(department);
+        Dept dept = departments.computeIfAbsent(key, k -> new Dept(department));
+        dept.remove(cents);
+        total--;
+        refreshListing(key, dept);
+    }
+
+    // The sorted department list only changes when a department gains its first or loses its last employee
+    private void refreshListing(String key, Dept dept) {
+        boolean visible = dept.count > 0;
+        if (visible != dept.listed) {
+            dept.listed = visible;
+            sortedDepartments = sortedKeys(departments);
+        }
+        if (dept.count == 0 && dept.salaries.isEmpty()) {
+            departments.remove(key);
+        }
+    }
+
+    // --- reads ---
+
+    public synchronized double getAverageSalary(String department) {
+        Dept dept = department == null ? null : departments.get(key(department));
+        return dept == null || dept.count <= 0 ? 0.0 : dept.sumCents / 100.0 / dept.count;
+    }
+
+    public synchronized List<String> getDepartments() {
+        return sortedDepartments;
+    }
+
+    public synchronized int getEmployeeCount() {
+        return (int) total;
+    }
+
+    public synchronized List<DepartmentSummary> getSummaries() {
+        List<DepartmentSummary> list = new ArrayList<>(sortedDepartments.size());
+        for (String name : sortedDepartments) {
+            Dept dept = departments.get(key(name));
+            if (dept.count <= 0 || dept.salaries.isEmpty()) {
+                continue;
+            }
+            list.add(new DepartmentSummary(name, dept.count, dept.sumCents / 100.0,
+                    dept.salaries.firstKey() / 100.0, dept.salaries.lastKey() / 100.0));
+        }
+        return list;
+    }
+
+    public long getReloads() { return reloads.get(); }
+    public long getDriftRepairs() { return driftRepairs.get(); }
+
+    // Department names in any-case order, as the sharded merge sorts them
+    private static List<String> sortedKeys(Map<String, Dept> map) {
+        List<String> names = new ArrayList<>();
+        for (Dept dept : map.values()) {
+            if (dept.count > 0) {
+                names.add(dept.name);
+            }
+        }
+        names.sort(String.CASE_INSENSITIVE_ORDER);
+        return Collections.unmodifiableList(names);
+    }
+
+    private static String key(String department) {
+        return department.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static long toCents(double salary) {
+        return Math.round(salary * 100);
+    }
+}
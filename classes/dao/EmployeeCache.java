@@ -0,0 +1,150 @@
+package dao;
+
+import model.Employee;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded LRU cache of employees by id with optional TTL and negative entries for ids that do not exist.
+// Values are copied in and out so callers can never mutate a cached instance.
+public class EmployeeCache implements EmployeeChangeListener {
+
+    public enum Lookup { HIT, NEGATIVE_HIT, MISS }
+
+    private static final class CacheEntry {
+        final Employee value;
+        final long expiresAt;
+
+        CacheEntry(Employee value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maxSize;
+    private final long ttlMs;
+    private final long negativeTtlMs;
+    private final LinkedHashMap<Integer, CacheEntry> entries;
+    // Bumped by every write so a load that raced with it does not repopulate a stale row
+    private final AtomicLong writeGeneration = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    public EmployeeCache(int maxSize, long ttlMs, long negativeTtlMs) {
+        this.maxSize = maxSize;
+        this.ttlMs = ttlMs;
+        this.negativeTtlMs = negativeTtlMs;
+        this.entries = new LinkedHashMap<Integer, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CacheEntry> eldest) {
+                if (size() > EmployeeCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static EmployeeCache fromSystemProperties() {
+        return new EmployeeCache(
+                Integer.getInteger("cache.employee.maxSize", 10000),
+                Long.getLong("cache.employee.ttlMs", 0L),
+                Long.getLong("cache.employee.negativeTtlMs", 30000L));
+    }
+
+    // Returns HIT and fills holder[0], NEGATIVE_HIT for a cached "not found", or MISS
+    public Lookup get(int id, Employee[] holder) {
+        CacheEntry entry;
+        synchronized (this) {
+            entry = entries.get(id);
+            if (entry != null && entry.expiresAt != 0 && entry.expiresAt < System.currentTimeMillis()) {
+                entries.remove(id);
+                expirations.incrementAndGet();
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return Lookup.MISS;
+        }
+        if (entry.value == null) {
+            negativeHits.incrementAndGet();
+            return Lookup.NEGATIVE_HIT;
+        }
+        hits.incrementAndGet();
+        holder[0] = copy(entry.value);
+        return Lookup.HIT;
+    }
+
+    public long beginLoad() {
+        return writeGeneration.get();
+    }
+
+    // Caches a value read from the database unless a write happened after beginLoad()
+    public synchronized void putLoaded(int id, Employee emp, long generation) {
+        if (writeGeneration.get() != generation) {
+            return;
+        }
+        if (emp != null) {
+            entries.put(id, new CacheEntry(copy(emp), expiry(ttlMs)));
+        } else if (negativeTtlMs > 0) {
+            entries.put(id, new CacheEntry(null, expiry(negativeTtlMs)));
+        }
+    }
+
+    // Write-through after a successful insert
+    public synchronized void put(Employee emp) {
+        writeGeneration.incrementAndGet();
+        entries.put(emp.getId(), new CacheEntry(copy(emp), expiry(ttlMs)));
+    }
+
+    public synchronized void invalidate(int id) {
+        writeGeneration.incrementAndGet();
+        entries.remove(id);
+    }
+
+    public synchronized void clear() {
+        writeGeneration.incrementAndGet();
+        entries.clear();
+    }
+
+    @Override
+    public void employeeInserted(Employee emp) {
+        put(emp);
+    }
+
+    // Updates and deletes invalidate rather than write through: listeners run after commit, so two
+    // concurrent updates of one id may be reported out of order
+    @Override
+    public void employeeUpdated(Employee before, Employee after) {
+        invalidate(after.getId());
+    }
+
+    @Override
+    public void employeeDeleted(Employee before) {
+        invalidate(before.getId());
+    }
+
+    private static long expiry(long ttl) {
+        return ttl > 0 ? System.currentTimeMillis() + ttl : 0;
+    }
+
+    private static Employee copy(Employee emp) {
+        return new Employee(emp.getId(), emp.getName(), emp.getDepartment(), emp.getSalary());
+    }
+
+    // getters
+    public synchronized int size() { return entries.size(); }
+    public int getMaxSize() { return maxSize; }
+    public long getHits() { return hits.get(); }
+    public long getNegativeHits() { return negativeHits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getEvictions() { return evictions.get(); }
+    public long getExpirations() { return expirations.get(); }
+}
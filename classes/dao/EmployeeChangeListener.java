@@ -0,0 +1,13 @@
+package dao;
+
+import model.Employee;
+
+// Notified by EmployeeDAO after a write has been committed. "before" is the row as it was read under
+// the row lock in the same transaction. Listeners must copy any Employee they keep.
+public interface EmployeeChangeListener {
+    void employeeInserted(Employee emp);
+
+    void employeeUpdated(Employee before, Employee after);
+
+    void employeeDeleted(Employee before);
+}
@@ -4,354 +4,1970 @@
 package dao;
 
 import db.DBConnection;
+import metrics.Metrics;
+import model.DepartmentSummary;
 import model.Employee;
+import model.SalaryAdjustment;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
 
+// Reads use DBConnection.getReadConnection(), which is a replica when replicas are configured. Writes use
+// the primary, and so do the loads behind the in-memory cache, statistics and search index.
+//
+// With -Ddb.shards the table is split by department: a department's list, average and writes go to its
+// shard, while the full list, pages, counts and department lists are asked of every shard in parallel and
+// merged by id. Ids come from IdAllocator so they stay unique across shards, and looking an employee up by
+// id asks every shard at once.
+//
+// With -Dwritebehind.enabled=true, updateEmployee and updateSalary go through a WriteBehind queue and are
+// committed in groups. A lookup by id shows a queued update straight away; the other reads commit whatever is
+// queued before they run.
+//
+// With -Dsnapshot.path, the cache, statistics and indexes start from the EmployeeSnapshot file written by the
+// last run instead of waiting for the database, and a SnapshotStore keeps the file current in the background.
 public class EmployeeDAO {
 
+    private static final EmployeeCache SHARED_CACHE = EmployeeCache.fromSystemProperties();
+    private static final DepartmentStats SHARED_STATS = new DepartmentStats();
+    private static final DataVersion DATA_VERSION = new DataVersion();
+    private static final EmployeeSearchIndex SHARED_SEARCH_INDEX = new EmployeeSearchIndex();
+    private static final SingleFlight SHARED_SINGLE_FLIGHT = SingleFlight.fromSystemProperties();
+    private static final ChangeFeed SHARED_CHANGE_FEED = ChangeFeed.fromSystemProperties();
+    private static final IdAllocator SHARED_IDS = IdAllocator.fromSystemProperties();
+    private static final SalaryIndex SHARED_SALARY_INDEX = new SalaryIndex();
+    private static final SnapshotStore SHARED_SNAPSHOTS = SnapshotStore.fromSystemProperties();
+    private static final SalaryAnalytics SHARED_ANALYTICS =
+            new SalaryAnalytics(Long.getLong("analytics.minRefreshIntervalMs", 1000L));
+
+    private static boolean sharedStarted;
+
+    private static final Metrics metrics = Metrics.get();
+
+    private final EmployeeCache cache;
+    private final DepartmentStats stats;
+    private final EmployeeSearchIndex searchIndex;
+    private final SingleFlight singleFlight;
+    private ChangeFeed changeFeed;
+    private WriteBehind writeBehind;
+    private EmployeeLoader loader;
+    private SalaryIndex salaryIndex;
+    private SnapshotStore snapshotStore;
+    private SalaryAnalytics salaryAnalytics;
+    private final List<EmployeeChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    public EmployeeDAO() {
+        this(Boolean.parseBoolean(System.getProperty("cache.employee.enabled", "true")) ? SHARED_CACHE : null,
+             Boolean.parseBoolean(System.getProperty("stats.enabled", "true")) ? SHARED_STATS : null,
+             Boolean.parseBoolean(System.getProperty("search.enabled", "true")) ? SHARED_SEARCH_INDEX : null,
+             Boolean.parseBoolean(System.getProperty("singleflight.enabled", "true")) ? SHARED_SINGLE_FLIGHT : null);
+        // every servlet's DAO publishes to the same feed, so live clients see writes from all of them
+        changeFeed = sharedChangeFeed();
+        if (changeFeed != null) {
+            listeners.add(changeFeed);
+        }
+        if (Boolean.parseBoolean(System.getProperty("salaryindex.enabled", "true"))) {
+            setSalaryIndex(SHARED_SALARY_INDEX);
+        }
+        // shared like the stats, so a write through any servlet's DAO marks the snapshot stale
+        salaryAnalytics = SHARED_ANALYTICS;
+        listeners.add(salaryAnalytics);
+        // one queue per DAO, so its commits reach this DAO's listeners
+        if (Boolean.getBoolean("writebehind.enabled")) {
+            writeBehind = WriteBehind.fromSystemProperties(this);
+        }
+        if (Boolean.getBoolean("loader.enabled")) {
+            loader = EmployeeLoader.fromSystemProperties(this);
+        }
+        if (SHARED_SNAPSHOTS != null) {
+            snapshotStore = SHARED_SNAPSHOTS;
+            listeners.add(snapshotStore);
+        }
+    }
+
+    // Starts the shared components' background work: the statistics reconciler, when statistics are enabled,
+    // and the snapshot store. Called by the application's entry points (servlet init, Main) rather than on
+    // class loading, so loading the DAO never maps a file or starts a thread; later calls do nothing.
+    public static synchronized void startShared() {
+        if (sharedStarted) {
+            return;
+        }
+        sharedStarted = true;
+        if (Boolean.parseBoolean(System.getProperty("stats.enabled", "true"))) {
+            SHARED_STATS.startReconciler(Long.getLong("stats.reconcileIntervalMs", 5 * 60 * 1000L));
+        }
+        if (SHARED_SNAPSHOTS != null) {
+            startSnapshots();
+        }
+    }
+
+    // Stops the shared components' threads: the statistics reconciler, the salary analytics refresher and the
+    // snapshot store's. They serve every DAO in the JVM, so only the owner that called startShared() calls
+    // this, on its way out.
+    public static synchronized void stopShared() {
+        SHARED_STATS.stopReconciler();
+        SHARED_ANALYTICS.shutdown();
+        // writes the last snapshot; a write through a DAO shut down later waits for the next start's refresh
+        if (SHARED_SNAPSHOTS != null) {
+            SHARED_SNAPSHOTS.close();
+        }
+    }
+
+    // Warms whatever is enabled from the last snapshot, without a query, then refreshes the file from the
+    // database on a background thread. Rows that changed while this JVM was not looking drop the warmed state.
+    private static void startSnapshots() {
+        EmployeeSnapshot snapshot = SHARED_SNAPSHOTS.open();
+        if (snapshot != null) {
+            List<Employee> rows = snapshot.employees();
+            if (Boolean.parseBoolean(System.getProperty("stats.enabled", "true"))) {
+                SHARED_STATS.warm(rows);
+            }
+            if (Boolean.parseBoolean(System.getProperty("search.enabled", "true"))) {
+                SHARED_SEARCH_INDEX.warm(rows);
+            }
+            if (Boolean.parseBoolean(System.getProperty("salaryindex.enabled", "true"))) {
+                SHARED_SALARY_INDEX.warm(rows);
+            }
+            if (Boolean.parseBoolean(System.getProperty("cache.employee.enabled", "true"))) {
+                long generation = SHARED_CACHE.beginLoad();
+                for (int i = 0; i < rows.size() && i < SHARED_CACHE.getMaxSize(); i++) {
+                    SHARED_CACHE.putLoaded(rows.get(i).getId(), rows.get(i), generation);
+                }
+            }
+        }
+        SHARED_SNAPSHOTS.setOnExternalChange(ids -> {
+            for (int id : ids) {
+                SHARED_CACHE.invalidate(id);
+            }
+            SHARED_STATS.invalidate();
+            SHARED_SEARCH_INDEX.invalidate();
+            SHARED_SALARY_INDEX.invalidate();
+            DATA_VERSION.bump();
+        });
+        SHARED_SNAPSHOTS.start();
+    }
+
+    public EmployeeDAO(EmployeeCache cache, DepartmentStats stats) {
+        this(cache, stats, null);
+    }
+
+    public EmployeeDAO(EmployeeCache cache, DepartmentStats stats, EmployeeSearchIndex searchIndex) {
+        this(cache, stats, searchIndex, null);
+    }
+
+    // cache, stats and searchIndex may be null to always read through to the database, and singleFlight
+    // null to give every read its own query
+    public EmployeeDAO(EmployeeCache cache, DepartmentStats stats, EmployeeSearchIndex searchIndex,
+                       SingleFlight singleFlight) {
+        this.cache = cache;
+        this.stats = stats;
+        this.searchIndex = searchIndex;
+        this.singleFlight = singleFlight;
+        if (cache != null) {
+            listeners.add(cache);
+        }
+        if (stats != null) {
+            listeners.add(stats);
+        }
+        if (searchIndex != null) {
+            listeners.add(searchIndex);
+        }
+    }
+
+    public EmployeeCache getCache() {
+        return cache;
+    }
+
+    public DepartmentStats getStats() {
+        return stats;
+    }
+
+    public EmployeeSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    // null when this DAO does not publish change events
+    public ChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    // The feed every DAO built with the no-arg constructor publishes to, or null with -Devents.enabled=false;
+    // lets a subscriber listen without building a DAO of its own
+    public static ChangeFeed sharedChangeFeed() {
+        return Boolean.parseBoolean(System.getProperty("events.enabled", "true")) ? SHARED_CHANGE_FEED : null;
+    }
+
+    public SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    public DataVersion getDataVersion() {
+        return DATA_VERSION;
+    }
+
+    // null when updates are written straight through
+    public WriteBehind getWriteBehind() {
+        return writeBehind;
+    }
+
+    public void setWriteBehind(WriteBehind writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    // null when top-N and salary-range queries stream the rows from the database instead
+    public SalaryIndex getSalaryIndex() {
+        return salaryIndex;
+    }
+
+    public void setSalaryIndex(SalaryIndex salaryIndex) {
+        if (this.salaryIndex != null) {
+            listeners.remove(this.salaryIndex);
+        }
+        this.salaryIndex = salaryIndex;
+        if (salaryIndex != null) {
+            listeners.add(salaryIndex);
+        }
+    }
+
+    // null for a DAO built with explicit components
+    public SalaryAnalytics getSalaryAnalytics() {
+        return salaryAnalytics;
+    }
+
+    // null unless -Dsnapshot.path is set
+    public SnapshotStore getSnapshotStore() {
+        return snapshotStore;
+    }
+
+    // null when each lookup by id that misses the cache runs its own query
+    public EmployeeLoader getLoader() {
+        return loader;
+    }
+
+    public void setLoader(EmployeeLoader loader) {
+        this.loader = loader;
+    }
+
+    // True while write-behind updates wait to be committed
+    public boolean hasPendingWrites() {
+        WriteBehind queue = writeBehind;
+        return queue != null && queue.hasPending();
+    }
+
+    // Commits any queued updates and waits for them; a no-op without write-behind
+    public void flushPendingWrites() {
+        WriteBehind queue = writeBehind;
+        if (queue != null && queue.hasPending()) {
+            queue.flush();
+        }
+    }
+
+    // Commits any queued updates and stops the write-behind flusher and the loader's threads. Every owner of
+    // a DAO calls this; the shared components are left to stopShared().
+    public void shutdown() {
+        if (writeBehind != null) {
+            writeBehind.close();
+        }
+        if (loader != null) {
+            loader.close();
+        }
+    }
+
+    public void addChangeListener(EmployeeChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeChangeListener(EmployeeChangeListener listener) {
+        listeners.remove(listener);
+    }
+
     public List<Employee> getAllEmployees() {
+        flushPendingWrites();
+        return coalesceList("getAllEmployees", "",
+                () -> mergeById(DBConnection.onEveryShard(this::loadAllEmployees), Integer.MAX_VALUE));
+    }
+
+    private List<Employee> loadAllEmployees(int shard) {
+        long start = System.nanoTime();
+        boolean failed = false;
         List<Employee> list = new ArrayList<>();
-        String sql = "SELECT * FROM employees ORDER BY id";
-        try (Connection conn = DBConnection.getConnection();
+        String sql = "SELECT " + EMPLOYEE_COLUMNS + " FROM employees ORDER BY id";
+        try (Connection conn = DBConnection.getReadConnection(shard);
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             
             while (rs.next()) {
-                Employee emp = new Employee(
-                    rs.getInt("id"),
-                    rs.getString("name"),
-                    rs.getString("department"),
-                    rs.getDouble("salary")
-                );
-                list.add(emp);
+                list.add(mapEmployee(rs));
             }
         } catch (Exception e) {
+            failed = true;
             e.printStackTrace();
+        } finally {
+            metrics.recordQuery("getAllEmployees", start, list.size(), failed);
         }
         return list;
     }
 
     public List<Employee> getEmployeesByDepartment(String department) {
+        flushPendingWrites();
+        return coalesceList("getEmployeesByDepartment", department, () -> loadEmployeesByDepartment(department));
+    }
+
+    private List<Employee> loadEmployeesByDepartment(String department) {
+        long start = System.nanoTime();
+        boolean failed = false;
         List<Employee> list = new ArrayList<>();
-        String sql = "SELECT * FROM employees WHERE department = ? ORDER BY id";
+        String sql = "SELECT " + EMPLOYEE_COLUMNS + " FROM employees WHERE department = ? ORDER BY id";
         
-        try (Connection conn = DBConnection.getConnection();
+        try (Connection conn = DBConnection.getReadConnection(DBConnection.shardFor(department));
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             
             stmt.setString(1, department);
             ResultSet rs = stmt.executeQuery();
             
             while (rs.next()) {
-                Employee emp = new Employee(
-                    rs.getInt("id"),
-                    rs.getString("name"),
-                    rs.getString("department"),
-                    rs.getDouble("salary")
-                );
-                list.add(emp);
+                list.add(mapEmployee(rs));
             }
         } catch (Exception e) {
+            failed = true;
             e.printStackTrace();
+        } finally {
+            metrics.recordQuery("getEmployeesByDepartment", start, list.size(), failed);
         }
         return list;
     }
 
-    public double getAverageSalary(String department) {
-        String sql = "SELECT AVG(salary) as avg_salary FROM employees WHERE department = ?";
-        double avgSalary = 0.0;
-        
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, department);
-            ResultSet rs = stmt.executeQuery();
-            
-            if (rs.next()) {
-                avgSalary = rs.getDouble("avg_salary");
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+    public static final int MAX_PAGE_SIZE = 1000;
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    // Keyset pagination: returns up to limit rows with id > afterId, optionally within one department
+    public List<Employee> getEmployeesPage(String department, int afterId, int limit) {
+        flushPendingWrites();
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        String key = department + "|" + afterId + "|" + limit;
+        if (department != null) {
+            return coalesceList("getEmployeesPage", key,
+                    () -> loadEmployeesPage(DBConnection.shardFor(department), department, afterId, pageSize));
         }
-        return avgSalary;
+        // the page is among the first pageSize rows after afterId on each shard
+        return coalesceList("getEmployeesPage", key,
+                () -> mergeById(DBConnection.onEveryShard(shard -> loadEmployeesPage(shard, null, afterId, pageSize)),
+                        pageSize));
     }
 
-    public Employee getEmployeeById(int id) {
-        String sql = "SELECT * FROM employees WHERE id = ?";
-        Employee emp = null;
+    private List<Employee> loadEmployeesPage(int shard, String department, int afterId, int pageSize) {
+        long start = System.nanoTime();
+        boolean failed = false;
+        List<Employee> list = new ArrayList<>();
+        String sql = department == null
+                ? "SELECT " + EMPLOYEE_COLUMNS + " FROM employees WHERE id > ? ORDER BY id LIMIT ?"
+                : "SELECT " + EMPLOYEE_COLUMNS + " FROM employees WHERE department = ? AND id > ? ORDER BY id LIMIT ?";
         
-        try (Connection conn = DBConnection.getConnection();
+        try (Connection conn = DBConnection.getReadConnection(shard);
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             
-            stmt.setInt(1, id);
-            ResultSet rs = stmt.executeQuery();
+            int i = 1;
+            if (department != null) {
+                stmt.setString(i++, department);
+            }
+            stmt.setInt(i++, afterId);
+            stmt.setInt(i, pageSize);
             
-            if (rs.next()) {
-                emp = new Employee(
-                    rs.getInt("id"),
-                    rs.getString("name"),
-                    rs.getString("department"),
-                    rs.getDouble("salary")
-                );
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    list.add(mapEmployee(rs));
+                }
             }
         } catch (Exception e) {
+            failed = true;
             e.printStackTrace();
+        } finally {
+            metrics.recordQuery("getEmployeesPage", start, list.size(), failed);
         }
-        return emp;
+        return list;
     }
 
-    public boolean addEmployee(Employee emp) {
-        String sql = "INSERT INTO employees (name, department, salary) VALUES (?, ?, ?)";
+    // Reads every row through a forward-only cursor and hands each one to the handler without buffering the table.
+    // A sharded table is read through one cursor per shard at once, always taking the lowest id next.
+    public void streamAllEmployees(EmployeeHandler handler) throws Exception {
+        flushPendingWrites();
+        String sql = "SELECT " + EMPLOYEE_COLUMNS + " FROM employees ORDER BY id";
+        long start = System.nanoTime();
+        boolean failed = true;
+        long rows = 0;
+        int shards = DBConnection.getShardCount();
+        List<AutoCloseable> resources = new ArrayList<>();
         
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            
-            stmt.setString(1, emp.getName());
-            stmt.setString(2, emp.getDepartment());
-            stmt.setDouble(3, emp.getSalary());
-            
-            int rowsAffected = stmt.executeUpdate();
+        try {
+            ResultSet[] cursors = new ResultSet[shards];
+            Employee[] heads = new Employee[shards];
+            for (int shard = 0; shard < shards; shard++) {
+                Connection conn = DBConnection.getReadConnection(shard);
+                resources.add(conn);
+                Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                resources.add(stmt);
+                
+                // Connector/J only streams row by row with Integer.MIN_VALUE; other drivers honour a positive fetch size
+                boolean mysql = conn.getMetaData().getURL().startsWith("jdbc:mysql:");
+                stmt.setFetchSize(mysql ? Integer.MIN_VALUE : STREAM_FETCH_SIZE);
+                cursors[shard] = stmt.executeQuery(sql);
+                resources.add(cursors[shard]);
+                heads[shard] = cursors[shard].next() ? mapEmployee(cursors[shard]) : null;
+            }
             
-            if (rowsAffected > 0) {
-                ResultSet keys = stmt.getGeneratedKeys();
-                if (keys.next()) {
-                    emp.setId(keys.getInt(1));
+            int lastId = Integer.MIN_VALUE;
+            while (true) {
+                int next = -1;
+                for (int shard = 0; shard < shards; shard++) {
+                    if (heads[shard] != null && (next < 0 || heads[shard].getId() < heads[next].getId())) {
+                        next = shard;
+                    }
+                }
+                if (next < 0) {
+                    break;
+                }
+                Employee emp = heads[next];
+                heads[next] = cursors[next].next() ? mapEmployee(cursors[next]) : null;
+                // a row caught halfway through moving between shards is on both for a moment
+                if (emp.getId() != lastId) {
+                    handler.handle(emp);
+                    rows++;
+                    lastId = emp.getId();
                 }
-                return true;
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            failed = false;
+        } finally {
+            for (int i = resources.size() - 1; i >= 0; i--) {
+                try {
+                    resources.get(i).close();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+            metrics.recordQuery("streamAllEmployees", start, rows, failed);
         }
-        return false;
     }
 
-    public boolean updateEmployee(Employee emp) {
-        String sql = "UPDATE employees SET name = ?, department = ?, salary = ? WHERE id = ?";
+    // Name/department/salary search, answered from the in-memory index when there is one. The SQL
+    // fallback applies the same filters (a name word starting with each query word) but orders by id.
+    public List<Employee> searchEmployees(String query, String department, Double minSalary, Double maxSalary,
+                                          int limit) {
+        flushPendingWrites();
+        if (searchIndex != null && searchIndex.ensureLoaded()) {
+            return searchIndex.search(query, department, minSalary, maxSalary, limit);
+        }
+        List<String> terms = EmployeeSearchIndex.tokens(query);
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT " + EMPLOYEE_COLUMNS + " FROM employees WHERE 1 = 1");
+        for (String term : terms) {
+            sql.append(" AND (LOWER(name) LIKE ? OR LOWER(name) LIKE ?)");
+            args.add(term + "%");
+            args.add("% " + term + "%");
+        }
+        if (department != null) {
+            sql.append(" AND LOWER(department) = ?");
+            args.add(department.trim().toLowerCase(Locale.ROOT));
+        }
+        if (minSalary != null) {
+            sql.append(" AND salary >= ?");
+            args.add(minSalary);
+        }
+        if (maxSalary != null) {
+            sql.append(" AND salary <= ?");
+            args.add(maxSalary);
+        }
+        int max = Math.max(1, Math.min(limit, EmployeeSearchIndex.MAX_RESULTS));
+        sql.append(" ORDER BY id LIMIT ?");
+        args.add(max);
         
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, emp.getName());
-            stmt.setString(2, emp.getDepartment());
-            stmt.setDouble(3, emp.getSalary());
-            stmt.setInt(4, emp.getId());
-            
-            return stmt.executeUpdate() > 0;
-        } catch (Exception e) {
-            e.printStackTrace();
+        String statement = sql.toString();
+        if (department != null) {
+            return searchShard(DBConnection.shardFor(department), statement, args);
         }
-        return false;
+        return mergeById(DBConnection.onEveryShard(shard -> searchShard(shard, statement, args)), max);
     }
 
-    public boolean updateSalary(int id, double salary) {
-        String sql = "UPDATE employees SET salary = ? WHERE id = ?";
+    private List<Employee> searchShard(int shard, String sql, List<Object> args) {
+        long start = System.nanoTime();
+        boolean failed = false;
+        List<Employee> list = new ArrayList<>();
         
-        try (Connection conn = DBConnection.getConnection();
+        try (Connection conn = DBConnection.getReadConnection(shard);
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             
-            stmt.setDouble(1, salary);
-            stmt.setInt(2, id);
-            
-            return stmt.executeUpdate() > 0;
+            bind(stmt, args);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    list.add(mapEmployee(rs));
+                }
+            }
         } catch (Exception e) {
+            failed = true;
             e.printStackTrace();
+        } finally {
+            metrics.recordQuery("searchEmployees", start, list.size(), failed);
         }
-        return false;
+        return list;
     }
 
-    public boolean deleteEmployee(int id) {
-        String sql = "DELETE FROM employees WHERE id = ?";
-        
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setInt(1, id);
-            return stmt.executeUpdate() > 0;
-        } catch (Exception e) {
-            e.printStackTrace();
+    // The n best paid employees of a department (any case), or of everyone with department null, highest
+    // salary first and equal salaries in id order
+    public List<Employee> getTopEarners(String department, int n) {
+        flushPendingWrites();
+        if (salaryIndex != null && salaryIndex.ensureLoaded()) {
+            return salaryIndex.extremes(department, n, true);
         }
-        return false;
+        return streamBySalary("getTopEarners", department, null, null, n, true);
     }
 
-    public List<String> getAllDepartments() {
-        List<String> departments = new ArrayList<>();
-        String sql = "SELECT DISTINCT department FROM employees ORDER BY department";
+    // The n worst paid, lowest salary first
+    public List<Employee> getLowestEarners(String department, int n) {
+        flushPendingWrites();
+        if (salaryIndex != null && salaryIndex.ensureLoaded()) {
+            return salaryIndex.extremes(department, n, false);
+        }
+        return streamBySalary("getLowestEarners", department, null, null, n, false);
+    }
+
+    // Employees earning from minSalary to maxSalary inclusive (null for no bound), lowest salary first
+    public List<Employee> getEmployeesBySalaryRange(String department, Double minSalary, Double maxSalary, int limit) {
+        flushPendingWrites();
+        if (salaryIndex != null && salaryIndex.ensureLoaded()) {
+            return salaryIndex.range(department, minSalary, maxSalary, limit);
+        }
+        return streamBySalary("getEmployeesBySalaryRange", department, minSalary, maxSalary, limit, false);
+    }
+
+    // Without the salary index, the matching rows stream through a cursor past a heap holding the best limit
+    // rows seen so far, so memory stays bounded however many rows match. Each shard keeps its own heap.
+    private List<Employee> streamBySalary(String operation, String department, Double minSalary, Double maxSalary,
+                                          int limit, boolean highest) {
+        long start = System.nanoTime();
+        boolean failed = false;
+        List<Employee> list = new ArrayList<>();
+        int max = Math.max(1, Math.min(limit, SalaryIndex.MAX_RESULTS));
+        Comparator<Employee> bySalary = Comparator.comparingDouble(Employee::getSalary);
+        Comparator<Employee> order = (highest ? bySalary.reversed() : bySalary).thenComparingInt(Employee::getId);
         
-        try (Connection conn = DBConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            
-            while (rs.next()) {
-                departments.add(rs.getString("department"));
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT " + EMPLOYEE_COLUMNS + " FROM employees WHERE 1 = 1");
+        if (department != null) {
+            sql.append(" AND department = ?");
+            args.add(department.trim());
+        }
+        if (minSalary != null) {
+            sql.append(" AND salary >= ?");
+            args.add(minSalary);
+        }
+        if (maxSalary != null) {
+            sql.append(" AND salary <= ?");
+            args.add(maxSalary);
+        }
+        String statement = sql.toString();
+        
+        try {
+            List<List<Employee>> shards = department != null
+                    ? Collections.singletonList(keepBest(DBConnection.shardFor(department), statement, args, order, max))
+                    : DBConnection.onEveryShard(shard -> keepBest(shard, statement, args, order, max));
+            for (List<Employee> best : shards) {
+                list.addAll(best);
+            }
+            list.sort(order);
+            if (list.size() > max) {
+                list = new ArrayList<>(list.subList(0, max));
             }
         } catch (Exception e) {
+            failed = true;
             e.printStackTrace();
+        } finally {
+            metrics.recordQuery(operation, start, list.size(), failed);
         }
-        return departments;
+        return list;
     }
 
-    public int getEmployeeCount() {
-        String sql = "SELECT COUNT(*) as count FROM employees";
-        int count = 0;
-        
-        try (Connection conn = DBConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            
-            if (rs.next()) {
-                count = rs.getInt("count");
+    private static List<Employee> keepBest(int shard, String sql, List<Object> args, Comparator<Employee> order,
+                                           int limit) {
+        // the head of the heap is the worst row kept
+        PriorityQueue<Employee> best = new PriorityQueue<>(limit + 1, order.reversed());
+        try (Connection conn = DBConnection.getReadConnection(shard);
+             PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(conn.getMetaData().getURL().startsWith("jdbc:mysql:") ? Integer.MIN_VALUE : STREAM_FETCH_SIZE);
+            bind(stmt, args);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Employee emp = mapEmployee(rs);
+                    if (best.size() < limit) {
+                        best.offer(emp);
+                    } else if (order.compare(emp, best.peek()) < 0) {
+                        best.poll();
+                        best.offer(emp);
+                    }
+                }
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
         }
-        return count;
+        return new ArrayList<>(best);
     }
-}
 
-// =============================================
-// JAVA BACKEND - Complete EmployeeServlet.java
-// =============================================
-package servlet;
+    // Identical reads running at the same time share one query. The key includes the data version, so a
+    // read that starts after a write's version bump never waits on a query that began before it.
+    private <T> T coalesce(String operation, String key, Supplier<T> load) {
+        if (singleFlight == null || !singleFlight.covers(operation)) {
+            return load.get();
+        }
+        try {
+            // a reader pinned to the primary must not share a replica's answer
+            String source = DBConnection.isReadingFromPrimary() ? "@primary:" : "@";
+            return singleFlight.execute(operation, key + source + DATA_VERSION.get(), load::get);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // load cannot throw a checked exception
+            throw new IllegalStateException(e);
+        }
+    }
 
-import dao.EmployeeDAO;
-import model.Employee;
+    // Shared lists are handed out read-only
+    private <T> List<T> coalesceList(String operation, String key, Supplier<List<T>> load) {
+        if (singleFlight == null || !singleFlight.covers(operation)) {
+            return load.get();
+        }
+        return coalesce(operation, key, () -> Collections.unmodifiableList(load.get()));
+    }
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import jakarta.servlet.*;
-import jakarta.servlet.annotation.WebServlet;
-import jakarta.servlet.http.*;
+    // Merges per-shard lists, each ordered by id, into the first limit rows ordered by id. Shards are few,
+    // so the next row is found by comparing the heads of all lists.
+    static List<Employee> mergeById(List<List<Employee>> parts, int limit) {
+        if (parts.size() == 1 && parts.get(0).size() <= limit) {
+            return parts.get(0);
+        }
+        int total = 0;
+        for (List<Employee> part : parts) {
+            total += part.size();
+        }
+        List<Employee> merged = new ArrayList<>(Math.min(total, limit));
+        int[] positions = new int[parts.size()];
+        int lastId = Integer.MIN_VALUE;
+        while (merged.size() < limit) {
+            int next = -1;
+            for (int p = 0; p < parts.size(); p++) {
+                if (positions[p] < parts.get(p).size() && (next < 0
+                        || parts.get(p).get(positions[p]).getId() < parts.get(next).get(positions[next]).getId())) {
+                    next = p;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            Employee emp = parts.get(next).get(positions[next]++);
+            // a row caught halfway through moving between shards is on both for a moment
+            if (emp.getId() != lastId) {
+                merged.add(emp);
+                lastId = emp.getId();
+            }
+        }
+        return merged;
+    }
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.List;
+    // Column list every employee query selects, in the order mapEmployee reads them
+    static final String EMPLOYEE_COLUMNS = "id, name, department, salary";
 
-@WebServlet("/api/employees")
-public class EmployeeServlet extends HttpServlet {
-    private EmployeeDAO employeeDAO;
-    private Gson gson;
+    // Maps the current row of a query that selected EMPLOYEE_COLUMNS, by position rather than by label
+    static Employee mapEmployee(ResultSet rs) throws SQLException {
+        return new Employee(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getDouble(4));
+    }
 
-    @Override
-    public void init() {
-        employeeDAO = new EmployeeDAO();
-        gson = new Gson();
+    public double getAverageSalary(String department) {
+        flushPendingWrites();
+        if (stats != null && stats.ensureLoaded()) {
+            return stats.getAverageSalary(department);
+        }
+        return coalesce("getAverageSalary", department, () -> loadAverageSalary(department));
     }
 
-    @Override
-    protected void doGet(HttpServletRequest request, HttpServletResponse response)
-            throws IOException {
-        
-        response.setContentType("application/json");
-        response.setCharacterEncoding("UTF-8");
-        response.setHeader("Access-Control-Allow-Origin", "*");
-        PrintWriter out = response.getWriter();
+    private double loadAverageSalary(String department) {
+        long start = System.nanoTime();
+        boolean failed = false;
+        String sql = "SELECT AVG(salary) as avg_salary FROM employees WHERE department = ?";
+        double avgSalary = 0.0;
         
-        try {
-            String action = request.getParameter("action");
-            String department = request.getParameter("department");
-            String id = request.getParameter("id");
+        try (Connection conn = DBConnection.getReadConnection(DBConnection.shardFor(department));
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             
-            JsonObject result = new JsonObject();
+            stmt.setString(1, department);
+            ResultSet rs = stmt.executeQuery();
             
-            if ("departments".equals(action)) {
-                List<String> departments = employeeDAO.getAllDepartments();
-                result.addProperty("success", true);
-                result.add("data", gson.toJsonTree(departments));
-                
-            } else if ("avgSalary".equals(action) && department != null) {
-                double avgSalary = employeeDAO.getAverageSalary(department);
-                result.addProperty("success", true);
-                result.addProperty("data", avgSalary);
-                
-            } else if (id != null) {
-                Employee emp = employeeDAO.getEmployeeById(Integer.parseInt(id));
-                if (emp != null) {
-                    result.addProperty("success", true);
-                    result.add("data", gson.toJsonTree(emp));
-                } else {
-                    result.addProperty("success", false);
-                    result.addProperty("message", "Employee not found");
-                }
-                
-            } else if (department != null) {
-                List<Employee> employees = employeeDAO.getEmployeesByDepartment(department);
-                result.addProperty("success", true);
-                result.add("data", gson.toJsonTree(employees));
-                
-            } else {
-                List<Employee> employees = employeeDAO.getAllEmployees();
-                result.addProperty("success", true);
-                result.add("data", gson.toJsonTree(employees));
+            if (rs.next()) {
+                avgSalary = rs.getDouble(1);
             }
-            
-            out.write(gson.toJson(result));
-            
         } catch (Exception e) {
-            JsonObject error = new JsonObject();
-            error.addProperty("success", false);
-            error.addProperty("message", "Error: " + e.getMessage());
-            out.write(gson.toJson(error));
-            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            failed = true;
+            e.printStackTrace();
+        } finally {
+            metrics.recordQuery("getAverageSalary", start, 1, failed);
         }
+        return avgSalary;
     }
 
-    @Override
-    protected void doPost(HttpServletRequest request, HttpServletResponse response)
-            throws IOException {
-        
-        response.setContentType("application/json");
-        response.setCharacterEncoding("UTF-8");
-        response.setHeader("Access-Control-Allow-Origin", "*");
-        PrintWriter out = response.getWriter();
-        
-        try {
-            StringBuilder sb = new StringBuilder();
-            try (BufferedReader reader = request.getReader()) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    sb.append(line);
-                }
-            }
-            
-            Employee emp = gson.fromJson(sb.toString(), Employee.class);
-            
-            JsonObject result = new JsonObject();
-            if (employeeDAO.addEmployee(emp)) {
-                result.addProperty("success", true);
-                result.addProperty("message", "Employee added successfully");
-                result.add("data", gson.toJsonTree(emp));
-                response.setStatus(HttpServletResponse.SC_CREATED);
-            } else {
-                result.addProperty("success", false);
-                result.addProperty("message", "Failed to add employee");
+    public Employee getEmployeeById(int id) {
+        Employee emp = readEmployeeById(id);
+        WriteBehind queue = writeBehind;
+        return queue != null ? queue.overlay(id, emp) : emp;
+    }
+
+    private Employee readEmployeeById(int id) {
+        long generation = 0;
+        if (cache != null) {
+            Employee[] cached = new Employee[1];
+            switch (cache.get(id, cached)) {
+                case HIT:
+                    return cached[0];
+                case NEGATIVE_HIT:
+                    return null;
+                default:
+                    generation = cache.beginLoad();
             }
-            
-            out.write(gson.toJson(result));
-            
+        }
+        long loadGeneration = generation;
+        Employee emp = loader != null ? awaitLoad(loader.load(id))
+                : coalesce("getEmployeeById", String.valueOf(id), () -> loadEmployeeById(id, loadGeneration));
+        // the instance may have gone to other callers as well
+        return emp == null || (singleFlight == null && loader == null) ? emp
+                : new Employee(emp.getId(), emp.getName(), emp.getDepartment(), emp.getSalary());
+    }
+
+    private static Employee awaitLoad(CompletableFuture<Employee> load) {
+        try {
+            return load.join();
         } catch (Exception e) {
-            JsonObject error = new JsonObject();
-            error.addProperty("success", false);
-            error.addProperty("message", "Error: " + e.getMessage());
-            out.write(gson.toJson(error));
-            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            e.printStackTrace();
+            return null;
         }
     }
 
-    @Override
-    protected void doPut(HttpServletRequest request, HttpServletResponse response)
-            throws IOException {
+    // The employees with the given ids, in the order asked for, without duplicates and leaving out ids that
+    // do not exist. Cached rows are used; the rest are read with one IN (...) query per
+    // DEFAULT_BATCH_CHUNK_SIZE ids, on every shard at once when the table is sharded.
+    public List<Employee> getEmployeesByIds(Collection<Integer> ids) {
+        Set<Integer> distinct = new LinkedHashSet<>(ids);
+        Map<Integer, Employee> found = new HashMap<>();
+        List<Integer> misses = new ArrayList<>();
+        for (int id : distinct) {
+            Employee[] cached = new Employee[1];
+            EmployeeCache.Lookup lookup = cache != null ? cache.get(id, cached) : EmployeeCache.Lookup.MISS;
+            if (lookup == EmployeeCache.Lookup.HIT) {
+                found.put(id, cached[0]);
+            } else if (lookup == EmployeeCache.Lookup.MISS) {
+                misses.add(id);
+            }
+        }
+        if (!misses.isEmpty()) {
+            found.putAll(loadEmployeesByIds(misses));
+        }
         
-        response.setContentType("application/json");
-        response.setCharacterEncoding("UTF-8");
-        response.setHeader("Access-Control-Allow-Origin", "*");
-        PrintWriter out = response.getWriter();
+        WriteBehind queue = writeBehind;
+        List<Employee> employees = new ArrayList<>(found.size());
+        for (int id : distinct) {
+            Employee emp = found.get(id);
+            if (queue != null) {
+                emp = queue.overlay(id, emp);
+            }
+            if (emp != null) {
+                employees.add(emp);
+            }
+        }
+        return employees;
+    }
+
+    // Reads the given ids straight from the database and caches the answers, including the ids not found
+    Map<Integer, Employee> loadEmployeesByIds(Collection<Integer> ids) {
+        long start = System.nanoTime();
+        boolean failed = false;
+        Map<Integer, Employee> rows = new HashMap<>();
+        List<Integer> list = new ArrayList<>(ids);
+        long generation = cache != null ? cache.beginLoad() : 0;
         
         try {
-            StringBuilder sb = new StringBuilder();
-            try (BufferedReader reader = request.getReader()) {
-                String line;
\ No newline at end of file
+            // as for a single id, rows going into the cache are read from the primary
+            boolean current = cache != null;
+            for (List<Employee> shardRows : DBConnection.onEveryShard(shard -> selectByIds(shard, list, current))) {
+                for (Employee emp : shardRows) {
+                    rows.put(emp.getId(), emp);
+                }
+            }
+            if (cache != null) {
+                for (int id : list) {
+                    cache.putLoaded(id, rows.get(id), generation);
+                }
+            }
+        } catch (Exception e) {
+            failed = true;
+            e.printStackTrace();
+        } finally {
+            metrics.recordQuery("getEmployeesByIds", start, rows.size(), failed);
+        }
+        return rows;
+    }
+
+    private static List<Employee> selectByIds(int shard, List<Integer> ids, boolean current) {
+        try (Connection conn = current ? DBConnection.getConnection(shard) : DBConnection.getReadConnection(shard)) {
+            return selectByIds(conn, ids);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Employee loadEmployeeById(int id, long generation) {
+        long start = System.nanoTime();
+        boolean failed = false;
+        Employee emp = null;
+        
+        try {
+            // A row going into the cache must not come from a lagging replica: it would stay there until the next write
+            Employee[] found = new Employee[1];
+            findShard(id, cache != null, found);
+            emp = found[0];
+            if (cache != null) {
+                cache.putLoaded(id, emp, generation);
+            }
+        } catch (Exception e) {
+            failed = true;
+            e.printStackTrace();
+        } finally {
+            metrics.recordQuery("getEmployeeById", start, emp != null ? 1 : 0, failed);
+        }
+        return emp;
+    }
+
+    // The shard holding the given id, or -1 when none does, asking every shard at once; the row goes into
+    // found[0]. current reads from the shard's primary rather than a replica.
+    private static int findShard(int id, boolean current, Employee[] found) {
+        String sql = "SELECT " + EMPLOYEE_COLUMNS + " FROM employees WHERE id = ?";
+        List<Employee> rows = DBConnection.onEveryShard(shard -> {
+            try (Connection conn = current ? DBConnection.getConnection(shard) : DBConnection.getReadConnection(shard);
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setInt(1, id);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next() ? mapEmployee(rs) : null;
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        for (int shard = 0; shard < rows.size(); shard++) {
+            if (rows.get(shard) != null) {
+                found[0] = rows.get(shard);
+                return shard;
+            }
+        }
+        return -1;
+    }
+
+    // The shard an existing employee is on. 0 when the table is not sharded, and when no shard has the id:
+    // a write there then finds no row, as it would without sharding.
+    private static int shardOf(int id) {
+        if (DBConnection.getShardCount() == 1) {
+            return 0;
+        }
+        return Math.max(0, findShard(id, true, new Employee[1]));
+    }
+
+    public boolean addEmployee(Employee emp) {
+        long start = System.nanoTime();
+        boolean failed = false;
+        int rows = 0;
+        
+        try {
+            int[] ids = newIds(1);
+            try (Connection conn = DBConnection.getConnection(DBConnection.shardFor(emp.getDepartment()))) {
+                int id = insertRow(conn, emp, ids != null ? ids[0] : 0);
+                rows = 1;
+                if (id > 0) {
+                    emp.setId(id);
+                    fireInserted(emp);
+                }
+                return true;
+            }
+        } catch (Exception e) {
+            failed = true;
+            e.printStackTrace();
+        } finally {
+            metrics.recordQuery("addEmployee", start, rows, failed);
+        }
+        return false;
+    }
+
+    // With write-behind the update is queued and this returns once the flusher has committed it, along with
+    // whatever else was queued by then; submitUpdate returns without waiting
+    public boolean updateEmployee(Employee emp) {
+        return writeBehind != null ? awaitWrite(writeBehind.updateEmployee(emp)) : writeEmployee(emp);
+    }
+
+    public CompletableFuture<Boolean> submitUpdate(Employee emp) {
+        return writeBehind != null ? writeBehind.updateEmployee(emp)
+                : CompletableFuture.completedFuture(writeEmployee(emp));
+    }
+
+    private boolean writeEmployee(Employee emp) {
+        long start = System.nanoTime();
+        boolean failed = false;
+        int rows = 0;
+        String sql = "UPDATE employees SET name = ?, department = ?, salary = ? WHERE id = ?";
+        int shard = DBConnection.shardFor(emp.getDepartment());
+        
+        try {
+            try (Connection conn = DBConnection.getConnection(shard)) {
+                Employee before = lockForChange(conn, emp.getId());
+                
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, emp.getName());
+                    stmt.setString(2, emp.getDepartment());
+                    stmt.setDouble(3, emp.getSalary());
+                    stmt.setInt(4, emp.getId());
+                    
+                    boolean updated = stmt.executeUpdate() > 0;
+                    commitChange(conn);
+                    if (updated && before != null) {
+                        fireUpdated(before, emp);
+                    } else if (updated) {
+                        writeCommitted();
+                    }
+                    rows = updated ? 1 : 0;
+                    if (updated || DBConnection.getShardCount() == 1) {
+                        return updated;
+                    }
+                }
+            }
+            // not on the new department's shard: either the department changed or there is no such employee
+            Employee before = moveToShard(shard, emp);
+            if (before != null) {
+                fireUpdated(before, emp);
+                rows = 1;
+                return true;
+            }
+        } catch (Exception e) {
+            failed = true;
+            e.printStackTrace();
+        } finally {
+            metrics.recordQuery("updateEmployee", start, rows, failed);
+        }
+        return false;
+    }
+
+    public boolean updateSalary(int id, double salary) {
+        return writeBehind != null ? awaitWrite(writeBehind.updateSalary(id, salary)) : writeSalary(id, salary);
+    }
+
+    public CompletableFuture<Boolean> submitSalaryUpdate(int id, double salary) {
+        return writeBehind != null ? writeBehind.updateSalary(id, salary)
+                : CompletableFuture.completedFuture(writeSalary(id, salary));
+    }
+
+    private static boolean awaitWrite(CompletableFuture<Boolean> write) {
+        try {
+            return write.join();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private boolean writeSalary(int id, double salary) {
+        long start = System.nanoTime();
+        boolean failed = false;
+        int rows = 0;
+        String sql = "UPDATE employees SET salary = ? WHERE id = ?";
+        
+        try (Connection conn = DBConnection.getConnection(shardOf(id))) {
+            Employee before = lockForChange(conn, id);
+            
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setDouble(1, salary);
+                stmt.setInt(2, id);
+                
+                boolean updated = stmt.executeUpdate() > 0;
+                commitChange(conn);
+                if (updated && before != null) {
+                    fireUpdated(before, new Employee(id, before.getName(), before.getDepartment(), salary));
+                } else if (updated) {
+                    writeCommitted();
+                }
+                rows = updated ? 1 : 0;
+                return updated;
+            }
+        } catch (Exception e) {
+            failed = true;
+            e.printStackTrace();
+        } finally {
+            metrics.recordQuery("updateSalary", start, rows, failed);
+        }
+        return false;
+    }
+
+    public boolean deleteEmployee(int id) {
+        long start = System.nanoTime();
+        boolean failed = false;
+        int rows = 0;
+        String sql = "DELETE FROM employees WHERE id = ?";
+        
+        try (Connection conn = DBConnection.getConnection(shardOf(id))) {
+            Employee before = lockForChange(conn, id);
+            
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setInt(1, id);
+                boolean deleted = stmt.executeUpdate() > 0;
+                commitChange(conn);
+                if (deleted && before != null) {
+                    fireDeleted(before);
+                } else if (deleted) {
+                    writeCommitted();
+                }
+                rows = deleted ? 1 : 0;
+                return deleted;
+            }
+        } catch (Exception e) {
+            failed = true;
+            e.printStackTrace();
+        } finally {
+            metrics.recordQuery("deleteEmployee", start, rows, failed);
+        }
+        return false;
+    }
+
+    public static final int DEFAULT_BATCH_CHUNK_SIZE = Integer.getInteger("db.batch.chunkSize", 500);
+    private static final String INSERT_SQL = "INSERT INTO employees (name, department, salary) VALUES (?, ?, ?)";
+    // On a sharded table the id comes from IdAllocator rather than the shard's AUTO_INCREMENT
+    private static final String INSERT_WITH_ID_SQL = "INSERT INTO employees (name, department, salary, id) VALUES (?, ?, ?, ?)";
+    private static final String UPDATE_SQL = "UPDATE employees SET name = ?, department = ?, salary = ? WHERE id = ?";
+    private static final String UPDATE_SALARY_SQL = "UPDATE employees SET salary = ? WHERE id = ?";
+    static final String NOT_FOUND = "Employee not found: ";
+
+    // Inserts rows with addBatch/executeBatch, one transaction per chunk. Generated ids are set on the
+    // employees and returned per row; a failing chunk is replayed row by row so only the bad rows are rejected.
+    // On a sharded table each shard gets the chunks of the rows in its departments.
+    public BatchResult addEmployees(List<Employee> employees, int chunkSize) {
+        long startNanos = System.nanoTime();
+        boolean failed = false;
+        BatchResult result = new BatchResult(employees.size());
+        int size = chunkSize > 0 ? chunkSize : DEFAULT_BATCH_CHUNK_SIZE;
+        
+        try {
+            List<List<Integer>> byShard = rowsByShard(employees, result);
+            int[] ids = newIds(employees.size());
+            for (int shard = 0; shard < byShard.size(); shard++) {
+                insertChunks(shard, employees, byShard.get(shard), ids, size, result);
+            }
+        } catch (Exception e) {
+            failed = true;
+            e.printStackTrace();
+            result.failRemaining("Not processed: " + e.getMessage());
+        } finally {
+            metrics.recordQuery("addEmployees", startNanos, result.getSucceeded(), failed);
+        }
+        return result;
+    }
+
+    // ids holds the allocated id of every row on a sharded table, and is null otherwise
+    private void insertChunks(int shard, List<Employee> employees, List<Integer> shardRows, int[] ids, int size,
+                              BatchResult result) throws SQLException {
+        if (shardRows.isEmpty()) {
+            return;
+        }
+        boolean sharded = ids != null;
+        try (Connection conn = DBConnection.getConnection(shard)) {
+            conn.setAutoCommit(false);
+            for (int start = 0; start < shardRows.size(); start += size) {
+                List<Integer> rows = shardRows.subList(start, Math.min(start + size, shardRows.size()));
+                try (PreparedStatement stmt = sharded ? conn.prepareStatement(INSERT_WITH_ID_SQL)
+                        : conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                    int[] keys = new int[rows.size()];
+                    for (int k = 0; k < keys.length; k++) {
+                        bindInsert(stmt, employees.get(rows.get(k)));
+                        if (sharded) {
+                            keys[k] = ids[rows.get(k)];
+                            stmt.setInt(4, keys[k]);
+                        }
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                    if (!sharded) {
+                        try (ResultSet rs = stmt.getGeneratedKeys()) {
+                            for (int k = 0; k < keys.length && rs.next(); k++) {
+                                keys[k] = rs.getInt(1);
+                            }
+                        }
+                    }
+                    conn.commit();
+                    for (int k = 0; k < keys.length; k++) {
+                        employees.get(rows.get(k)).setId(keys[k]);
+                        result.success(rows.get(k), keys[k]);
+                        fireInserted(employees.get(rows.get(k)));
+                    }
+                } catch (SQLException e) {
+                    conn.rollback();
+                    insertOneByOne(conn, employees, rows, ids, result);
+                }
+            }
+        }
+    }
+
+    // Inserts all rows with a single multi-row INSERT ... VALUES (...), (...) in one transaction, which
+    // is one round trip regardless of driver batching support. Used by the streaming import; if the
+    // statement fails the rows are retried one by one so only the bad ones are rejected. On a sharded
+    // table there is one such statement per shard.
+    public BatchResult addEmployeesMultiRow(List<Employee> employees) {
+        long startNanos = System.nanoTime();
+        boolean failed = false;
+        BatchResult result = new BatchResult(employees.size());
+        
+        try {
+            List<List<Integer>> byShard = rowsByShard(employees, result);
+            int[] ids = newIds(employees.size());
+            for (int shard = 0; shard < byShard.size(); shard++) {
+                insertMultiRow(shard, employees, byShard.get(shard), ids, result);
+            }
+        } catch (Exception e) {
+            failed = true;
+            e.printStackTrace();
+            result.failRemaining("Not processed: " + e.getMessage());
+        } finally {
+            metrics.recordQuery("addEmployeesMultiRow", startNanos, result.getSucceeded(), failed);
+        }
+        return result;
+    }
+
+    private void insertMultiRow(int shard, List<Employee> employees, List<Integer> rows, int[] ids,
+                                BatchResult result) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        boolean sharded = ids != null;
+        try (Connection conn = DBConnection.getConnection(shard)) {
+            conn.setAutoCommit(false);
+            StringBuilder sql = new StringBuilder(sharded
+                    ? "INSERT INTO employees (name, department, salary, id) VALUES "
+                    : "INSERT INTO employees (name, department, salary) VALUES ");
+            String values = sharded ? "(?, ?, ?, ?)" : "(?, ?, ?)";
+            for (int k = 0; k < rows.size(); k++) {
+                sql.append(k == 0 ? "" : ", ").append(values);
+            }
+            try (PreparedStatement stmt = sharded ? conn.prepareStatement(sql.toString())
+                    : conn.prepareStatement(sql.toString(), Statement.RETURN_GENERATED_KEYS)) {
+                int[] keys = new int[rows.size()];
+                int p = 1;
+                for (int k = 0; k < keys.length; k++) {
+                    Employee emp = employees.get(rows.get(k));
+                    stmt.setString(p++, emp.getName());
+                    stmt.setString(p++, emp.getDepartment());
+                    stmt.setDouble(p++, emp.getSalary());
+                    if (sharded) {
+                        keys[k] = ids[rows.get(k)];
+                        stmt.setInt(p++, keys[k]);
+                    }
+                }
+                stmt.executeUpdate();
+                int found = sharded ? keys.length : 0;
+                if (!sharded) {
+                    try (ResultSet rs = stmt.getGeneratedKeys()) {
+                        while (found < keys.length && rs.next()) {
+                            keys[found++] = rs.getInt(1);
+                        }
+                    }
+                }
+                conn.commit();
+                for (int k = 0; k < keys.length; k++) {
+                    Employee emp = employees.get(rows.get(k));
+                    emp.setId(keys[k]);
+                    result.success(rows.get(k), keys[k]);
+                    if (k < found) {
+                        fireInserted(emp);
+                    }
+                }
+                if (found < keys.length) {
+                    // the driver did not report every id, so not all inserts could be announced
+                    if (stats != null) {
+                        stats.invalidate();
+                    }
+                    if (searchIndex != null) {
+                        searchIndex.invalidate();
+                    }
+                    if (salaryIndex != null) {
+                        salaryIndex.invalidate();
+                    }
+                    if (changeFeed != null) {
+                        changeFeed.resync();
+                    }
+                    writeCommitted();
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                insertOneByOne(conn, employees, rows, ids, result);
+            }
+        }
+    }
+
+    // Replays the rows of a failed chunk in their own transactions so only the bad ones are rejected
+    private void insertOneByOne(Connection conn, List<Employee> employees, List<Integer> rows, int[] ids,
+                                BatchResult result) throws SQLException {
+        for (int i : rows) {
+            try {
+                int id = insertRow(conn, employees.get(i), ids != null ? ids[i] : 0);
+                conn.commit();
+                employees.get(i).setId(id);
+                result.success(i, id);
+                fireInserted(employees.get(i));
+            } catch (SQLException rowError) {
+                conn.rollback();
+                result.failure(i, rowError.getMessage());
+            }
+        }
+    }
+
+    // Ids for count new rows on a sharded table, or null when the database generates them. They are taken before
+    // the insert borrows its connection: the allocator needs one of shard 0's connections itself.
+    private static int[] newIds(int count) throws SQLException {
+        if (DBConnection.getShardCount() == 1) {
+            return null;
+        }
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = SHARED_IDS.next();
+        }
+        return ids;
+    }
+
+    // Inserts one row and returns its id: the given one, or when that is 0 the generated key (0 if the driver
+    // reports none)
+    private static int insertRow(Connection conn, Employee emp, int id) throws SQLException {
+        if (id > 0) {
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_WITH_ID_SQL)) {
+                bindInsert(stmt, emp);
+                stmt.setInt(4, id);
+                stmt.executeUpdate();
+            }
+            return id;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            bindInsert(stmt, emp);
+            stmt.executeUpdate();
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    // Batched counterpart of updateEmployee with the same chunking and per-row error reporting as addEmployees.
+    // On a sharded table rows are sent to the shard of their new department; a row that is not there yet
+    // changed department and is moved by updateEmployee afterwards.
+    public BatchResult updateEmployees(List<Employee> employees, int chunkSize) {
+        long startNanos = System.nanoTime();
+        boolean failed = false;
+        BatchResult result = new BatchResult(employees.size());
+        int size = chunkSize > 0 ? chunkSize : DEFAULT_BATCH_CHUNK_SIZE;
+        List<Integer> moved = DBConnection.getShardCount() > 1 ? new ArrayList<>() : null;
+        
+        try {
+            List<List<Integer>> byShard = rowsByShard(employees, result);
+            for (int shard = 0; shard < byShard.size(); shard++) {
+                updateChunks(shard, employees, byShard.get(shard), size, result, moved);
+            }
+            if (moved != null) {
+                for (int i : moved) {
+                    if (writeEmployee(employees.get(i))) {
+                        result.success(i, employees.get(i).getId());
+                    } else {
+                        result.failure(i, NOT_FOUND + employees.get(i).getId());
+                    }
+                }
+            }
+        } catch (Exception e) {
+            failed = true;
+            e.printStackTrace();
+            result.failRemaining("Not processed: " + e.getMessage());
+        } finally {
+            metrics.recordQuery("updateEmployees", startNanos, result.getSucceeded(), failed);
+        }
+        return result;
+    }
+
+    private void updateChunks(int shard, List<Employee> employees, List<Integer> shardRows, int size,
+                              BatchResult result, List<Integer> moved) throws SQLException {
+        if (shardRows.isEmpty()) {
+            return;
+        }
+        try (Connection conn = DBConnection.getConnection(shard)) {
+            conn.setAutoCommit(false);
+            for (int start = 0; start < shardRows.size(); start += size) {
+                List<Integer> rows = shardRows.subList(start, Math.min(start + size, shardRows.size()));
+                try (PreparedStatement stmt = conn.prepareStatement(UPDATE_SQL)) {
+                    List<Integer> ids = new ArrayList<>(rows.size());
+                    for (int i : rows) {
+                        ids.add(employees.get(i).getId());
+                    }
+                    Map<Integer, Employee> before = lockRows(conn, ids);
+                    for (int i : rows) {
+                        bindUpdate(stmt, employees.get(i));
+                        stmt.addBatch();
+                    }
+                    int[] counts = stmt.executeBatch();
+                    conn.commit();
+                    for (int k = 0; k < rows.size(); k++) {
+                        Employee emp = employees.get(rows.get(k));
+                        recordUpdate(result, rows.get(k), emp, counts[k], before.get(emp.getId()), moved);
+                        // a later row in the same chunk with the same id replaces this one
+                        before.put(emp.getId(), emp);
+                    }
+                } catch (SQLException e) {
+                    conn.rollback();
+                    for (int i : rows) {
+                        try (PreparedStatement stmt = conn.prepareStatement(UPDATE_SQL)) {
+                            Employee before = listeners.isEmpty() ? null : selectForUpdate(conn, employees.get(i).getId());
+                            bindUpdate(stmt, employees.get(i));
+                            int count = stmt.executeUpdate();
+                            conn.commit();
+                            recordUpdate(result, i, employees.get(i), count, before, moved);
+                        } catch (SQLException rowError) {
+                            conn.rollback();
+                            result.failure(i, rowError.getMessage());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Sets ids[i]'s salary to salaries[i] for every i, one batched UPDATE and transaction per chunk of
+    // DEFAULT_BATCH_CHUNK_SIZE rows, with the same per-row error reporting as updateEmployees. On a sharded
+    // table the rows are first located with one query per shard.
+    public BatchResult updateSalaries(int[] ids, double[] salaries) {
+        long startNanos = System.nanoTime();
+        boolean failed = false;
+        BatchResult result = new BatchResult(ids.length);
+        
+        try {
+            List<List<Integer>> byShard = idsByShard(ids, result);
+            for (int shard = 0; shard < byShard.size(); shard++) {
+                updateSalaryChunks(shard, ids, salaries, byShard.get(shard), result);
+            }
+        } catch (Exception e) {
+            failed = true;
+            e.printStackTrace();
+            result.failRemaining("Not processed: " + e.getMessage());
+        } finally {
+            metrics.recordQuery("updateSalaries", startNanos, result.getSucceeded(), failed);
+        }
+        return result;
+    }
+
+    private void updateSalaryChunks(int shard, int[] ids, double[] salaries, List<Integer> shardRows,
+                                    BatchResult result) throws SQLException {
+        if (shardRows.isEmpty()) {
+            return;
+        }
+        int size = DEFAULT_BATCH_CHUNK_SIZE;
+        try (Connection conn = DBConnection.getConnection(shard)) {
+            conn.setAutoCommit(false);
+            for (int start = 0; start < shardRows.size(); start += size) {
+                List<Integer> rows = shardRows.subList(start, Math.min(start + size, shardRows.size()));
+                try (PreparedStatement stmt = conn.prepareStatement(UPDATE_SALARY_SQL)) {
+                    List<Integer> chunkIds = new ArrayList<>(rows.size());
+                    for (int i : rows) {
+                        chunkIds.add(ids[i]);
+                    }
+                    Map<Integer, Employee> before = lockRows(conn, chunkIds);
+                    for (int i : rows) {
+                        stmt.setDouble(1, salaries[i]);
+                        stmt.setInt(2, ids[i]);
+                        stmt.addBatch();
+                    }
+                    int[] counts = stmt.executeBatch();
+                    conn.commit();
+                    for (int k = 0; k < rows.size(); k++) {
+                        int i = rows.get(k);
+                        Employee previous = before.get(ids[i]);
+                        Employee after = withSalary(ids[i], salaries[i], previous);
+                        recordUpdate(result, i, after, counts[k], previous, null);
+                        if (previous != null) {
+                            before.put(ids[i], after);
+                        }
+                    }
+                } catch (SQLException e) {
+                    conn.rollback();
+                    for (int i : rows) {
+                        try (PreparedStatement stmt = conn.prepareStatement(UPDATE_SALARY_SQL)) {
+                            Employee before = listeners.isEmpty() ? null : selectForUpdate(conn, ids[i]);
+                            stmt.setDouble(1, salaries[i]);
+                            stmt.setInt(2, ids[i]);
+                            int count = stmt.executeUpdate();
+                            conn.commit();
+                            recordUpdate(result, i, withSalary(ids[i], salaries[i], before), count, before, null);
+                        } catch (SQLException rowError) {
+                            conn.rollback();
+                            result.failure(i, rowError.getMessage());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // before is null when nobody listens, and then only the id of the result is used
+    private static Employee withSalary(int id, double salary, Employee before) {
+        return before != null ? new Employee(id, before.getName(), before.getDepartment(), salary)
+                : new Employee(id, null, null, salary);
+    }
+
+    // Row indexes grouped by the shard that holds their id, found with one query per shard; ids that no
+    // shard has are reported as not found. One group when the table is not sharded.
+    private static List<List<Integer>> idsByShard(int[] ids, BatchResult result) {
+        int shards = DBConnection.getShardCount();
+        List<List<Integer>> byShard = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            byShard.add(new ArrayList<>());
+        }
+        if (shards == 1) {
+            for (int i = 0; i < ids.length; i++) {
+                byShard.get(0).add(i);
+            }
+            return byShard;
+        }
+        List<Set<Integer>> held = DBConnection.onEveryShard(shard -> {
+            Set<Integer> found = new HashSet<>();
+            try (Connection conn = DBConnection.getConnection(shard)) {
+                for (int start = 0; start < ids.length; start += DEFAULT_BATCH_CHUNK_SIZE) {
+                    int end = Math.min(start + DEFAULT_BATCH_CHUNK_SIZE, ids.length);
+                    String sql = "SELECT id FROM employees WHERE id IN (" + placeholders(end - start) + ")";
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        for (int k = start; k < end; k++) {
+                            stmt.setInt(k - start + 1, ids[k]);
+                        }
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            while (rs.next()) {
+                                found.add(rs.getInt(1));
+                            }
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+            return found;
+        });
+        for (int i = 0; i < ids.length; i++) {
+            int shard = 0;
+            while (shard < shards && !held.get(shard).contains(ids[i])) {
+                shard++;
+            }
+            if (shard < shards) {
+                byShard.get(shard).add(i);
+            } else {
+                result.failure(i, NOT_FOUND + ids[i]);
+            }
+        }
+        return byShard;
+    }
+
+    // Applies one salary change to every employee the adjustment selects, as a single set-based UPDATE per
+    // shard, or with chunkSize > 0 one UPDATE and transaction per chunkSize ids so a large department is never
+    // locked all at once. When anyone listens the rows are read before and after under the same locks, and every
+    // changed salary is reported like an updateSalary.
+    public SalaryAdjustmentResult adjustSalaries(SalaryAdjustment adjustment, int chunkSize) {
+        if ((adjustment.getPercent() == null) == (adjustment.getAmount() == null)) {
+            throw new IllegalArgumentException("Exactly one of percent and amount is required");
+        }
+        // queued updates come first, or they would overwrite the adjusted salaries when they are committed
+        flushPendingWrites();
+        long startNanos = System.nanoTime();
+        boolean failed = false;
+        SalaryAdjustmentResult result = new SalaryAdjustmentResult();
+        String department = adjustment.getDepartment();
+        
+        try {
+            int first = department != null ? DBConnection.shardFor(department) : 0;
+            int last = department != null ? first : DBConnection.getShardCount() - 1;
+            for (int shard = first; shard <= last; shard++) {
+                adjustShard(shard, adjustment, chunkSize, result);
+            }
+        } catch (Exception e) {
+            failed = true;
+            e.printStackTrace();
+            result.failed();
+        } finally {
+            metrics.recordQuery("adjustSalaries", startNanos, result.getAffected(), failed);
+        }
+        
+        List<DepartmentSummary> departments = new ArrayList<>();
+        for (DepartmentSummary summary : getDepartmentSummaries()) {
+            if (department == null || summary.getDepartment().equalsIgnoreCase(department.trim())) {
+                departments.add(summary);
+            }
+        }
+        result.setDepartments(departments);
+        return result;
+    }
+
+    private void adjustShard(int shard, SalaryAdjustment adjustment, int chunkSize, SalaryAdjustmentResult result)
+            throws SQLException {
+        try (Connection conn = DBConnection.getConnection(shard)) {
+            if (chunkSize <= 0) {
+                result.committed(adjustRange(conn, adjustment, 0, 0));
+                return;
+            }
+            List<Object> args = new ArrayList<>();
+            String sql = "SELECT MIN(id), MAX(id) FROM employees WHERE " + adjustmentFilter(adjustment, args);
+            long min;
+            long max;
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                bind(stmt, args);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next() || rs.getObject(1) == null) {
+                        return;
+                    }
+                    min = rs.getLong(1);
+                    max = rs.getLong(2);
+                }
+            }
+            for (long from = min; from <= max; from += chunkSize) {
+                result.committed(adjustRange(conn, adjustment, from, from + chunkSize));
+            }
+        }
+    }
+
+    // One transaction over ids from (inclusive) to to (exclusive), or over every selected id when to is 0
+    private int adjustRange(Connection conn, SalaryAdjustment adjustment, long from, long to) throws SQLException {
+        List<Object> filterArgs = new ArrayList<>();
+        String filter = adjustmentFilter(adjustment, filterArgs);
+        if (to > 0) {
+            filter += " AND id >= ? AND id < ?";
+            filterArgs.add(from);
+            filterArgs.add(to);
+        }
+        
+        // Salaries are DECIMAL(10,2), so the new values are read back rather than worked out here
+        List<Object> args = new ArrayList<>();
+        String newSalary = "salary * ? + ?";
+        args.add(adjustment.getPercent() != null ? 1 + adjustment.getPercent() / 100 : 1.0);
+        args.add(adjustment.getAmount() != null ? adjustment.getAmount() : 0.0);
+        if (adjustment.getCap() != null) {
+            newSalary = "LEAST(" + newSalary + ", GREATEST(salary, ?))";
+            args.add(adjustment.getCap());
+        }
+        if (adjustment.getFloor() != null) {
+            newSalary = "GREATEST(" + newSalary + ", LEAST(salary, ?))";
+            args.add(adjustment.getFloor());
+        }
+        args.addAll(filterArgs);
+        
+        conn.setAutoCommit(false);
+        try {
+            Map<Integer, Employee> before = new HashMap<>();
+            if (!listeners.isEmpty()) {
+                String select = "SELECT " + EMPLOYEE_COLUMNS + " FROM employees WHERE " + filter + " FOR UPDATE";
+                try (PreparedStatement stmt = conn.prepareStatement(select)) {
+                    bind(stmt, filterArgs);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            Employee emp = mapEmployee(rs);
+                            before.put(emp.getId(), emp);
+                        }
+                    }
+                }
+            }
+            int count;
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "UPDATE employees SET salary = " + newSalary + " WHERE " + filter)) {
+                bind(stmt, args);
+                count = stmt.executeUpdate();
+            }
+            // the rows are still locked by this transaction
+            List<Employee> after = selectByIds(conn, new ArrayList<>(before.keySet()));
+            conn.commit();
+            for (Employee emp : after) {
+                Employee previous = before.get(emp.getId());
+                if (previous.getSalary() != emp.getSalary()) {
+                    fireUpdated(previous, emp);
+                }
+            }
+            // nobody listening, so no rows were read back to announce
+            if (count > 0 && before.isEmpty()) {
+                writeCommitted();
+            }
+            return count;
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        }
+    }
+
+    // The rows with the given ids, DEFAULT_BATCH_CHUNK_SIZE ids per query
+    private static List<Employee> selectByIds(Connection conn, List<Integer> ids) throws SQLException {
+        List<Employee> rows = new ArrayList<>(ids.size());
+        for (int start = 0; start < ids.size(); start += DEFAULT_BATCH_CHUNK_SIZE) {
+            List<Integer> chunk = ids.subList(start, Math.min(start + DEFAULT_BATCH_CHUNK_SIZE, ids.size()));
+            String sql = "SELECT " + EMPLOYEE_COLUMNS + " FROM employees WHERE id IN (" + placeholders(chunk.size()) + ")";
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                bind(stmt, new ArrayList<>(chunk));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(mapEmployee(rs));
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static void bind(PreparedStatement stmt, List<Object> args) throws SQLException {
+        for (int i = 0; i < args.size(); i++) {
+            stmt.setObject(i + 1, args.get(i));
+        }
+    }
+
+    private static String adjustmentFilter(SalaryAdjustment adjustment, List<Object> args) {
+        StringBuilder filter = new StringBuilder("1 = 1");
+        if (adjustment.getDepartment() != null) {
+            filter.append(" AND department = ?");
+            args.add(adjustment.getDepartment().trim());
+        }
+        if (adjustment.getMinSalary() != null) {
+            filter.append(" AND salary >= ?");
+            args.add(adjustment.getMinSalary());
+        }
+        if (adjustment.getMaxSalary() != null) {
+            filter.append(" AND salary <= ?");
+            args.add(adjustment.getMaxSalary());
+        }
+        return filter.toString();
+    }
+
+    // Valid rows grouped by the shard of their department; one group when the table is not sharded
+    private static List<List<Integer>> rowsByShard(List<Employee> employees, BatchResult result) {
+        List<Integer> valid = validRows(employees, 0, employees.size(), result);
+        int shards = DBConnection.getShardCount();
+        if (shards == 1) {
+            return Collections.singletonList(valid);
+        }
+        List<List<Integer>> byShard = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (int i : valid) {
+            byShard.get(DBConnection.shardFor(employees.get(i).getDepartment())).add(i);
+        }
+        return byShard;
+    }
+
+    private static List<Integer> validRows(List<Employee> employees, int start, int end, BatchResult result) {
+        List<Integer> rows = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            Employee emp = employees.get(i);
+            if (emp == null || emp.getName() == null || emp.getDepartment() == null) {
+                result.failure(i, "Name and department are required");
+            } else {
+                rows.add(i);
+            }
+        }
+        return rows;
+    }
+
+    // moved collects rows that a sharded update did not find on the shard of their new department
+    private void recordUpdate(BatchResult result, int index, Employee emp, int count, Employee before,
+                              List<Integer> moved) {
+        // SUCCESS_NO_INFO is reported by drivers that rewrite the batch into one statement
+        if (count > 0 || count == Statement.SUCCESS_NO_INFO) {
+            result.success(index, emp.getId());
+            if (before != null) {
+                fireUpdated(before, emp);
+            } else {
+                writeCommitted();
+            }
+        } else if (moved != null) {
+            moved.add(index);
+        } else {
+            result.failure(index, NOT_FOUND + emp.getId());
+        }
+    }
+
+    // Reads the current rows of a chunk under row locks so listeners learn exactly what each update replaced
+    private Map<Integer, Employee> lockRows(Connection conn, List<Integer> ids) throws SQLException {
+        Map<Integer, Employee> before = new HashMap<>();
+        if (listeners.isEmpty() || ids.isEmpty()) {
+            return before;
+        }
+        String sql = "SELECT " + EMPLOYEE_COLUMNS + " FROM employees WHERE id IN (" + placeholders(ids.size()) + ") FOR UPDATE";
+        
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int k = 0; k < ids.size(); k++) {
+                stmt.setInt(k + 1, ids.get(k));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Employee emp = mapEmployee(rs);
+                    before.put(emp.getId(), emp);
+                }
+            }
+        }
+        return before;
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sql = new StringBuilder();
+        for (int k = 0; k < count; k++) {
+            sql.append(k == 0 ? "?" : ", ?");
+        }
+        return sql.toString();
+    }
+
+    // When anyone is listening, single-row writes run in a short transaction that first reads the row under
+    // a lock, so the change can be reported with its previous values. Returns null when nobody listens.
+    private Employee lockForChange(Connection conn, int id) throws SQLException {
+        if (listeners.isEmpty()) {
+            return null;
+        }
+        conn.setAutoCommit(false);
+        return selectForUpdate(conn, id);
+    }
+
+    private static Employee selectForUpdate(Connection conn, int id) throws SQLException {
+        String sql = "SELECT " + EMPLOYEE_COLUMNS + " FROM employees WHERE id = ? FOR UPDATE";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapEmployee(rs) : null;
+            }
+        }
+    }
+
+    // Moves an employee whose department now belongs to another shard: the row is copied to the target shard,
+    // with the new values, and deleted from the shard it was on. Returns the row as it was, or null when no
+    // shard has it. Connections are taken in shard order so two moves in opposite directions cannot deadlock.
+    private static Employee moveToShard(int targetShard, Employee emp) throws SQLException {
+        int source = findShard(emp.getId(), true, new Employee[1]);
+        if (source < 0 || source == targetShard) {
+            return null;
+        }
+        try (Connection low = DBConnection.getConnection(Math.min(source, targetShard));
+             Connection high = DBConnection.getConnection(Math.max(source, targetShard))) {
+            Connection from = source < targetShard ? low : high;
+            Connection target = source < targetShard ? high : low;
+            from.setAutoCommit(false);
+            Employee before = selectForUpdate(from, emp.getId());
+            if (before == null) {
+                return null;
+            }
+            target.setAutoCommit(false);
+            try (PreparedStatement stmt = target.prepareStatement(INSERT_WITH_ID_SQL)) {
+                bindUpdate(stmt, emp);
+                stmt.executeUpdate();
+            }
+            try (PreparedStatement stmt = from.prepareStatement("DELETE FROM employees WHERE id = ?")) {
+                stmt.setInt(1, emp.getId());
+                stmt.executeUpdate();
+            }
+            // Nothing spans both databases, so the copy commits first: a failure in between leaves the row on
+            // two shards for a moment (merged reads skip the duplicate) rather than on none
+            target.commit();
+            from.commit();
+            return before;
+        }
+    }
+
+    private static void commitChange(Connection conn) throws SQLException {
+        if (!conn.getAutoCommit()) {
+            conn.commit();
+        }
+    }
+
+    // Announces a committed write: the version moves only after the listeners have caught up, so a reader that
+    // sees the new version never reads the caches as they were before the write
+    private static void writeCommitted() {
+        DATA_VERSION.bump();
+        DBConnection.recordWrite();
+    }
+
+    private void fireInserted(Employee emp) {
+        for (EmployeeChangeListener listener : listeners) {
+            try {
+                listener.employeeInserted(emp);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        writeCommitted();
+    }
+
+    private void fireUpdated(Employee before, Employee after) {
+        for (EmployeeChangeListener listener : listeners) {
+            try {
+                listener.employeeUpdated(before, after);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        writeCommitted();
+    }
+
+    private void fireDeleted(Employee before) {
+        for (EmployeeChangeListener listener : listeners) {
+            try {
+                listener.employeeDeleted(before);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        writeCommitted();
+    }
+
+    private static void bindInsert(PreparedStatement stmt, Employee emp) throws SQLException {
+        stmt.setString(1, emp.getName());
+        stmt.setString(2, emp.getDepartment());
+        stmt.setDouble(3, emp.getSalary());
+    }
+
+    private static void bindUpdate(PreparedStatement stmt, Employee emp) throws SQLException {
+        bindInsert(stmt, emp);
+        stmt.setInt(4, emp.getId());
+    }
+
+    // count/total/min/max/avg salary per department
+    public List<DepartmentSummary> getDepartmentSummaries() {
+        flushPendingWrites();
+        if (stats != null && stats.ensureLoaded()) {
+            return stats.getSummaries();
+        }
+        // a department lives on one shard, so the shards' summaries only need putting in order
+        return coalesceList("getDepartmentSummaries", "", () -> {
+            List<List<DepartmentSummary>> parts = DBConnection.onEveryShard(this::loadDepartmentSummaries);
+            if (parts.size() == 1) {
+                return parts.get(0);
+            }
+            List<DepartmentSummary> merged = new ArrayList<>();
+            for (List<DepartmentSummary> part : parts) {
+                merged.addAll(part);
+            }
+            merged.sort((a, b) -> String.CASE_INSENSITIVE_ORDER.compare(a.getDepartment(), b.getDepartment()));
+            return merged;
+        });
+    }
+
+    private List<DepartmentSummary> loadDepartmentSummaries(int shard) {
+        long start = System.nanoTime();
+        boolean failed = false;
+        List<DepartmentSummary> list = new ArrayList<>();
+        String sql = "SELECT department, COUNT(*) AS n, SUM(salary) AS total, MIN(salary) AS min_salary, "
+                + "MAX(salary) AS max_salary FROM employees GROUP BY department ORDER BY department";
+        
+        try (Connection conn = DBConnection.getReadConnection(shard);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            
+            while (rs.next()) {
+                list.add(new DepartmentSummary(
+                    rs.getString(1),
+                    rs.getLong(2),
+                    rs.getDouble(3),
+                    rs.getDouble(4),
+                    rs.getDouble(5)
+                ));
+            }
+        } catch (Exception e) {
+            failed = true;
+            e.printStackTrace();
+        } finally {
+            metrics.recordQuery("getDepartmentSummaries", start, list.size(), failed);
+        }
+        return list;
+    }
+
+    public List<String> getAllDepartments() {
+        flushPendingWrites();
+        if (stats != null && stats.ensureLoaded()) {
+            return stats.getDepartments();
+        }
+        return coalesceList("getAllDepartments", "", () -> {
+            List<List<String>> parts = DBConnection.onEveryShard(this::loadAllDepartments);
+            if (parts.size() == 1) {
+                return parts.get(0);
+            }
+            List<String> merged = new ArrayList<>();
+            for (List<String> part : parts) {
+                merged.addAll(part);
+            }
+            merged.sort(String.CASE_INSENSITIVE_ORDER);
+            return merged;
+        });
+    }
+
+    private List<String> loadAllDepartments(int shard) {
+        long start = System.nanoTime();
+        boolean failed = false;
+        List<String> departments = new ArrayList<>();
+        String sql = "SELECT DISTINCT department FROM employees ORDER BY department";
+        
+        try (Connection conn = DBConnection.getReadConnection(shard);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            
+            while (rs.next()) {
+                departments.add(rs.getString(1));
+            }
+        } catch (Exception e) {
+            failed = true;
+            e.printStackTrace();
+        } finally {
+            metrics.recordQuery("getAllDepartments", start, departments.size(), failed);
+        }
+        return departments;
+    }
+
+    public int getEmployeeCount() {
+        flushPendingWrites();
+        if (stats != null && stats.ensureLoaded()) {
+            return stats.getEmployeeCount();
+        }
+        return coalesce("getEmployeeCount", "", () -> {
+            int count = 0;
+            for (int shardCount : DBConnection.onEveryShard(this::loadEmployeeCount)) {
+                count += shardCount;
+            }
+            return count;
+        });
+    }
+
+    private int loadEmployeeCount(int shard) {
+        long start = System.nanoTime();
+        boolean failed = false;
+        String sql = "SELECT COUNT(*) as count FROM employees";
+        int count = 0;
+        
+        try (Connection conn = DBConnection.getReadConnection(shard);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            
+            if (rs.next()) {
+                count = rs.getInt(1);
+            }
+        } catch (Exception e) {
+            failed = true;
+            e.printStackTrace();
+        } finally {
+            metrics.recordQuery("getEmployeeCount", start, 1, failed);
+        }
+        return count;
+    }
+}
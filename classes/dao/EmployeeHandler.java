@@ -0,0 +1,9 @@
+package dao;
+
+import model.Employee;
+
+// Callback for rows read through a streaming cursor; lets the caller write each row out as it arrives
+@FunctionalInterface
+public interface EmployeeHandler {
+    void handle(Employee emp) throws Exception;
+}
@@ -0,0 +1,125 @@
+package dao;
+
+import model.Employee;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Pipelines a streaming import: the caller parses input and add()s rows, which are grouped into chunks
+// and written by a background thread with multi-row inserts while the next chunk is being parsed.
+// At most maxPendingChunks chunks wait for the writer; beyond that add() blocks, so a slow database
+// throttles the reader and memory stays bounded no matter how large the input is.
+public class EmployeeImporter implements AutoCloseable {
+
+    private static final class Chunk {
+        final List<Employee> rows;
+        final long[] lines;
+
+        Chunk(List<Employee> rows, long[] lines) {
+            this.rows = rows;
+            this.lines = lines;
+        }
+    }
+
+    private static final Chunk END = new Chunk(null, null);
+    // MySQL allows at most 65535 placeholders per statement, three per row
+    public static final int MAX_CHUNK_SIZE = 65535 / 3;
+
+    private final EmployeeDAO dao;
+    private final int chunkSize;
+    private final BlockingQueue<Chunk> pending;
+    private final Thread writer;
+    private final ImportResult result = new ImportResult();
+    private final long startNanos = System.nanoTime();
+
+    private List<Employee> rows;
+    private long[] lines;
+    private boolean closed;
+
+    public EmployeeImporter(EmployeeDAO dao, int chunkSize, int maxPendingChunks) {
+        this.dao = dao;
+        this.chunkSize = Math.max(1, Math.min(chunkSize, MAX_CHUNK_SIZE));
+        this.pending = new ArrayBlockingQueue<>(Math.max(1, maxPendingChunks));
+        this.rows = new ArrayList<>(this.chunkSize);
+        this.lines = new long[this.chunkSize];
+        this.writer = new Thread(this::writeChunks, "employee-import-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // Queues one parsed row; blocks while the writer is behind
+    public void add(long line, Employee emp) throws InterruptedException {
+        lines[rows.size()] = line;
+        rows.add(emp);
+        if (rows.size() == chunkSize) {
+            enqueue(new Chunk(rows, lines));
+            rows = new ArrayList<>(chunkSize);
+            lines = new long[chunkSize];
+        }
+    }
+
+    private void enqueue(Chunk chunk) throws InterruptedException {
+        while (!pending.offer(chunk, 1, TimeUnit.SECONDS)) {
+            if (!writer.isAlive()) {
+                throw new IllegalStateException("Import writer stopped");
+            }
+        }
+    }
+
+    // Records a line that could not be parsed
+    public void reject(long line, String message) {
+        result.rejected(line, message);
+    }
+
+    // Flushes the last partial chunk and waits for the writer to drain
+    public ImportResult finish() throws InterruptedException {
+        if (!closed) {
+            closed = true;
+            if (!rows.isEmpty()) {
+                enqueue(new Chunk(rows, lines));
+            }
+            enqueue(END);
+            writer.join();
+            result.finish(System.nanoTime() - startNanos);
+        }
+        return result;
+    }
+
+    // Abandons whatever has not been written yet, e.g. when the upload itself fails
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            writer.interrupt();
+        }
+    }
+
+    private void writeChunks() {
+        try {
+            while (true) {
+                Chunk chunk = pending.take();
+                if (chunk == END) {
+                    return;
+                }
+                try {
+                    BatchResult batch = dao.addEmployeesMultiRow(chunk.rows);
+                    result.imported(batch.getSucceeded());
+                    for (BatchResult.RowError error : batch.getErrors()) {
+                        result.rejected(chunk.lines[error.getIndex()], error.getMessage());
+                    }
+                } catch (Exception e) {
+                    // keep draining, or a blocked add() would never return
+                    e.printStackTrace();
+                    for (int i = 0; i < chunk.rows.size(); i++) {
+                        result.rejected(chunk.lines[i], "Not processed: " + e.getMessage());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package dao;
+
+import db.DBConnection;
+import model.Employee;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// An in-memory index over every employee, loaded from the database on first use (or warmed from a snapshot)
+// and kept current by the DAO's writes. Subclasses hold the data; this class decides when it is rebuilt.
+// Reads take the read lock, so they run in parallel; writes and loads take the write lock.
+public abstract class EmployeeIndex implements EmployeeChangeListener {
+
+    protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object loadLock = new Object();
+    private volatile boolean loaded;
+    // Bumped on every local write; a load that overlapped a write is discarded and retried
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+
+    // --- the index itself, always called under the write lock ---
+
+    abstract void clear();
+
+    // emp may be shared with the caller, so an index keeps a copy
+    abstract void add(Employee emp);
+
+    // The row as indexed, or null
+    abstract Employee indexed(int id);
+
+    abstract void remove(int id);
+
+    // called under the read lock
+    abstract int count();
+
+    public boolean ensureLoaded() {
+        if (!loaded) {
+            synchronized (loadLock) {
+                if (!loaded) {
+                    reload();
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private void reload() {
+        String sql = "SELECT " + EmployeeDAO.EMPLOYEE_COLUMNS + " FROM employees";
+        for (int attempt = 0; attempt < 3; attempt++) {
+            long startVersion = version.get();
+            List<Employee> rows = new ArrayList<>();
+
+            try {
+                for (int shard = 0; shard < DBConnection.getShardCount(); shard++) {
+                    try (Connection conn = DBConnection.getConnection(shard);
+                         Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                        stmt.setFetchSize(conn.getMetaData().getURL().startsWith("jdbc:mysql:") ? Integer.MIN_VALUE : 500);
+                        try (ResultSet rs = stmt.executeQuery(sql)) {
+                            while (rs.next()) {
+                                rows.add(EmployeeDAO.mapEmployee(rs));
+                            }
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                return;
+            }
+
+            lock.writeLock().lock();
+            try {
+                if (version.get() != startVersion) {
+                    continue;
+                }
+                fill(rows);
+                reloads.incrementAndGet();
+                return;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // Fills an empty index from a snapshot of the table instead of the database; false if already loaded
+    public boolean warm(Collection<Employee> employees) {
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                return false;
+            }
+            version.incrementAndGet();
+            fill(employees);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void fill(Collection<Employee> employees) {
+        clear();
+        for (Employee emp : employees) {
+            add(emp);
+        }
+        loaded = true;
+    }
+
+    // --- writes, called by EmployeeDAO after the change has been committed ---
+
+    @Override
+    public void employeeInserted(Employee emp) {
+        lock.writeLock().lock();
+        try {
+            version.incrementAndGet();
+            if (loaded) {
+                add(emp);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Listeners can hear about two updates of one row in the wrong order. If the indexed row is not the
+    // one this update replaced, the index is dropped and rebuilt on the next read rather than left stale.
+    @Override
+    public void employeeUpdated(Employee before, Employee after) {
+        lock.writeLock().lock();
+        try {
+            version.incrementAndGet();
+            if (!loaded) {
+                return;
+            }
+            Employee current = indexed(before.getId());
+            if (current == null || !sameRow(current, before)) {
+                loaded = false;
+                return;
+            }
+            remove(before.getId());
+            add(after);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void employeeDeleted(Employee before) {
+        lock.writeLock().lock();
+        try {
+            version.incrementAndGet();
+            if (loaded && indexed(before.getId()) != null) {
+                remove(before.getId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // For writes whose previous values are unknown; the next read reloads from the database
+    public void invalidate() {
+        lock.writeLock().lock();
+        try {
+            version.incrementAndGet();
+            loaded = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getReloads() { return reloads.get(); }
+
+    private static boolean sameRow(Employee a, Employee b) {
+        return a.getName().equals(b.getName()) && a.getDepartment().equals(b.getDepartment())
+                && toCents(a.getSalary()) == toCents(b.getSalary());
+    }
+
+    static String key(String department) {
+        return department.trim().toLowerCase(Locale.ROOT);
+    }
+
+    static long toCents(double salary) {
+        return Math.round(salary * 100);
+    }
+
+    static Employee copy(Employee emp) {
+        return new Employee(emp.getId(), emp.getName(), emp.getDepartment(), emp.getSalary());
+    }
+}
@@ -0,0 +1,134 @@
+package dao;
+
+import model.Employee;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Batches lookups by id, DataLoader style: the ids asked for within windowMs of the first one, up to maxBatch
+// of them, are read with one query and every caller gets its own row. A caller asking for an id that is
+// already waiting shares its result. This trades up to windowMs of latency for far fewer queries and
+// connections when many lookups arrive at once. Rows are shared between callers and must not be modified.
+public class EmployeeLoader {
+
+    private final EmployeeDAO dao;
+    private final long windowMs;
+    private final int maxBatch;
+    private final ScheduledExecutorService dispatcher;
+
+    // guarded by this; replaced by a new map whenever a batch is sent
+    private Map<Integer, CompletableFuture<Employee>> waiting = new LinkedHashMap<>();
+    // guarded by this; set before the dispatcher is shut down, so nothing is scheduled on it afterwards
+    private boolean closed;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong loaded = new AtomicLong();
+
+    public EmployeeLoader(EmployeeDAO dao, long windowMs, int maxBatch, int threads) {
+        this.dao = dao;
+        this.windowMs = Math.max(0, windowMs);
+        this.maxBatch = Math.max(1, maxBatch);
+        this.dispatcher = Executors.newScheduledThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "employee-loader");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static EmployeeLoader fromSystemProperties(EmployeeDAO dao) {
+        return new EmployeeLoader(dao,
+                Long.getLong("loader.windowMs", 2L),
+                Integer.getInteger("loader.maxBatch", EmployeeDAO.DEFAULT_BATCH_CHUNK_SIZE),
+                Integer.getInteger("loader.threads", 4));
+    }
+
+    // Completes with the employee, or null when there is none. After close() the id is read on the
+    // caller's thread instead of being batched.
+    public CompletableFuture<Employee> load(int id) {
+        requests.incrementAndGet();
+        Map<Integer, CompletableFuture<Employee>> full = null;
+        Map<Integer, CompletableFuture<Employee>> direct = null;
+        CompletableFuture<Employee> future;
+        synchronized (this) {
+            future = waiting.get(id);
+            if (future != null) {
+                shared.incrementAndGet();
+                return future;
+            }
+            future = new CompletableFuture<>();
+            if (closed) {
+                direct = new LinkedHashMap<>();
+                direct.put(id, future);
+            } else {
+                waiting.put(id, future);
+                if (waiting.size() >= maxBatch) {
+                    full = waiting;
+                    waiting = new LinkedHashMap<>();
+                } else if (waiting.size() == 1) {
+                    Map<Integer, CompletableFuture<Employee>> batch = waiting;
+                    dispatcher.schedule(() -> dispatchIfWaiting(batch), windowMs, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+        if (full != null) {
+            Map<Integer, CompletableFuture<Employee>> batch = full;
+            try {
+                dispatcher.execute(() -> dispatch(batch));
+            } catch (RejectedExecutionException e) {
+                // closed since the batch was taken
+                dispatch(batch);
+            }
+        }
+        if (direct != null) {
+            dispatch(direct);
+        }
+        return future;
+    }
+
+    // The window of a batch that filled up early has nothing left to send
+    private void dispatchIfWaiting(Map<Integer, CompletableFuture<Employee>> batch) {
+        synchronized (this) {
+            if (waiting != batch) {
+                return;
+            }
+            waiting = new LinkedHashMap<>();
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(Map<Integer, CompletableFuture<Employee>> batch) {
+        batches.incrementAndGet();
+        loaded.addAndGet(batch.size());
+        try {
+            Map<Integer, Employee> rows = dao.loadEmployeesByIds(batch.keySet());
+            for (Map.Entry<Integer, CompletableFuture<Employee>> entry : batch.entrySet()) {
+                entry.getValue().complete(rows.get(entry.getKey()));
+            }
+        } catch (Exception e) {
+            for (CompletableFuture<Employee> future : batch.values()) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    // Batches already waiting are still sent: a shut down dispatcher runs the windows it has scheduled
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        dispatcher.shutdown();
+    }
+
+    public long getRequests() { return requests.get(); }
+    public long getShared() { return shared.get(); }
+    public long getBatches() { return batches.get(); }
+    public long getLoaded() { return loaded.get(); }
+}
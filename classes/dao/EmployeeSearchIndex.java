@@ -0,0 +1,285 @@
+package dao;
+
+import model.Employee;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+
+// In-memory search over all employees: name tokens in a sorted map so any prefix is a range scan (the
+// same lookups a trie gives), departments by lower-cased name and salaries by value for range filters.
+// Loading and keeping it current are left to EmployeeIndex; searches share its read lock and run in parallel.
+public class EmployeeSearchIndex extends EmployeeIndex {
+
+    public static final int MAX_RESULTS = 1000;
+
+    private final Map<Integer, Doc> docs = new HashMap<>();
+    private final TreeMap<String, Set<Integer>> nameTokens = new TreeMap<>();
+    private final Map<String, Set<Integer>> departments = new HashMap<>();
+    private final TreeMap<Long, Set<Integer>> salaries = new TreeMap<>();
+
+    @Override
+    void clear() {
+        docs.clear();
+        nameTokens.clear();
+        departments.clear();
+        salaries.clear();
+    }
+
+    @Override
+    void add(Employee emp) {
+        Doc doc = new Doc(emp);
+        int id = doc.emp.getId();
+        docs.put(id, doc);
+        for (String word : doc.words) {
+            nameTokens.computeIfAbsent(word, k -> new HashSet<>()).add(id);
+        }
+        departments.computeIfAbsent(doc.department, k -> new HashSet<>()).add(id);
+        salaries.computeIfAbsent(doc.cents, k -> new HashSet<>()).add(id);
+    }
+
+    @Override
+    Employee indexed(int id) {
+        Doc doc = docs.get(id);
+        return doc == null ? null : doc.emp;
+    }
+
+    @Override
+    void remove(int id) {
+        Doc doc = docs.remove(id);
+        if (doc == null) {
+            return;
+        }
+        for (String word : doc.words) {
+            removeId(nameTokens, word, id);
+        }
+        removeId(departments, doc.department, id);
+        removeId(salaries, doc.cents, id);
+    }
+
+    private static <K> void removeId(Map<K, Set<Integer>> index, K key, int id) {
+        Set<Integer> ids = index.get(key);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    // --- reads ---
+
+    // Employees whose name has a word starting with every word of query (null or blank for no name
+    // filter), optionally in one department (any case) and within a salary range. With a query the best
+    // matches come first: the whole name, then a name starting with the query, then whole-word matches,
+    // shorter names before longer ones. Without one, results are in id order.
+    public List<Employee> search(String query, String department, Double minSalary, Double maxSalary, int limit) {
+        Search search = new Search(query, department, minSalary, maxSalary, Math.max(1, Math.min(limit, MAX_RESULTS)));
+
+        lock.readLock().lock();
+        try {
+            // Walk the most selective of the filters; the others are checked per employee
+            String driverTerm = null;
+            long driverSize = docs.size();
+            for (String term : search.terms) {
+                long size = 0;
+                for (Set<Integer> ids : prefixRange(term).values()) {
+                    size += ids.size();
+                }
+                if (size <= driverSize) {
+                    driverTerm = term;
+                    driverSize = size;
+                }
+            }
+            Set<Integer> departmentIds = search.department == null ? null
+                    : departments.getOrDefault(search.department, Collections.emptySet());
+
+            if (departmentIds != null && departmentIds.size() < driverSize) {
+                for (Integer id : departmentIds) {
+                    search.consider(docs.get(id));
+                }
+            } else if (driverTerm != null) {
+                for (Map.Entry<String, Set<Integer>> entry : prefixRange(driverTerm).entrySet()) {
+                    for (Integer id : entry.getValue()) {
+                        Doc doc = docs.get(id);
+                        // a name with two words starting with the term is seen once, under the first of them
+                        if (entry.getKey().equals(doc.firstWordStartingWith(driverTerm))) {
+                            search.consider(doc);
+                        }
+                    }
+                }
+            } else if (search.terms.isEmpty() && (minSalary != null || maxSalary != null)) {
+                if (search.minCents <= search.maxCents) {
+                    for (Set<Integer> ids : salaries.subMap(search.minCents, true, search.maxCents, true).values()) {
+                        for (Integer id : ids) {
+                            search.consider(docs.get(id));
+                        }
+                    }
+                }
+            } else {
+                for (Doc doc : docs.values()) {
+                    search.consider(doc);
+                }
+            }
+            return search.results();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private NavigableMap<String, Set<Integer>> prefixRange(String prefix) {
+        return nameTokens.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    // One indexed employee with its name already split into lower-cased words
+    private static final class Doc {
+        final Employee emp;
+        final String lowerName;
+        final String[] words;
+        final String department;
+        final long cents;
+
+        Doc(Employee emp) {
+            this.emp = copy(emp);
+            this.lowerName = emp.getName().trim().toLowerCase(Locale.ROOT);
+            List<String> tokens = tokens(emp.getName());
+            this.words = tokens.toArray(new String[0]);
+            this.department = key(emp.getDepartment());
+            this.cents = toCents(emp.getSalary());
+        }
+
+        String firstWordStartingWith(String prefix) {
+            for (String word : words) {
+                if (word.startsWith(prefix)) {
+                    return word;
+                }
+            }
+            return null;
+        }
+
+        boolean hasWord(String term) {
+            for (String word : words) {
+                if (word.equals(term)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Match {
+        final Doc doc;
+        final int rank;
+
+        Match(Doc doc, int rank) {
+            this.doc = doc;
+            this.rank = rank;
+        }
+    }
+
+    // Filters of one search and the best matches seen so far
+    private static final class Search {
+        final List<String> terms;
+        final String phrase;
+        final String department;
+        final long minCents;
+        final long maxCents;
+        final int limit;
+        // the head of the queue is the worst of the matches kept
+        final PriorityQueue<Match> top;
+
+        Search(String query, String department, Double minSalary, Double maxSalary, int limit) {
+            this.terms = tokens(query);
+            this.phrase = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+            this.department = department == null ? null : key(department);
+            this.minCents = minSalary == null ? Long.MIN_VALUE : toCents(minSalary);
+            this.maxCents = maxSalary == null ? Long.MAX_VALUE : toCents(maxSalary);
+            this.limit = limit;
+            this.top = new PriorityQueue<>(limit + 1, (a, b) -> compare(b, a));
+        }
+
+        void consider(Doc doc) {
+            if (doc == null || (department != null && !department.equals(doc.department))
+                    || doc.cents < minCents || doc.cents > maxCents) {
+                return;
+            }
+            for (String term : terms) {
+                if (doc.firstWordStartingWith(term) == null) {
+                    return;
+                }
+            }
+            Match match = new Match(doc, rank(doc));
+            if (top.size() < limit) {
+                top.offer(match);
+            } else if (compare(match, top.peek()) < 0) {
+                top.poll();
+                top.offer(match);
+            }
+        }
+
+        private int rank(Doc doc) {
+            if (terms.isEmpty()) {
+                return 0;
+            }
+            if (doc.lowerName.equals(phrase)) {
+                return 0;
+            }
+            if (doc.lowerName.startsWith(phrase)) {
+                return 1;
+            }
+            for (String term : terms) {
+                if (!doc.hasWord(term)) {
+                    return 3;
+                }
+            }
+            return 2;
+        }
+
+        private int compare(Match a, Match b) {
+            int c = Integer.compare(a.rank, b.rank);
+            if (c == 0 && !terms.isEmpty()) {
+                c = Integer.compare(a.doc.lowerName.length(), b.doc.lowerName.length());
+            }
+            return c != 0 ? c : Integer.compare(a.doc.emp.getId(), b.doc.emp.getId());
+        }
+
+        List<Employee> results() {
+            Employee[] result = new Employee[top.size()];
+            for (int i = result.length - 1; i >= 0; i--) {
+                result[i] = copy(top.poll().doc.emp);
+            }
+            return Arrays.asList(result);
+        }
+    }
+
+    @Override
+    int count() {
+        return docs.size();
+    }
+
+    // Lower-cased words of a name: runs of letters and digits
+    static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean word = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                tokens.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,308 @@
+package dao;
+
+import model.Employee;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+// Read-only copy of the employees table in a file that is memory-mapped rather than parsed, so a restarted
+// JVM can serve and warm its caches from it before the database has answered anything.
+//
+// Layout, big-endian:
+//   header   magic "EMPS", format version, created-at millis, record count, id block size, block count,
+//            string pool size, CRC32 of everything after the header (HEADER_SIZE bytes)
+//   records  one RECORD_SIZE slot per employee sorted by id: id, salary in cents, and the pool offsets of
+//            the name and the department
+//   blocks   one BLOCK_SIZE slot per id block, sorted: block number, row count and content hash, as the
+//            database reported them when the rows were read (see SnapshotStore)
+//   pool     each distinct string once, as an unsigned 16-bit length and its UTF-8 bytes
+// A lookup by id is a binary search over the records; strings are decoded only for the rows returned.
+//
+// A mapped file cannot be replaced or deleted on Windows, so each write goes to a new generation,
+// <path>.<number>, and the older ones are removed once nothing maps them any more.
+public class EmployeeSnapshot {
+
+    static final int MAGIC = 0x454D5053;
+    static final int FORMAT_VERSION = 2;
+    static final int HEADER_SIZE = 40;
+    static final int RECORD_SIZE = 20;
+    static final int BLOCK_SIZE = 24;
+
+    private final Path path;
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int blockSize;
+    private final int blockCount;
+    private final int blocksStart;
+    private final int poolStart;
+    private final long createdAt;
+
+    private EmployeeSnapshot(Path path, ByteBuffer buffer, int count, int blockSize, int blockCount, long createdAt) {
+        this.path = path;
+        this.buffer = buffer;
+        this.count = count;
+        this.blockSize = blockSize;
+        this.blockCount = blockCount;
+        this.blocksStart = HEADER_SIZE + count * RECORD_SIZE;
+        this.poolStart = blocksStart + blockCount * BLOCK_SIZE;
+        this.createdAt = createdAt;
+    }
+
+    // Maps the newest valid generation of path. NoSuchFileException when there is none; another IOException
+    // when every generation is from another format version, truncated or corrupt, and should be rebuilt
+    public static EmployeeSnapshot open(Path path) throws IOException {
+        IOException failure = new NoSuchFileException(path.toString());
+        List<Path> generations = generations(path);
+        for (int i = generations.size() - 1; i >= 0; i--) {
+            try {
+                return map(generations.get(i));
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    // Maps one file and checks its header and checksum
+    static EmployeeSnapshot map(Path path) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not an employee snapshot: " + path);
+            }
+            // the mapping stays valid after the channel is closed
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer buffer = mapped.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an employee snapshot: " + path);
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unsupported snapshot version " + buffer.getInt(4) + ": " + path);
+        }
+        long createdAt = buffer.getLong(8);
+        int count = buffer.getInt(16);
+        int blockSize = buffer.getInt(20);
+        int blockCount = buffer.getInt(24);
+        int poolSize = buffer.getInt(28);
+        long expectedSize = HEADER_SIZE + (long) count * RECORD_SIZE + (long) blockCount * BLOCK_SIZE + poolSize;
+        if (count < 0 || blockCount < 0 || poolSize < 0 || expectedSize != buffer.capacity()) {
+            throw new IOException("Truncated snapshot: " + path);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(HEADER_SIZE));
+        if (crc.getValue() != buffer.getLong(32)) {
+            throw new IOException("Snapshot checksum mismatch: " + path);
+        }
+        return new EmployeeSnapshot(path, buffer, count, blockSize, blockCount, createdAt);
+    }
+
+    // Writes rows, with the block summaries they were read against, as a new generation of path and maps it.
+    // The file is written under a temporary name and moved into place, so readers only ever see a complete
+    // one. Ids must be unique; names and departments at most 65535 UTF-8 bytes.
+    public static EmployeeSnapshot write(Path path, Collection<Employee> rows, int blockSize,
+                                         Map<Long, long[]> blocks) throws IOException {
+        List<Employee> sorted = new ArrayList<>(rows);
+        sorted.sort(Comparator.comparingInt(Employee::getId));
+
+        Map<String, Integer> offsets = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        int poolSize = 0;
+        ByteBuffer records = ByteBuffer.allocate(sorted.size() * RECORD_SIZE);
+        for (Employee emp : sorted) {
+            records.putInt(emp.getId());
+            records.putLong(Math.round(emp.getSalary() * 100));
+            for (String value : new String[] { emp.getName(), emp.getDepartment() }) {
+                Integer offset = offsets.get(value);
+                if (offset == null) {
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    if (bytes.length > 0xFFFF) {
+                        throw new IOException("String too long for a snapshot: " + bytes.length + " bytes");
+                    }
+                    offset = poolSize;
+                    offsets.put(value, offset);
+                    strings.add(bytes);
+                    poolSize += 2 + bytes.length;
+                }
+                records.putInt(offset);
+            }
+        }
+        ByteBuffer pool = ByteBuffer.allocate(poolSize);
+        for (byte[] bytes : strings) {
+            pool.putShort((short) bytes.length);
+            pool.put(bytes);
+        }
+        ByteBuffer summaries = ByteBuffer.allocate(blocks.size() * BLOCK_SIZE);
+        for (Map.Entry<Long, long[]> block : new TreeMap<>(blocks).entrySet()) {
+            summaries.putLong(block.getKey());
+            summaries.putLong(block.getValue()[0]);
+            summaries.putLong(block.getValue()[1]);
+        }
+        records.flip();
+        summaries.flip();
+        pool.flip();
+
+        CRC32 crc = new CRC32();
+        crc.update(records.duplicate());
+        crc.update(summaries.duplicate());
+        crc.update(pool.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(FORMAT_VERSION);
+        header.putLong(System.currentTimeMillis());
+        header.putInt(sorted.size());
+        header.putInt(blockSize);
+        header.putInt(blocks.size());
+        header.putInt(poolSize);
+        header.putLong(crc.getValue());
+        header.flip();
+
+        Path dir = path.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        List<Path> older = generations(path);
+        long generation = System.currentTimeMillis();
+        if (!older.isEmpty()) {
+            generation = Math.max(generation, generationOf(path, older.get(older.size() - 1)) + 1);
+        }
+        Path target = path.resolveSibling(path.getFileName() + "." + generation);
+        Path tmp = Files.createTempFile(dir, path.getFileName().toString() + ".", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer[] parts = { header, records, summaries, pool };
+                long remaining = HEADER_SIZE + records.remaining() + summaries.remaining() + pool.remaining();
+                while (remaining > 0) {
+                    remaining -= channel.write(parts);
+                }
+                channel.force(true);
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        EmployeeSnapshot written = map(target);
+        for (Path old : older) {
+            try {
+                Files.deleteIfExists(old);
+            } catch (IOException e) {
+                // still mapped (Windows); the next write tries again
+            }
+        }
+        return written;
+    }
+
+    // The generations of path, oldest first
+    private static List<Path> generations(Path path) throws IOException {
+        Path dir = path.toAbsolutePath().getParent();
+        List<Path> found = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return found;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, path.getFileName() + ".*")) {
+            for (Path file : files) {
+                if (generationOf(path, file) >= 0) {
+                    found.add(file);
+                }
+            }
+        }
+        found.sort(Comparator.comparingLong(file -> generationOf(path, file)));
+        return found;
+    }
+
+    // -1 for a file that is not a generation of path, such as a temporary one
+    private static long generationOf(Path path, Path file) {
+        String suffix = file.getFileName().toString().substring(path.getFileName().toString().length() + 1);
+        if (suffix.isEmpty() || suffix.length() > 18 || !suffix.chars().allMatch(Character::isDigit)) {
+            return -1;
+        }
+        return Long.parseLong(suffix);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    // Block number to {row count, content hash}
+    public Map<Long, long[]> getBlocks() {
+        Map<Long, long[]> blocks = new HashMap<>(blockCount * 2);
+        for (int i = 0; i < blockCount; i++) {
+            int at = blocksStart + i * BLOCK_SIZE;
+            blocks.put(buffer.getLong(at), new long[] { buffer.getLong(at + 8), buffer.getLong(at + 16) });
+        }
+        return blocks;
+    }
+
+    // null when the snapshot has no employee with this id
+    public Employee get(int id) {
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int midId = buffer.getInt(HEADER_SIZE + mid * RECORD_SIZE);
+            if (midId < id) {
+                lo = mid + 1;
+            } else if (midId > id) {
+                hi = mid - 1;
+            } else {
+                return read(mid, new HashMap<>());
+            }
+        }
+        return null;
+    }
+
+    // Every employee in id order; each department name is decoded once and shared by its rows
+    public List<Employee> employees() {
+        List<Employee> rows = new ArrayList<>(count);
+        Map<Integer, String> decoded = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(read(i, decoded));
+        }
+        return rows;
+    }
+
+    private Employee read(int index, Map<Integer, String> decoded) {
+        int at = HEADER_SIZE + index * RECORD_SIZE;
+        int id = buffer.getInt(at);
+        double salary = buffer.getLong(at + 4) / 100.0;
+        String name = string(buffer.getInt(at + 12));
+        String department = decoded.computeIfAbsent(buffer.getInt(at + 16), this::string);
+        return new Employee(id, name, department, salary);
+    }
+
+    private String string(int offset) {
+        int at = poolStart + offset;
+        int length = buffer.getShort(at) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.duplicate().position(at + 2).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
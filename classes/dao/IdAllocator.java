@@ -0,0 +1,114 @@
+package dao;
+
+import db.DBConnection;
+import db.ShardSet;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Employee ids for a sharded table, where each shard's AUTO_INCREMENT would hand out the same ids as the
+// others. Blocks of ids are reserved from a one-row counter on shard 0 (employee_ids, created on first
+// use and started above the highest id on any shard) and handed out from memory, so only one insert in
+// blockSize pays for a round trip. Ids left in a block when the server stops are never used.
+public class IdAllocator {
+    private final int blockSize;
+    private ShardSet source;
+    private long next;
+    private long limit;
+    private final AtomicLong blocks = new AtomicLong();
+
+    public IdAllocator(int blockSize) {
+        this.blockSize = Math.max(1, blockSize);
+    }
+
+    public static IdAllocator fromSystemProperties() {
+        return new IdAllocator(Integer.getInteger("db.shard.idBlock", 100));
+    }
+
+    public synchronized int next() throws SQLException {
+        // a block reserved from other databases (the shards were reconfigured) is no longer ours to use
+        ShardSet shards = DBConnection.getShards();
+        if (shards != source || next >= limit) {
+            reserve();
+            source = shards;
+        }
+        return Math.toIntExact(next++);
+    }
+
+    private void reserve() throws SQLException {
+        try (Connection conn = DBConnection.getConnection(0)) {
+            long start = lockCounter(conn);
+            try (PreparedStatement stmt = conn.prepareStatement("UPDATE employee_ids SET next_id = ? WHERE id = 1")) {
+                stmt.setLong(1, start + blockSize);
+                stmt.executeUpdate();
+            }
+            conn.commit();
+            next = start;
+            limit = start + blockSize;
+            blocks.incrementAndGet();
+        }
+    }
+
+    // Leaves the counter row locked in an open transaction and returns its value
+    private static long lockCounter(Connection conn) throws SQLException {
+        conn.setAutoCommit(false);
+        Long value = selectForUpdate(conn);
+        if (value != null) {
+            return value;
+        }
+        conn.rollback();
+        conn.setAutoCommit(true);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS employee_ids (id INT PRIMARY KEY, next_id BIGINT NOT NULL)");
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO employee_ids (id, next_id) VALUES (1, ?)")) {
+            stmt.setLong(1, maxId(conn) + 1);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            // another server created the counter first
+        }
+        conn.setAutoCommit(false);
+        value = selectForUpdate(conn);
+        if (value == null) {
+            throw new SQLException("Could not create the employee id counter");
+        }
+        return value;
+    }
+
+    private static Long selectForUpdate(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT next_id FROM employee_ids WHERE id = 1 FOR UPDATE")) {
+            return rs.next() ? rs.getLong(1) : null;
+        } catch (SQLException e) {
+            // the table does not exist yet
+            conn.rollback();
+            return null;
+        }
+    }
+
+    // home is already a connection to shard 0
+    private static long maxId(Connection home) throws SQLException {
+        long max = selectMaxId(home);
+        for (int shard = 1; shard < DBConnection.getShardCount(); shard++) {
+            try (Connection conn = DBConnection.getConnection(shard)) {
+                max = Math.max(max, selectMaxId(conn));
+            }
+        }
+        return max;
+    }
+
+    private static long selectMaxId(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(id) FROM employees")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    public long getBlocks() {
+        return blocks.get();
+    }
+}
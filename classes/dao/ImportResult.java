@@ -0,0 +1,52 @@
+package dao;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Summary of a streaming import. Only the first MAX_REPORTED_ERRORS rejected lines are listed so the
+// report stays small however bad the input is; getRejected() still counts all of them.
+public class ImportResult {
+    public static final int MAX_REPORTED_ERRORS = 100;
+
+    private long imported;
+    private long rejected;
+    private long elapsedMs;
+    private double rowsPerSecond;
+    private final List<LineError> errors = new ArrayList<>();
+
+    synchronized void imported(long rows) {
+        imported += rows;
+    }
+
+    synchronized void rejected(long line, String message) {
+        rejected++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new LineError(line, message));
+        }
+    }
+
+    synchronized void finish(long elapsedNanos) {
+        elapsedMs = elapsedNanos / 1_000_000;
+        rowsPerSecond = elapsedNanos > 0 ? imported * 1e9 / elapsedNanos : 0;
+    }
+
+    // getters
+    public synchronized long getImported() { return imported; }
+    public synchronized long getRejected() { return rejected; }
+    public synchronized long getElapsedMs() { return elapsedMs; }
+    public synchronized double getRowsPerSecond() { return rowsPerSecond; }
+    public synchronized List<LineError> getErrors() { return new ArrayList<>(errors); }
+
+    public static class LineError {
+        private final long line;
+        private final String message;
+
+        public LineError(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public long getLine() { return line; }
+        public String getMessage() { return message; }
+    }
+}
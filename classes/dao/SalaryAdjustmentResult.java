@@ -0,0 +1,34 @@
+package dao;
+
+import model.DepartmentSummary;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Outcome of a bulk salary adjustment: rows updated, whether every chunk committed, and the aggregates of the
+// adjusted departments afterwards. A failed chunked run keeps the chunks committed before the failure.
+public class SalaryAdjustmentResult {
+    private int affected;
+    private int chunks;
+    private boolean complete = true;
+    private List<DepartmentSummary> departments = new ArrayList<>();
+
+    void committed(int rows) {
+        affected += rows;
+        chunks++;
+    }
+
+    void failed() {
+        complete = false;
+    }
+
+    void setDepartments(List<DepartmentSummary> departments) {
+        this.departments = departments;
+    }
+
+    // getters
+    public int getAffected() { return affected; }
+    public int getChunks() { return chunks; }
+    public boolean isComplete() { return complete; }
+    public List<DepartmentSummary> getDepartments() { return departments; }
+}
@@ -0,0 +1,147 @@
+package dao;
+
+import db.DBConnection;
+import model.Employee;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Holds the current SalarySnapshot. Writes only mark it dirty; the next read triggers a rebuild on a
+// background thread and keeps answering from the previous snapshot until the new one is swapped in,
+// so readers never wait on the database or on each other. Once shut down, a read that finds the snapshot
+// dirty rebuilds it itself.
+public class SalaryAnalytics implements EmployeeChangeListener {
+    private static final int FETCH_SIZE = 1000;
+
+    private final long minRefreshIntervalMs;
+    private final ExecutorService refresher;
+    private final AtomicBoolean dirty = new AtomicBoolean(true);
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile SalarySnapshot snapshot;
+
+    public SalaryAnalytics(long minRefreshIntervalMs) {
+        this.minRefreshIntervalMs = minRefreshIntervalMs;
+        this.refresher = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "salary-snapshot-refresher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public SalarySnapshot getSnapshot() {
+        SalarySnapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    dirty.set(false);
+                    snapshot = build();
+                }
+                return snapshot;
+            }
+        }
+        if (dirty.get() && System.currentTimeMillis() - current.getCreatedAt() >= minRefreshIntervalMs
+                && refreshing.compareAndSet(false, true)) {
+            try {
+                refresher.execute(() -> {
+                    try {
+                        dirty.set(false);
+                        snapshot = build();
+                    } catch (Exception e) {
+                        dirty.set(true);
+                        e.printStackTrace();
+                    } finally {
+                        refreshing.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // shut down: nothing refreshes in the background any more, so this reader rebuilds it
+                try {
+                    dirty.set(false);
+                    current = build();
+                    snapshot = current;
+                } catch (RuntimeException failed) {
+                    dirty.set(true);
+                    throw failed;
+                } finally {
+                    refreshing.set(false);
+                }
+            }
+        }
+        return current;
+    }
+
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    @Override
+    public void employeeInserted(Employee emp) {
+        dirty.set(true);
+    }
+
+    @Override
+    public void employeeUpdated(Employee before, Employee after) {
+        dirty.set(true);
+    }
+
+    @Override
+    public void employeeDeleted(Employee before) {
+        dirty.set(true);
+    }
+
+    private static SalarySnapshot build() {
+        int[] ids = new int[1024];
+        double[] salaries = new double[1024];
+        int[] codes = new int[1024];
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        int size = 0;
+        String sql = "SELECT id, department, salary FROM employees";
+
+        try {
+            for (int shard = 0; shard < DBConnection.getShardCount(); shard++) {
+                try (Connection conn = DBConnection.getConnection(shard);
+                     Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+                    boolean mysql = conn.getMetaData().getURL().startsWith("jdbc:mysql:");
+                    stmt.setFetchSize(mysql ? Integer.MIN_VALUE : FETCH_SIZE);
+                    try (ResultSet rs = stmt.executeQuery(sql)) {
+                        while (rs.next()) {
+                            if (size == ids.length) {
+                                ids = Arrays.copyOf(ids, size * 2);
+                                salaries = Arrays.copyOf(salaries, size * 2);
+                                codes = Arrays.copyOf(codes, size * 2);
+                            }
+                            // departments match in any case; each keeps the spelling it was first seen with
+                            String department = rs.getString(2);
+                            String key = EmployeeIndex.key(department);
+                            Integer code = dictionary.get(key);
+                            if (code == null) {
+                                code = names.size();
+                                dictionary.put(key, code);
+                                names.add(department);
+                            }
+                            ids[size] = rs.getInt(1);
+                            salaries[size] = rs.getDouble(3);
+                            codes[size] = code;
+                            size++;
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not load salary snapshot: " + e.getMessage(), e);
+        }
+        return new SalarySnapshot(ids, salaries, codes, names.toArray(new String[0]), size);
+    }
+}
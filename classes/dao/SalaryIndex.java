@@ -0,0 +1,153 @@
+package dao;
+
+import model.Employee;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+// Employees ordered by salary, per department and across all of them, so top-N, bottom-N and salary-range
+// queries take O(log n) plus the rows returned instead of a sort of the whole list. Each ordering maps a
+// salary in cents to the ids earning exactly that, kept as a sorted int[] so ties come out in id order.
+// Loading and keeping it current are left to EmployeeIndex.
+public class SalaryIndex extends EmployeeIndex {
+
+    public static final int MAX_RESULTS = 1000;
+
+    private final Map<Integer, Employee> rows = new HashMap<>();
+    private final Map<String, TreeMap<Long, int[]>> departments = new HashMap<>();
+    private final TreeMap<Long, int[]> all = new TreeMap<>();
+
+    @Override
+    void clear() {
+        rows.clear();
+        departments.clear();
+        all.clear();
+    }
+
+    @Override
+    void add(Employee row) {
+        Employee emp = copy(row);
+        rows.put(emp.getId(), emp);
+        long cents = toCents(emp.getSalary());
+        addId(departments.computeIfAbsent(key(emp.getDepartment()), k -> new TreeMap<>()), cents, emp.getId());
+        addId(all, cents, emp.getId());
+    }
+
+    @Override
+    Employee indexed(int id) {
+        return rows.get(id);
+    }
+
+    @Override
+    void remove(int id) {
+        Employee emp = rows.remove(id);
+        if (emp == null) {
+            return;
+        }
+        long cents = toCents(emp.getSalary());
+        String department = key(emp.getDepartment());
+        TreeMap<Long, int[]> salaries = departments.get(department);
+        if (salaries != null) {
+            removeId(salaries, cents, emp.getId());
+            if (salaries.isEmpty()) {
+                departments.remove(department);
+            }
+        }
+        removeId(all, cents, emp.getId());
+    }
+
+    private static void addId(TreeMap<Long, int[]> salaries, long cents, int id) {
+        int[] ids = salaries.get(cents);
+        if (ids == null) {
+            salaries.put(cents, new int[] { id });
+            return;
+        }
+        int at = Arrays.binarySearch(ids, id);
+        if (at >= 0) {
+            return;
+        }
+        at = -at - 1;
+        int[] grown = new int[ids.length + 1];
+        System.arraycopy(ids, 0, grown, 0, at);
+        grown[at] = id;
+        System.arraycopy(ids, at, grown, at + 1, ids.length - at);
+        salaries.put(cents, grown);
+    }
+
+    private static void removeId(TreeMap<Long, int[]> salaries, long cents, int id) {
+        int[] ids = salaries.get(cents);
+        int at = ids == null ? -1 : Arrays.binarySearch(ids, id);
+        if (at < 0) {
+            return;
+        }
+        if (ids.length == 1) {
+            salaries.remove(cents);
+            return;
+        }
+        int[] shrunk = new int[ids.length - 1];
+        System.arraycopy(ids, 0, shrunk, 0, at);
+        System.arraycopy(ids, at + 1, shrunk, at, ids.length - at - 1);
+        salaries.put(cents, shrunk);
+    }
+
+    // --- reads ---
+
+    // The n best paid employees, highest salary first, or with highest false the n worst paid, lowest first;
+    // of one department (any case) or, with department null, of everyone. Equal salaries come in id order.
+    public List<Employee> extremes(String department, int n, boolean highest) {
+        lock.readLock().lock();
+        try {
+            TreeMap<Long, int[]> salaries = department != null ? departments.get(key(department)) : all;
+            if (salaries == null) {
+                return Collections.emptyList();
+            }
+            return collect(highest ? salaries.descendingMap() : salaries, n);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Employees earning from minSalary to maxSalary inclusive (null for no bound), lowest salary first
+    public List<Employee> range(String department, Double minSalary, Double maxSalary, int limit) {
+        long min = minSalary == null ? Long.MIN_VALUE : toCents(minSalary);
+        long max = maxSalary == null ? Long.MAX_VALUE : toCents(maxSalary);
+        if (min > max) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            TreeMap<Long, int[]> salaries = department != null ? departments.get(key(department)) : all;
+            if (salaries == null) {
+                return Collections.emptyList();
+            }
+            return collect(salaries.subMap(min, true, max, true), limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Employee> collect(NavigableMap<Long, int[]> salaries, int limit) {
+        int max = Math.max(1, Math.min(limit, MAX_RESULTS));
+        List<Employee> result = new ArrayList<>(Math.min(max, rows.size()));
+        for (int[] ids : salaries.values()) {
+            for (int id : ids) {
+                result.add(copy(rows.get(id)));
+                if (result.size() == max) {
+                    return result;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    int count() {
+        return rows.size();
+    }
+}
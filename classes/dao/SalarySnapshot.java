@@ -0,0 +1,147 @@
+package dao;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Immutable column-oriented copy of the employees table for salary analytics: ids and salaries in
+// primitive arrays, departments dictionary-encoded to small ints, plus sorted salary columns (overall and
+// per department) so percentiles, medians and band counts need no sorting at query time.
+public class SalarySnapshot {
+    private final int[] ids;
+    private final double[] salaries;
+    private final int[] departmentCodes;
+    private final String[] departmentNames;
+    // keyed by EmployeeIndex.key(department), so lookups match in any case
+    private final Map<String, Integer> departmentIndex;
+    private final double[] sortedSalaries;
+    private final double[][] sortedByDepartment;
+    private final double total;
+    private final double[] departmentTotals;
+    private final long createdAt;
+
+    SalarySnapshot(int[] ids, double[] salaries, int[] departmentCodes, String[] departmentNames, int size) {
+        this.ids = Arrays.copyOf(ids, size);
+        this.salaries = Arrays.copyOf(salaries, size);
+        this.departmentCodes = Arrays.copyOf(departmentCodes, size);
+        this.departmentNames = departmentNames;
+        this.departmentIndex = new HashMap<>();
+        for (int d = 0; d < departmentNames.length; d++) {
+            departmentIndex.put(EmployeeIndex.key(departmentNames[d]), d);
+        }
+
+        this.sortedSalaries = this.salaries.clone();
+        Arrays.parallelSort(sortedSalaries);
+
+        int[] counts = new int[departmentNames.length];
+        for (int i = 0; i < size; i++) {
+            counts[this.departmentCodes[i]]++;
+        }
+        this.sortedByDepartment = new double[departmentNames.length][];
+        for (int d = 0; d < counts.length; d++) {
+            sortedByDepartment[d] = new double[counts[d]];
+        }
+        int[] fill = new int[departmentNames.length];
+        this.departmentTotals = new double[departmentNames.length];
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            int d = this.departmentCodes[i];
+            sortedByDepartment[d][fill[d]++] = this.salaries[i];
+            departmentTotals[d] += this.salaries[i];
+            sum += this.salaries[i];
+        }
+        for (double[] column : sortedByDepartment) {
+            Arrays.sort(column);
+        }
+        this.total = sum;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public String[] getDepartments() {
+        return departmentNames.clone();
+    }
+
+    // Sorted salaries of one department, or of everyone when department is null; empty if unknown.
+    // The returned array is shared by all readers and must not be modified.
+    public double[] sorted(String department) {
+        if (department == null) {
+            return sortedSalaries;
+        }
+        Integer d = departmentIndex.get(EmployeeIndex.key(department));
+        return d == null ? new double[0] : sortedByDepartment[d];
+    }
+
+    public double sum(String department) {
+        if (department == null) {
+            return total;
+        }
+        Integer d = departmentIndex.get(EmployeeIndex.key(department));
+        return d == null ? 0 : departmentTotals[d];
+    }
+
+    // Nearest-rank percentile, p in [0, 100]; NaN when there is no data
+    public static double percentile(double[] sorted, double p) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))];
+    }
+
+    public static double median(double[] sorted) {
+        int n = sorted.length;
+        if (n == 0) {
+            return Double.NaN;
+        }
+        return n % 2 == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2;
+    }
+
+    // Equal-width histogram between the min and max salary
+    public static long[] histogram(double[] sorted, int buckets) {
+        long[] counts = new long[buckets];
+        if (sorted.length == 0) {
+            return counts;
+        }
+        double min = sorted[0];
+        double width = (sorted[sorted.length - 1] - min) / buckets;
+        for (double salary : sorted) {
+            int b = width == 0 ? 0 : (int) ((salary - min) / width);
+            counts[Math.min(b, buckets - 1)]++;
+        }
+        return counts;
+    }
+
+    // Number of salaries in [bounds[i], bounds[i + 1]); the last band is open-ended
+    public static long[] bandCounts(double[] sorted, double[] bounds) {
+        long[] counts = new long[bounds.length];
+        for (int i = 0; i < bounds.length; i++) {
+            int from = lowerBound(sorted, bounds[i]);
+            int to = i + 1 < bounds.length ? lowerBound(sorted, bounds[i + 1]) : sorted.length;
+            counts[i] = Math.max(0, to - from);
+        }
+        return counts;
+    }
+
+    // Index of the first element >= value
+    static int lowerBound(double[] sorted, double value) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,115 @@
+package dao;
+
+import metrics.Metrics;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Collapses identical concurrent calls into one: the first caller for a key runs the call, callers that
+// arrive while it is still running wait for it and get the same result (or exception). Nothing is kept
+// once the call returns, so this only saves work under concurrency and never serves an old answer.
+// Values are shared between callers and must not be modified.
+public class SingleFlight {
+
+    private final Set<String> operations;
+    private final int maxKeys;
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong bypassed = new AtomicLong();
+
+    private static final Metrics metrics = Metrics.get();
+
+    // operations: the operations to coalesce, or null for all of them. maxKeys bounds how many distinct
+    // calls may be in flight at once; past that, calls with new keys simply run on their own.
+    public SingleFlight(Set<String> operations, int maxKeys) {
+        this.operations = operations == null ? null : Collections.unmodifiableSet(new HashSet<>(operations));
+        this.maxKeys = maxKeys;
+    }
+
+    // -Dsingleflight.operations=getAllEmployees,getAverageSalary,... (default * for all), -Dsingleflight.maxKeys=...
+    public static SingleFlight fromSystemProperties() {
+        String list = System.getProperty("singleflight.operations", "*").trim();
+        Set<String> operations = null;
+        if (!"*".equals(list)) {
+            operations = new HashSet<>();
+            for (String operation : list.split(",")) {
+                if (!operation.trim().isEmpty()) {
+                    operations.add(operation.trim());
+                }
+            }
+        }
+        return new SingleFlight(operations, Integer.getInteger("singleflight.maxKeys", 10000));
+    }
+
+    public boolean covers(String operation) {
+        return operations == null || operations.contains(operation);
+    }
+
+    // Runs call, or waits for the identical one already running. Waiting is recorded as the query
+    // "<operation>Coalesced" so the metrics show how often and how long callers piggybacked.
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String operation, String key, Callable<T> call) throws Exception {
+        if (!covers(operation)) {
+            return call.call();
+        }
+        String flightKey = operation + '|' + key;
+        CompletableFuture<Object> flight = inFlight.get(flightKey);
+        if (flight == null) {
+            if (inFlight.size() >= maxKeys) {
+                bypassed.incrementAndGet();
+                return call.call();
+            }
+            CompletableFuture<Object> mine = new CompletableFuture<>();
+            flight = inFlight.putIfAbsent(flightKey, mine);
+            if (flight == null) {
+                executions.incrementAndGet();
+                try {
+                    T value = call.call();
+                    mine.complete(value);
+                    return value;
+                } catch (Throwable t) {
+                    mine.completeExceptionally(t);
+                    throw t;
+                } finally {
+                    inFlight.remove(flightKey, mine);
+                }
+            }
+        }
+
+        coalesced.incrementAndGet();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T value = (T) flight.join();
+            failed = false;
+            return value;
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        } finally {
+            metrics.recordQuery(operation + "Coalesced", start, 0, failed);
+        }
+    }
+
+    // Calls that ran themselves, including for any waiters
+    public long getExecutions() { return executions.get(); }
+    // Calls answered by another caller's execution
+    public long getCoalesced() { return coalesced.get(); }
+    // Calls that ran uncoalesced because maxKeys calls were already in flight
+    public long getBypassed() { return bypassed.get(); }
+    public int getInFlight() { return inFlight.size(); }
+}
@@ -0,0 +1,337 @@
+package dao;
+
+import db.DBConnection;
+import model.Employee;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Keeps an EmployeeSnapshot file in step with the database. The first refresh writes the whole table; after
+// that only id blocks that may have changed are read again. A block is re-read when a write through this JVM
+// touched one of its ids, or when the database's row count or content hash for the block differs from the
+// one stored with the snapshot, which catches any insert, delete or change of name, department or salary
+// made elsewhere. The hash is the sum over the block's rows of a hash of each row, computed by the database
+// (CRC32 on MySQL, ORA_HASH on H2), so it is only ever compared with what the same database said before.
+// Rows that changed without passing through this JVM are reported to onExternalChange.
+public class SnapshotStore implements EmployeeChangeListener {
+
+    private static final int BLOCKS_PER_QUERY = 100;
+
+    private final Path path;
+    private final long refreshMs;
+    private final int blockSize;
+
+    private volatile EmployeeSnapshot current;
+    private final Object refreshLock = new Object();
+    private Set<Integer> dirty = new HashSet<>();
+    private volatile Consumer<Set<Integer>> onExternalChange;
+    private ScheduledExecutorService refresher;
+
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong fullLoads = new AtomicLong();
+    private final AtomicLong blocksReloaded = new AtomicLong();
+    private final AtomicLong rowsReloaded = new AtomicLong();
+    private final AtomicLong externalChanges = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public SnapshotStore(Path path, long refreshMs, int blockSize) {
+        this.path = path;
+        this.refreshMs = refreshMs;
+        this.blockSize = Math.max(1, blockSize);
+    }
+
+    // null unless -Dsnapshot.path names the snapshot file
+    public static SnapshotStore fromSystemProperties() {
+        String path = System.getProperty("snapshot.path");
+        if (path == null || path.isEmpty()) {
+            return null;
+        }
+        return new SnapshotStore(Paths.get(path),
+                Long.getLong("snapshot.refreshMs", 60000L),
+                Integer.getInteger("snapshot.blockSize", 256));
+    }
+
+    // Maps the existing file, if there is a valid one; the database is not touched
+    public EmployeeSnapshot open() {
+        try {
+            current = EmployeeSnapshot.open(path);
+        } catch (NoSuchFileException e) {
+            current = null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            current = null;
+        }
+        return current;
+    }
+
+    // null until a valid file has been opened or written
+    public EmployeeSnapshot getSnapshot() {
+        return current;
+    }
+
+    public void setOnExternalChange(Consumer<Set<Integer>> onExternalChange) {
+        this.onExternalChange = onExternalChange;
+    }
+
+    // Refreshes right away and then every refreshMs, on a daemon thread
+    public synchronized void start() {
+        if (refresher != null) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "employee-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(this::refresh, 0, Math.max(1, refreshMs), TimeUnit.MILLISECONDS);
+    }
+
+    // Stops the refresher and writes a last refresh, so the next start warms from current data
+    public void close() {
+        synchronized (this) {
+            if (refresher == null) {
+                return;
+            }
+            refresher.shutdownNow();
+            refresher = null;
+        }
+        refresh();
+    }
+
+    // Brings the file up to date with the database; false if the database or the file could not be used
+    public boolean refresh() {
+        synchronized (refreshLock) {
+            Set<Integer> written;
+            synchronized (this) {
+                written = dirty;
+                dirty = new HashSet<>();
+            }
+            try {
+                EmployeeSnapshot snapshot = current;
+                Set<Integer> external = snapshot == null || snapshot.getBlockSize() != blockSize
+                        ? fullLoad() : reloadChangedBlocks(snapshot, written);
+                refreshes.incrementAndGet();
+                if (!external.isEmpty()) {
+                    externalChanges.addAndGet(external.size());
+                    Consumer<Set<Integer>> callback = onExternalChange;
+                    if (callback != null) {
+                        callback.accept(external);
+                    }
+                }
+                return true;
+            } catch (Exception e) {
+                e.printStackTrace();
+                failures.incrementAndGet();
+                // the blocks written to since the last refresh still need to be read again
+                synchronized (this) {
+                    dirty.addAll(written);
+                }
+                return false;
+            }
+        }
+    }
+
+    // The block summaries are read before the rows, so a change in between shows up as a mismatch next time
+    private Set<Integer> fullLoad() throws Exception {
+        Map<Long, long[]> blocks = databaseBlocks();
+        String sql = "SELECT " + EmployeeDAO.EMPLOYEE_COLUMNS + " FROM employees";
+        List<Employee> rows = new ArrayList<>();
+        for (int shard = 0; shard < DBConnection.getShardCount(); shard++) {
+            try (Connection conn = DBConnection.getConnection(shard);
+                 Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                stmt.setFetchSize(conn.getMetaData().getURL().startsWith("jdbc:mysql:") ? Integer.MIN_VALUE : 500);
+                try (ResultSet rs = stmt.executeQuery(sql)) {
+                    while (rs.next()) {
+                        rows.add(EmployeeDAO.mapEmployee(rs));
+                    }
+                }
+            }
+        }
+        current = EmployeeSnapshot.write(path, rows, blockSize, blocks);
+        fullLoads.incrementAndGet();
+        rowsReloaded.addAndGet(rows.size());
+        return Collections.emptySet();
+    }
+
+    private Set<Integer> reloadChangedBlocks(EmployeeSnapshot snapshot, Set<Integer> written) throws Exception {
+        Map<Long, long[]> expected = snapshot.getBlocks();
+        Map<Long, long[]> actual = databaseBlocks();
+
+        Set<Long> changed = new HashSet<>();
+        for (int id : written) {
+            changed.add(block(id));
+        }
+        Set<Long> blocks = new HashSet<>(expected.keySet());
+        blocks.addAll(actual.keySet());
+        boolean summariesChanged = false;
+        for (long block : blocks) {
+            long[] e = expected.get(block);
+            long[] a = actual.get(block);
+            if (e == null || a == null || !Arrays.equals(e, a)) {
+                changed.add(block);
+                summariesChanged = true;
+            }
+        }
+        if (changed.isEmpty()) {
+            return Collections.emptySet();
+        }
+        List<Employee> before = snapshot.employees();
+
+        Map<Integer, Employee> reloaded = new HashMap<>();
+        for (Employee emp : readBlocks(new ArrayList<>(changed))) {
+            reloaded.put(emp.getId(), emp);
+        }
+        TreeMap<Integer, Employee> rows = new TreeMap<>();
+        Set<Integer> differing = new HashSet<>();
+        for (Employee emp : before) {
+            if (!changed.contains(block(emp.getId()))) {
+                rows.put(emp.getId(), emp);
+            } else if (!sameRow(emp, reloaded.get(emp.getId()))) {
+                differing.add(emp.getId());
+            }
+        }
+        for (Employee emp : reloaded.values()) {
+            rows.put(emp.getId(), emp);
+            if (snapshot.get(emp.getId()) == null) {
+                differing.add(emp.getId());
+            }
+        }
+        blocksReloaded.addAndGet(changed.size());
+        rowsReloaded.addAndGet(reloaded.size());
+        if (differing.isEmpty() && !summariesChanged) {
+            return Collections.emptySet();
+        }
+        // unchanged blocks matched their summaries, and changed ones were read after theirs were taken
+        current = EmployeeSnapshot.write(path, rows.values(), blockSize, actual);
+        if (differing.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        // changes made through this JVM have already reached its caches and indexes
+        Set<Integer> external = new HashSet<>(differing);
+        external.removeAll(written);
+        synchronized (this) {
+            external.removeAll(dirty);
+        }
+        return external;
+    }
+
+    // Row count and content hash per id block, summed over the shards; a row moved to another shard by a
+    // department change counts in the same block either way
+    private Map<Long, long[]> databaseBlocks() throws Exception {
+        String block = "FLOOR(id / " + blockSize + ")";
+        Map<Long, long[]> blocks = new HashMap<>();
+        for (int shard = 0; shard < DBConnection.getShardCount(); shard++) {
+            try (Connection conn = DBConnection.getConnection(shard);
+                 Statement stmt = conn.createStatement()) {
+                String sql = "SELECT " + block + ", COUNT(*), SUM(" + rowHash(conn) + ") FROM employees GROUP BY " + block;
+                try (ResultSet rs = stmt.executeQuery(sql)) {
+                    while (rs.next()) {
+                        BigDecimal hash = rs.getBigDecimal(3);
+                        long[] totals = blocks.computeIfAbsent(rs.getLong(1), k -> new long[2]);
+                        totals[0] += rs.getLong(2);
+                        totals[1] += hash == null ? 0 : hash.longValue();
+                    }
+                }
+            }
+        }
+        return blocks;
+    }
+
+    // An unsigned 32-bit hash of every column of a row; a block's sum stays well within a long
+    private static String rowHash(Connection conn) throws Exception {
+        String row = "CONCAT_WS('|', name, department, salary)";
+        return conn.getMetaData().getURL().startsWith("jdbc:mysql:") ? "CRC32(" + row + ")" : "ORA_HASH(" + row + ")";
+    }
+
+    // Up to BLOCKS_PER_QUERY id ranges per statement, as a UNION ALL so each range stays an index range scan
+    private List<Employee> readBlocks(List<Long> blocks) throws Exception {
+        List<Employee> rows = new ArrayList<>();
+        for (int from = 0; from < blocks.size(); from += BLOCKS_PER_QUERY) {
+            List<Long> batch = blocks.subList(from, Math.min(blocks.size(), from + BLOCKS_PER_QUERY));
+            StringBuilder sql = new StringBuilder();
+            for (int i = 0; i < batch.size(); i++) {
+                sql.append(i == 0 ? "" : " UNION ALL ")
+                        .append("SELECT " + EmployeeDAO.EMPLOYEE_COLUMNS + " FROM employees WHERE id >= ? AND id < ?");
+            }
+            for (int shard = 0; shard < DBConnection.getShardCount(); shard++) {
+                try (Connection conn = DBConnection.getConnection(shard);
+                     PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+                    int param = 1;
+                    for (long block : batch) {
+                        stmt.setLong(param++, block * blockSize);
+                        stmt.setLong(param++, (block + 1) * blockSize);
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            rows.add(EmployeeDAO.mapEmployee(rs));
+                        }
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    private long block(int id) {
+        return Math.floorDiv(id, blockSize);
+    }
+
+    private static boolean sameRow(Employee a, Employee b) {
+        return b != null && Objects.equals(a.getName(), b.getName())
+                && Objects.equals(a.getDepartment(), b.getDepartment())
+                && toCents(a.getSalary()) == toCents(b.getSalary());
+    }
+
+    private static long toCents(double salary) {
+        return Math.round(salary * 100);
+    }
+
+    // --- writes, called by EmployeeDAO after the change has been committed ---
+
+    @Override
+    public synchronized void employeeInserted(Employee emp) {
+        dirty.add(emp.getId());
+    }
+
+    @Override
+    public synchronized void employeeUpdated(Employee before, Employee after) {
+        dirty.add(after.getId());
+    }
+
+    @Override
+    public synchronized void employeeDeleted(Employee before) {
+        dirty.add(before.getId());
+    }
+
+    // getters
+    public Path getPath() { return path; }
+    public long getRefreshes() { return refreshes.get(); }
+    public long getFullLoads() { return fullLoads.get(); }
+    public long getBlocksReloaded() { return blocksReloaded.get(); }
+    public long getRowsReloaded() { return rowsReloaded.get(); }
+    public long getExternalChanges() { return externalChanges.get(); }
+    public long getFailures() { return failures.get(); }
+}
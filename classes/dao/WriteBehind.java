@@ -0,0 +1,315 @@
+package dao;
+
+import model.Employee;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Write-behind queue for salary and field updates. Updates wait in memory, merged per id, and one flusher
+// thread commits them in batches through the DAO's bulk methods: once batchSize ids are waiting, or flushMs
+// after the oldest arrived. Each caller gets a future that completes with true once its update is committed,
+// false when there is no such employee, or exceptionally when the write failed. Updates merged into one
+// share its outcome. At most maxPending ids wait at once; callers beyond that block until the flusher catches up.
+public class WriteBehind {
+
+    private static final class Pending {
+        final int id;
+        final long queuedAt = System.currentTimeMillis();
+        final CompletableFuture<Boolean> done = new CompletableFuture<>();
+        // the whole row after an updateEmployee, or null when only the salary changes
+        Employee row;
+        double salary;
+
+        Pending(int id) {
+            this.id = id;
+        }
+
+        void setSalary(double value) {
+            if (row != null) {
+                row.setSalary(value);
+            } else {
+                salary = value;
+            }
+        }
+
+        Employee applyTo(Employee current) {
+            if (row != null) {
+                return copy(row);
+            }
+            return new Employee(current.getId(), current.getName(), current.getDepartment(), salary);
+        }
+    }
+
+    private final EmployeeDAO dao;
+    private final int maxPending;
+    private final int batchSize;
+    private final long flushMs;
+
+    // guarded by this; insertion order is arrival order of each id's first waiting update
+    private final LinkedHashMap<Integer, Pending> pending = new LinkedHashMap<>();
+    private Map<Integer, Pending> inFlight = Collections.emptyMap();
+    private boolean flushRequested;
+    private boolean closed;
+    private Thread flusher;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong committed = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+
+    public WriteBehind(EmployeeDAO dao, int maxPending, int batchSize, long flushMs) {
+        this.dao = dao;
+        this.maxPending = Math.max(1, maxPending);
+        this.batchSize = Math.max(1, batchSize);
+        this.flushMs = Math.max(0, flushMs);
+    }
+
+    public static WriteBehind fromSystemProperties(EmployeeDAO dao) {
+        return new WriteBehind(dao,
+                Integer.getInteger("writebehind.maxPending", 10000),
+                Integer.getInteger("writebehind.batchSize", 500),
+                Long.getLong("writebehind.flushMs", 50L));
+    }
+
+    public CompletableFuture<Boolean> updateSalary(int id, double salary) {
+        return enqueue(id, null, salary);
+    }
+
+    public CompletableFuture<Boolean> updateEmployee(Employee emp) {
+        return enqueue(emp.getId(), copy(emp), emp.getSalary());
+    }
+
+    private synchronized CompletableFuture<Boolean> enqueue(int id, Employee row, double salary) {
+        submitted.incrementAndGet();
+        Pending p = pending.get(id);
+        if (p == null) {
+            boolean waited = false;
+            while (pending.size() >= maxPending && !closed) {
+                if (!waited) {
+                    blocked.incrementAndGet();
+                    waited = true;
+                }
+                flushRequested = true;
+                notifyAll();
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    CompletableFuture<Boolean> interrupted = new CompletableFuture<>();
+                    interrupted.completeExceptionally(e);
+                    return interrupted;
+                }
+            }
+            if (closed) {
+                CompletableFuture<Boolean> rejected = new CompletableFuture<>();
+                rejected.completeExceptionally(new IllegalStateException("Write-behind queue is closed"));
+                return rejected;
+            }
+            // the id may have been queued by another caller while this one waited for room
+            p = pending.get(id);
+        }
+        if (p == null) {
+            p = new Pending(id);
+            pending.put(id, p);
+            if (pending.size() == 1 || pending.size() >= batchSize) {
+                notifyAll();
+            }
+        } else {
+            merged.incrementAndGet();
+        }
+        if (row != null) {
+            p.row = row;
+        } else {
+            p.setSalary(salary);
+        }
+        if (flusher == null) {
+            flusher = new Thread(this::run, "employee-write-behind");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+        return p.done.copy();
+    }
+
+    // The employee as reads should see it: the committed row with any waiting update applied. A row that does not
+    // exist stays null, since an update of it will find nothing.
+    public synchronized Employee overlay(int id, Employee current) {
+        if (current == null) {
+            return null;
+        }
+        Employee result = current;
+        Pending p = inFlight.get(id);
+        if (p != null) {
+            result = p.applyTo(result);
+        }
+        p = pending.get(id);
+        if (p != null) {
+            result = p.applyTo(result);
+        }
+        return result;
+    }
+
+    public synchronized boolean hasPending() {
+        return !pending.isEmpty() || !inFlight.isEmpty();
+    }
+
+    // Commits everything waiting now and returns once it is done, whatever the outcome of each update
+    public void flush() {
+        List<CompletableFuture<Boolean>> waits = new ArrayList<>();
+        synchronized (this) {
+            for (Pending p : inFlight.values()) {
+                waits.add(p.done);
+            }
+            for (Pending p : pending.values()) {
+                waits.add(p.done);
+            }
+            if (waits.isEmpty()) {
+                return;
+            }
+            flushRequested = true;
+            notifyAll();
+        }
+        for (CompletableFuture<Boolean> wait : waits) {
+            try {
+                wait.join();
+            } catch (Exception e) {
+                // the caller of that update is told through its future
+            }
+        }
+    }
+
+    // Flushes what is waiting and stops the flusher; later updates are rejected
+    public void close() {
+        flush();
+        Thread t;
+        synchronized (this) {
+            closed = true;
+            t = flusher;
+            notifyAll();
+        }
+        if (t != null) {
+            try {
+                t.join(10000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        while (true) {
+            List<Pending> batch = new ArrayList<>();
+            synchronized (this) {
+                try {
+                    while (pending.isEmpty() && !closed) {
+                        wait();
+                    }
+                    if (pending.isEmpty()) {
+                        return;
+                    }
+                    // wait for a full batch or the oldest update's deadline, unless someone wants it all now
+                    long deadline = pending.values().iterator().next().queuedAt + flushMs;
+                    long now = System.currentTimeMillis();
+                    while (pending.size() < batchSize && !flushRequested && !closed && now < deadline) {
+                        wait(deadline - now);
+                        now = System.currentTimeMillis();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                Map<Integer, Pending> taken = new HashMap<>();
+                Iterator<Pending> it = pending.values().iterator();
+                while (it.hasNext() && batch.size() < batchSize) {
+                    Pending p = it.next();
+                    it.remove();
+                    batch.add(p);
+                    taken.put(p.id, p);
+                }
+                inFlight = taken;
+                if (pending.isEmpty()) {
+                    flushRequested = false;
+                }
+                // room for callers blocked on maxPending
+                notifyAll();
+            }
+            try {
+                commit(batch);
+            } catch (Exception e) {
+                e.printStackTrace();
+                for (Pending p : batch) {
+                    p.done.completeExceptionally(e);
+                }
+            }
+            synchronized (this) {
+                inFlight = Collections.emptyMap();
+            }
+        }
+    }
+
+    private void commit(List<Pending> batch) {
+        List<Pending> rows = new ArrayList<>();
+        List<Employee> employees = new ArrayList<>();
+        List<Pending> salaries = new ArrayList<>();
+        for (Pending p : batch) {
+            if (p.row != null) {
+                rows.add(p);
+                employees.add(p.row);
+            } else {
+                salaries.add(p);
+            }
+        }
+        if (!employees.isEmpty()) {
+            complete(rows, dao.updateEmployees(employees, batchSize));
+        }
+        if (!salaries.isEmpty()) {
+            int[] ids = new int[salaries.size()];
+            double[] values = new double[salaries.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = salaries.get(i).id;
+                values[i] = salaries.get(i).salary;
+            }
+            complete(salaries, dao.updateSalaries(ids, values));
+        }
+        batches.incrementAndGet();
+    }
+
+    private void complete(List<Pending> updates, BatchResult result) {
+        String[] errors = new String[updates.size()];
+        for (BatchResult.RowError error : result.getErrors()) {
+            errors[error.getIndex()] = error.getMessage();
+        }
+        for (int i = 0; i < errors.length; i++) {
+            CompletableFuture<Boolean> done = updates.get(i).done;
+            if (errors[i] == null) {
+                committed.incrementAndGet();
+                done.complete(true);
+            } else if (errors[i].startsWith(EmployeeDAO.NOT_FOUND)) {
+                done.complete(false);
+            } else {
+                done.completeExceptionally(new SQLException(errors[i]));
+            }
+        }
+    }
+
+    public synchronized int getPending() {
+        return pending.size() + inFlight.size();
+    }
+
+    public long getSubmitted() { return submitted.get(); }
+    public long getMerged() { return merged.get(); }
+    public long getBatches() { return batches.get(); }
+    public long getCommitted() { return committed.get(); }
+    public long getBlocked() { return blocked.get(); }
+
+    private static Employee copy(Employee emp) {
+        return new Employee(emp.getId(), emp.getName(), emp.getDepartment(), emp.getSalary());
+    }
+}
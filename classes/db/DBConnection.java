@@ -1,20 +1,302 @@
 package db;
 
+import metrics.Metrics;
+
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntFunction;
 
 public class DBConnection {
-    private static final String URL = "jdbc:mysql://localhost:3306/employee_management";
+    private static final String URL = "jdbc:mysql://localhost:3306/employee_management?rewriteBatchedStatements=true";
     private static final String USER = "root";
     private static final String PASSWORD = "data@123"; // Update this
-    
+
+    private static volatile ConnectionPool pool;
+    private static volatile ReplicaSet replicas;
+    // Set when employees are split over several databases by department; shard 0 is then also `pool`
+    private static volatile ShardSet shards;
+
+    // How long after a write reads keep going to the primary; also the replication lag we are prepared to hide
+    private static final long STICKY_MS = Long.getLong("db.replica.stickyMs", 2000L);
+    private static final ThreadLocal<Long> primaryReadsUntil = new ThreadLocal<>();
+    private static volatile long lastWriteAt;
+
+    // The primary: every write, and reads that must see the latest committed data
     public static Connection getConnection() throws SQLException {
-        try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
+        return getPool().getConnection();
+    }
+
+    // A replica when there are any and this thread is not pinned to the primary by a recent write;
+    // falls back to the primary when no replica is healthy
+    public static Connection getReadConnection() throws SQLException {
+        ConnectionPool primary = getPool();
+        ReplicaSet r = replicas;
+        if (r != null && !isReadingFromPrimary()) {
+            Connection conn = r.getConnection();
+            if (conn != null) {
+                return conn;
+            }
+        }
+        return primary.getConnection();
+    }
+
+    // Called after a write commits: this thread reads from the primary for the next db.replica.stickyMs
+    public static void recordWrite() {
+        long now = System.currentTimeMillis();
+        lastWriteAt = now;
+        if (replicas != null) {
+            primaryReadsUntil.set(now + STICKY_MS);
+        }
+    }
+
+    // Pins this thread's reads to the primary until the given time, e.g. for a client that wrote recently
+    // through another request; pass 0 to clear
+    public static void readFromPrimaryUntil(long timeMillis) {
+        if (timeMillis > 0) {
+            primaryReadsUntil.set(timeMillis);
+        } else {
+            primaryReadsUntil.remove();
+        }
+    }
+
+    public static boolean isReadingFromPrimary() {
+        if (replicas == null) {
+            return true;
+        }
+        Long until = primaryReadsUntil.get();
+        return until != null && until > System.currentTimeMillis();
+    }
+
+    // True when reads on this thread may come from a replica that has not yet applied this server's last write
+    public static boolean mayReadStale() {
+        return !isReadingFromPrimary() && System.currentTimeMillis() - lastWriteAt < STICKY_MS;
+    }
+
+    public static long getStickyMs() {
+        return STICKY_MS;
+    }
+
+    public static ReplicaSet getReplicas() {
+        return replicas;
+    }
+
+    // 1 when the employees table is not sharded
+    public static int getShardCount() {
+        getPool();
+        ShardSet s = shards;
+        return s != null ? s.size() : 1;
+    }
+
+    // The shard that holds the given department's employees
+    public static int shardFor(String department) {
+        getPool();
+        ShardSet s = shards;
+        return s != null ? s.shardFor(department) : 0;
+    }
+
+    // A connection to one shard for writes and reads that must be current; shard 0 without sharding
+    public static Connection getConnection(int shard) throws SQLException {
+        ConnectionPool primary = getPool();
+        ShardSet s = shards;
+        if (s != null) {
+            return s.getConnection(shard);
+        }
+        if (shard != 0) {
+            throw new IllegalArgumentException("No shard " + shard + ": the employees table is not sharded");
+        }
+        return primary.getConnection();
+    }
+
+    // Replicas are only used without sharding, so a sharded read goes to the shard itself
+    public static Connection getReadConnection(int shard) throws SQLException {
+        getPool();
+        return shards != null ? getConnection(shard) : getReadConnection();
+    }
+
+    // Runs the task for every shard, in parallel when there are several, and returns the results in shard order
+    public static <T> List<T> onEveryShard(IntFunction<T> task) {
+        getPool();
+        ShardSet s = shards;
+        return s != null ? s.onEveryShard(task) : Collections.singletonList(task.apply(0));
+    }
+
+    public static ShardSet getShards() {
+        return shards;
+    }
+
+    public static ConnectionPool getPool() {
+        ConnectionPool p = pool;
+        if (p == null) {
+            synchronized (DBConnection.class) {
+                p = pool;
+                if (p == null) {
+                    ShardSet s = defaultShards();
+                    p = s != null ? s.getPool(0) : new ConnectionPool(defaultConfig());
+                    shards = s;
+                    pool = p;
+                    replicas = s != null ? null : defaultReplicas();
+                    registerGauges();
+                }
+            }
+        }
+        return p;
+    }
+
+    // Replaces the pool, e.g. to point at an embedded database (jdbc:h2:mem:...;MODE=MySQL) in benchmarks
+    public static synchronized void configure(ConnectionPool.Config config) {
+        configure(config, null);
+    }
+
+    // A primary plus read replicas, e.g. several embedded databases standing in for a replicated setup
+    public static synchronized void configure(ConnectionPool.Config primary, List<ConnectionPool.Config> replicaConfigs) {
+        shutdown();
+        pool = new ConnectionPool(primary);
+        replicas = replicaConfigs == null || replicaConfigs.isEmpty() ? null
+                : new ReplicaSet(replicaConfigs, Long.getLong("db.replica.healthCheckMs", 5000L), HEALTH_QUERY);
+        registerGauges();
+    }
+
+    // Employees split by department over several databases; the first also holds the id allocation table
+    public static synchronized void configureShards(List<ConnectionPool.Config> shardConfigs) {
+        shutdown();
+        ShardSet s = new ShardSet(shardConfigs, scatterThreads(shardConfigs));
+        shards = s;
+        pool = s.getPool(0);
+        registerGauges();
+    }
+
+    public static synchronized void shutdown() {
+        if (shards != null) {
+            shards.close();
+            shards = null;
+        } else if (pool != null) {
+            pool.close();
+        }
+        pool = null;
+        if (replicas != null) {
+            replicas.close();
+            replicas = null;
+        }
+    }
+
+    public static PoolStats getPoolStats() {
+        return getPool().getStats();
+    }
+
+    private static void registerGauges() {
+        Metrics metrics = Metrics.get();
+        metrics.registerGauge("ems_db_pool_active", "Connections currently borrowed", () -> getPoolStats().getActive());
+        metrics.registerGauge("ems_db_pool_idle", "Idle pooled connections", () -> getPoolStats().getIdle());
+        metrics.registerGauge("ems_db_pool_waiting", "Threads waiting for a connection", () -> getPoolStats().getWaiting());
+        metrics.registerGauge("ems_db_pool_handshakes", "Physical connections opened", () -> getPoolStats().getHandshakes());
+        metrics.registerGauge("ems_db_pool_handshakes_saved", "Borrows served by an existing connection",
+                () -> getPoolStats().getHandshakesSaved());
+        metrics.registerGauge("ems_db_pool_wait_avg_micros", "Average wait for a connection",
+                () -> getPoolStats().getAvgWaitMicros());
+        metrics.registerGauge("ems_db_pool_timeouts", "Borrows that timed out", () -> getPoolStats().getTimeouts());
+        metrics.registerGauge("ems_db_pool_leaks", "Connections held past the leak threshold",
+                () -> getPoolStats().getLeaksDetected());
+        ReplicaSet r = replicas;
+        if (r != null) {
+            metrics.registerGauge("ems_db_replicas_healthy", "Read replicas passing health checks", r::getHealthyCount);
+            metrics.registerGauge("ems_db_replica_failures", "Failed replica health checks and borrows", r::getFailures);
+            metrics.registerGauge("ems_db_replica_reads", "Read connections served by replicas", () -> {
+                long total = 0;
+                for (long reads : r.getReads()) {
+                    total += reads;
+                }
+                return total;
+            });
+        }
+        ShardSet s = shards;
+        if (s != null) {
+            metrics.registerGauge("ems_db_shards", "Databases the employees table is split over", s::size);
+            metrics.registerGauge("ems_db_shard_scatters", "Queries sent to every shard", s::getScatters);
+        }
+    }
+
+    // Checks the schema as well as the connection, so a replica that lost its data is taken out too
+    private static final String HEALTH_QUERY = System.getProperty("db.replica.healthQuery",
+            "SELECT 1 FROM employees WHERE 1 = 0");
+
+    // -Ddb.replicas=jdbc:mysql://replica1:3306/employee_management,jdbc:mysql://replica2:3306/...
+    // with the primary's user, password and pool sizes unless -Ddb.replica.user/password are given
+    private static ReplicaSet defaultReplicas() {
+        String urls = System.getProperty("db.replicas", "").trim();
+        if (urls.isEmpty()) {
+            return null;
+        }
+        ConnectionPool.Config primary = defaultConfig();
+        List<ConnectionPool.Config> configs = new ArrayList<>();
+        for (String url : urls.split(",")) {
+            if (url.trim().isEmpty()) {
+                continue;
+            }
+            ConnectionPool.Config config = new ConnectionPool.Config(url.trim(),
+                    System.getProperty("db.replica.user", primary.user),
+                    System.getProperty("db.replica.password", primary.password));
+            config.minSize = primary.minSize;
+            config.maxSize = primary.maxSize;
+            config.borrowTimeoutMs = primary.borrowTimeoutMs;
+            config.idleTimeoutMs = primary.idleTimeoutMs;
+            config.leakThresholdMs = primary.leakThresholdMs;
+            config.validateAfterIdleMs = primary.validateAfterIdleMs;
+            configs.add(config);
+        }
+        return configs.isEmpty() ? null
+                : new ReplicaSet(configs, Long.getLong("db.replica.healthCheckMs", 5000L), HEALTH_QUERY);
+    }
+
+    // -Ddb.shards=jdbc:mysql://shard0:3306/employee_management,jdbc:mysql://shard1:3306/... replaces db.url;
+    // every shard uses the configured user, password and pool sizes. Read replicas are not combined with shards.
+    private static ShardSet defaultShards() {
+        String urls = System.getProperty("db.shards", "").trim();
+        if (urls.isEmpty()) {
+            return null;
+        }
+        List<ConnectionPool.Config> configs = new ArrayList<>();
+        for (String url : urls.split(",")) {
+            if (url.trim().isEmpty()) {
+                continue;
+            }
+            ConnectionPool.Config config = defaultConfig();
+            config.url = url.trim();
+            configs.add(config);
+        }
+        return configs.isEmpty() ? null : new ShardSet(configs, scatterThreads(configs));
+    }
+
+    // A scatter task holds one connection, so more threads than connections across the shards would only wait
+    private static int scatterThreads(List<ConnectionPool.Config> configs) {
+        int connections = 0;
+        for (ConnectionPool.Config config : configs) {
+            connections += config.maxSize;
+        }
+        return Integer.getInteger("db.shard.scatterThreads", connections);
+    }
+
+    // Settings can be overridden with -Ddb.url=..., -Ddb.pool.max=... etc.
+    private static ConnectionPool.Config defaultConfig() {
+        String url = System.getProperty("db.url", URL);
+        if (url.startsWith("jdbc:mysql:")) {
+            try {
+                Class.forName("com.mysql.cj.jdbc.Driver");
+            } catch (ClassNotFoundException e) {
+                e.printStackTrace();
+            }
         }
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        ConnectionPool.Config config = new ConnectionPool.Config(url,
+                System.getProperty("db.user", USER),
+                System.getProperty("db.password", PASSWORD));
+        config.minSize = Integer.getInteger("db.pool.min", config.minSize);
+        config.maxSize = Integer.getInteger("db.pool.max", config.maxSize);
+        config.borrowTimeoutMs = Long.getLong("db.pool.borrowTimeoutMs", config.borrowTimeoutMs);
+        config.idleTimeoutMs = Long.getLong("db.pool.idleTimeoutMs", config.idleTimeoutMs);
+        config.leakThresholdMs = Long.getLong("db.pool.leakThresholdMs", config.leakThresholdMs);
+        config.validateAfterIdleMs = Long.getLong("db.pool.validateAfterIdleMs", config.validateAfterIdleMs);
+        return config;
     }
-}
\ No newline at end of file
+}
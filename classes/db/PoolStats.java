@@ -0,0 +1,57 @@
+package db;
+
+public class PoolStats {
+    private final int active;
+    private final int idle;
+    private final int waiting;
+    private final long borrows;
+    private final long handshakes;
+    private final long handshakesSaved;
+    private final long avgWaitMicros;
+    private final long maxWaitMicros;
+    private final long timeouts;
+    private final long validationFailures;
+    private final long evictions;
+    private final long leaksDetected;
+
+    public PoolStats(int active, int idle, int waiting, long borrows, long handshakes, long handshakesSaved,
+                     long avgWaitMicros, long maxWaitMicros, long timeouts, long validationFailures,
+                     long evictions, long leaksDetected) {
+        this.active = active;
+        this.idle = idle;
+        this.waiting = waiting;
+        this.borrows = borrows;
+        this.handshakes = handshakes;
+        this.handshakesSaved = handshakesSaved;
+        this.avgWaitMicros = avgWaitMicros;
+        this.maxWaitMicros = maxWaitMicros;
+        this.timeouts = timeouts;
+        this.validationFailures = validationFailures;
+        this.evictions = evictions;
+        this.leaksDetected = leaksDetected;
+    }
+
+    // getters
+    public int getActive() { return active; }
+    public int getIdle() { return idle; }
+    public int getWaiting() { return waiting; }
+    public long getBorrows() { return borrows; }
+    public long getHandshakes() { return handshakes; }
+    public long getHandshakesSaved() { return handshakesSaved; }
+    public long getAvgWaitMicros() { return avgWaitMicros; }
+    public long getMaxWaitMicros() { return maxWaitMicros; }
+    public long getTimeouts() { return timeouts; }
+    public long getValidationFailures() { return validationFailures; }
+    public long getEvictions() { return evictions; }
+    public long getLeaksDetected() { return leaksDetected; }
+
+    @Override
+    public String toString() {
+        return "active=" + active + ", idle=" + idle + ", waiting=" + waiting
+                + ", borrows=" + borrows + ", handshakes=" + handshakes
+                + ", handshakesSaved=" + handshakesSaved + ", avgWaitMicros=" + avgWaitMicros
+                + ", maxWaitMicros=" + maxWaitMicros + ", timeouts=" + timeouts
+                + ", validationFailures=" + validationFailures + ", evictions=" + evictions
+                + ", leaksDetected=" + leaksDetected;
+    }
+}
@@ -0,0 +1,142 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.SQLTransientException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read replicas, one {@link ConnectionPool} each. Reads are spread round-robin over the replicas that
+ * passed their last health check; a replica that fails a check, or a borrow for a reason other than a
+ * busy pool, is skipped until a later check succeeds.
+ */
+public class ReplicaSet implements AutoCloseable {
+
+    static final class Replica {
+        final String url;
+        final ConnectionPool pool;
+        volatile boolean healthy = true;
+        final AtomicLong reads = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+
+        Replica(ConnectionPool.Config config) {
+            this.url = config.url;
+            this.pool = new ConnectionPool(config);
+        }
+    }
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final String healthQuery;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService checker;
+
+    public ReplicaSet(List<ConnectionPool.Config> configs, long healthCheckIntervalMs, String healthQuery) {
+        for (ConnectionPool.Config config : configs) {
+            replicas.add(new Replica(config));
+        }
+        this.healthQuery = healthQuery;
+        this.checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "replica-health-check");
+            t.setDaemon(true);
+            return t;
+        });
+        checkHealth();
+        checker.scheduleWithFixedDelay(this::checkHealth, healthCheckIntervalMs, healthCheckIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    // A connection to the next healthy replica, or null when none is available
+    public Connection getConnection() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (!replica.healthy) {
+                continue;
+            }
+            try {
+                Connection conn = replica.pool.getConnection();
+                replica.reads.incrementAndGet();
+                return conn;
+            } catch (SQLTransientException e) {
+                // a borrow timeout means the pool is busy, not that the replica is down
+                replica.failures.incrementAndGet();
+            } catch (SQLException e) {
+                replica.failures.incrementAndGet();
+                replica.healthy = false;
+            }
+        }
+        return null;
+    }
+
+    private void checkHealth() {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try (Connection conn = replica.pool.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                stmt.setQueryTimeout(2);
+                stmt.executeQuery(healthQuery).close();
+                healthy = true;
+            } catch (SQLTransientConnectionException e) {
+                // every connection is busy serving reads; try again at the next check
+                continue;
+            } catch (Exception e) {
+                healthy = false;
+            }
+            if (replica.healthy && !healthy) {
+                replica.failures.incrementAndGet();
+                System.err.println("Replica " + replica.url + " failed its health check, routing reads elsewhere");
+            } else if (!replica.healthy && healthy) {
+                System.err.println("Replica " + replica.url + " is healthy again");
+            }
+            replica.healthy = healthy;
+        }
+    }
+
+    public int size() {
+        return replicas.size();
+    }
+
+    public int getHealthyCount() {
+        int count = 0;
+        for (Replica replica : replicas) {
+            if (replica.healthy) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Connections handed out per replica, in configuration order
+    public long[] getReads() {
+        long[] reads = new long[replicas.size()];
+        for (int i = 0; i < reads.length; i++) {
+            reads[i] = replicas.get(i).reads.get();
+        }
+        return reads;
+    }
+
+    public long getFailures() {
+        long failures = 0;
+        for (Replica replica : replicas) {
+            failures += replica.failures.get();
+        }
+        return failures;
+    }
+
+    @Override
+    public void close() {
+        checker.shutdownNow();
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+    }
+}
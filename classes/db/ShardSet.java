@@ -0,0 +1,108 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Databases that each hold the employees of some departments, one {@link ConnectionPool} each. A
+ * department always maps to the same shard, so everything about one department is answered by one
+ * database; queries over all employees run on every shard in parallel and the caller merges the results.
+ */
+public class ShardSet implements AutoCloseable {
+
+    private final List<ConnectionPool> pools = new ArrayList<>();
+    private final ExecutorService scatter;
+    private final AtomicLong scatters = new AtomicLong();
+
+    public ShardSet(List<ConnectionPool.Config> configs, int scatterThreads) {
+        if (configs.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        for (ConnectionPool.Config config : configs) {
+            pools.add(new ConnectionPool(config));
+        }
+        this.scatter = Executors.newFixedThreadPool(Math.max(1, scatterThreads), r -> {
+            Thread t = new Thread(r, "shard-scatter");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public int size() {
+        return pools.size();
+    }
+
+    // Department names are compared case-insensitively by MySQL, so "IT" and "it " must land on the same shard
+    public int shardFor(String department) {
+        if (department == null) {
+            return 0;
+        }
+        return Math.floorMod(department.trim().toLowerCase(Locale.ROOT).hashCode(), pools.size());
+    }
+
+    public ConnectionPool getPool(int shard) {
+        return pools.get(shard);
+    }
+
+    public Connection getConnection(int shard) throws SQLException {
+        return pools.get(shard).getConnection();
+    }
+
+    // Runs the task once per shard, the other shards on the scatter threads while the caller takes shard 0,
+    // and returns the results in shard order. The task is expected to handle its own SQL errors.
+    public <T> List<T> onEveryShard(IntFunction<T> task) {
+        scatters.incrementAndGet();
+        List<Future<T>> futures = new ArrayList<>(pools.size());
+        for (int shard = 1; shard < pools.size(); shard++) {
+            int s = shard;
+            futures.add(scatter.submit(() -> task.apply(s)));
+        }
+        List<T> results = new ArrayList<>(pools.size());
+        results.add(task.apply(0));
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a shard", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return Collections.unmodifiableList(results);
+    }
+
+    public long getScatters() {
+        return scatters.get();
+    }
+
+    // Connections handed out per shard, in configuration order
+    public long[] getBorrows() {
+        long[] borrows = new long[pools.size()];
+        for (int i = 0; i < borrows.length; i++) {
+            borrows[i] = pools.get(i).getStats().getBorrows();
+        }
+        return borrows;
+    }
+
+    @Override
+    public void close() {
+        scatter.shutdownNow();
+        for (ConnectionPool pool : pools) {
+            pool.close();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Process-wide registry for servlet operation and DAO query metrics, rendered in the Prometheus
+// text exposition format by MetricsServlet
+public final class Metrics {
+    private static final Metrics INSTANCE = new Metrics();
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    public static final class Operation {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        // bytes written for requests, rows fetched for queries
+        final LongAdder volume = new LongAdder();
+
+        public long getCount() { return latency.getCount(); }
+        public long getErrors() { return errors.sum(); }
+        public long getVolume() { return volume.sum(); }
+        public LatencyHistogram getLatency() { return latency; }
+    }
+
+    private static final class Gauge {
+        final String help;
+        final LongSupplier value;
+
+        Gauge(String help, LongSupplier value) {
+            this.help = help;
+            this.value = value;
+        }
+    }
+
+    private final ConcurrentMap<String, Operation> requests = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Operation> queries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+    // query time recorded by each thread so far
+    private final ThreadLocal<long[]> threadQueryNanos = ThreadLocal.withInitial(() -> new long[1]);
+
+    private Metrics() {}
+
+    public void recordRequest(String operation, long nanos, long bytesWritten, boolean error) {
+        Operation op = requests.computeIfAbsent(operation, k -> new Operation());
+        op.latency.record(nanos);
+        op.volume.add(bytesWritten);
+        if (error) {
+            op.errors.increment();
+        }
+    }
+
+    public void recordQuery(String query, long startNanos, long rows, boolean error) {
+        Operation op = queries.computeIfAbsent(query, k -> new Operation());
+        long nanos = System.nanoTime() - startNanos;
+        op.latency.record(nanos);
+        threadQueryNanos.get()[0] += nanos;
+        op.volume.add(rows);
+        if (error) {
+            op.errors.increment();
+        }
+    }
+
+    // Query time, including the wait for a connection, recorded on the calling thread so far; the difference
+    // between two calls is how long the thread spent in the DAO's queries in between
+    public long getThreadQueryNanos() {
+        return threadQueryNanos.get()[0];
+    }
+
+    public Operation getRequest(String operation) {
+        return requests.get(operation);
+    }
+
+    public Operation getQuery(String query) {
+        return queries.get(query);
+    }
+
+    // Registers (or replaces) a gauge sampled on every scrape; name must be a valid Prometheus metric name
+    public void registerGauge(String name, String help, LongSupplier value) {
+        gauges.put(name, new Gauge(help, value));
+    }
+
+    public void writePrometheus(Writer out) throws IOException {
+        writeSummary(out, "ems_http_request_duration_seconds", "Servlet request latency by operation",
+                "operation", requests);
+        writeCounter(out, "ems_http_response_bytes_total", "Response bytes written by operation",
+                "operation", requests, false);
+        writeCounter(out, "ems_http_request_errors_total", "Requests answered with a 4xx/5xx status by operation",
+                "operation", requests, true);
+        writeSummary(out, "ems_db_query_duration_seconds", "DAO query latency by query", "query", queries);
+        writeCounter(out, "ems_db_rows_total", "Rows fetched or written by query", "query", queries, false);
+        writeCounter(out, "ems_db_query_errors_total", "Failed DAO calls by query", "query", queries, true);
+
+        for (Map.Entry<String, Gauge> e : new TreeMap<>(gauges).entrySet()) {
+            out.write("# HELP " + e.getKey() + " " + e.getValue().help + "\n");
+            out.write("# TYPE " + e.getKey() + " gauge\n");
+            long value;
+            try {
+                value = e.getValue().value.getAsLong();
+            } catch (RuntimeException ex) {
+                continue;
+            }
+            out.write(e.getKey() + " " + value + "\n");
+        }
+    }
+
+    private static void writeSummary(Writer out, String name, String help, String label,
+                                     Map<String, Operation> ops) throws IOException {
+        out.write("# HELP " + name + " " + help + "\n");
+        out.write("# TYPE " + name + " summary\n");
+        for (Map.Entry<String, Operation> e : new TreeMap<>(ops).entrySet()) {
+            LatencyHistogram h = e.getValue().latency;
+            String labels = label + "=\"" + escape(e.getKey()) + "\"";
+            for (double q : QUANTILES) {
+                out.write(name + "{" + labels + ",quantile=\"" + q + "\"} "
+                        + seconds(h.getValueAtQuantile(q)) + "\n");
+            }
+            out.write(name + "_sum{" + labels + "} " + seconds(h.getSum()) + "\n");
+            out.write(name + "_count{" + labels + "} " + h.getCount() + "\n");
+        }
+    }
+
+    private static void writeCounter(Writer out, String name, String help, String label,
+                                     Map<String, Operation> ops, boolean errors) throws IOException {
+        out.write("# HELP " + name + " " + help + "\n");
+        out.write("# TYPE " + name + " counter\n");
+        for (Map.Entry<String, Operation> e : new TreeMap<>(ops).entrySet()) {
+            long value = errors ? e.getValue().errors.sum() : e.getValue().volume.sum();
+            out.write(name + "{" + label + "=\"" + escape(e.getKey()) + "\"} " + value + "\n");
+        }
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,34 @@
+package model;
+
+public class DepartmentSummary {
+    private String department;
+    private long count;
+    private double totalSalary;
+    private double minSalary;
+    private double maxSalary;
+    private double avgSalary;
+
+    public DepartmentSummary() {}
+
+    public DepartmentSummary(String department, long count, double totalSalary, double minSalary, double maxSalary) {
+        this.department = department;
+        this.count = count;
+        this.totalSalary = totalSalary;
+        this.minSalary = minSalary;
+        this.maxSalary = maxSalary;
+        this.avgSalary = count == 0 ? 0.0 : totalSalary / count;
+    }
+
+    // getters
+    public String getDepartment() { return department; }
+    public long getCount() { return count; }
+    public double getTotalSalary() { return totalSalary; }
+    public double getMinSalary() { return minSalary; }
+    public double getMaxSalary() { return maxSalary; }
+    public double getAvgSalary() { return avgSalary; }
+
+    @Override
+    public String toString() {
+        return department + " - " + count + " employees - avg " + avgSalary + " (min " + minSalary + ", max " + maxSalary + ")";
+    }
+}
@@ -0,0 +1,68 @@
+package model;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+// Hand-written JSON codec for Employee. It produces the same output as Gson's reflective adapter (fields in
+// declaration order, nulls left out) without reflection, and is used by writing straight to a JsonWriter
+// instead of building a JsonElement tree first. Register it with
+// new GsonBuilder().registerTypeAdapter(Employee.class, new EmployeeTypeAdapter()).
+public class EmployeeTypeAdapter extends TypeAdapter<Employee> {
+
+    @Override
+    public void write(JsonWriter out, Employee emp) throws IOException {
+        if (emp == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(emp.getId());
+        if (emp.getName() != null) {
+            out.name("name").value(emp.getName());
+        }
+        if (emp.getDepartment() != null) {
+            out.name("department").value(emp.getDepartment());
+        }
+        out.name("salary").value(emp.getSalary());
+        out.endObject();
+    }
+
+    @Override
+    public Employee read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Employee emp = new Employee();
+        in.beginObject();
+        while (in.hasNext()) {
+            String field = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (field) {
+                case "id":
+                    emp.setId(in.nextInt());
+                    break;
+                case "name":
+                    emp.setName(in.nextString());
+                    break;
+                case "department":
+                    emp.setDepartment(in.nextString());
+                    break;
+                case "salary":
+                    emp.setSalary(in.nextDouble());
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return emp;
+    }
+}
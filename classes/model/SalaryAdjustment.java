@@ -0,0 +1,56 @@
+package model;
+
+// A change to many salaries at once: either percent (10 is a 10% raise, -5 a 5% cut) or a fixed amount, for the
+// employees of one department and/or salary band (null means no limit). A raise stops at cap and a cut at floor,
+// but neither moves a salary that is already past that limit.
+public class SalaryAdjustment {
+    private String department;
+    private Double minSalary;
+    private Double maxSalary;
+    private Double percent;
+    private Double amount;
+    private Double floor;
+    private Double cap;
+
+    public SalaryAdjustment() {}
+
+    public static SalaryAdjustment byPercent(String department, double percent) {
+        SalaryAdjustment adjustment = new SalaryAdjustment();
+        adjustment.department = department;
+        adjustment.percent = percent;
+        return adjustment;
+    }
+
+    public static SalaryAdjustment byAmount(String department, double amount) {
+        SalaryAdjustment adjustment = new SalaryAdjustment();
+        adjustment.department = department;
+        adjustment.amount = amount;
+        return adjustment;
+    }
+
+    // getters
+    public String getDepartment() { return department; }
+    public Double getMinSalary() { return minSalary; }
+    public Double getMaxSalary() { return maxSalary; }
+    public Double getPercent() { return percent; }
+    public Double getAmount() { return amount; }
+    public Double getFloor() { return floor; }
+    public Double getCap() { return cap; }
+
+    // setters
+    public void setDepartment(String department) { this.department = department; }
+    public void setMinSalary(Double minSalary) { this.minSalary = minSalary; }
+    public void setMaxSalary(Double maxSalary) { this.maxSalary = maxSalary; }
+    public void setPercent(Double percent) { this.percent = percent; }
+    public void setAmount(Double amount) { this.amount = amount; }
+    public void setFloor(Double floor) { this.floor = floor; }
+    public void setCap(Double cap) { this.cap = cap; }
+
+    @Override
+    public String toString() {
+        return (percent != null ? percent + "%" : String.valueOf(amount)) + " for "
+                + (department != null ? department : "all departments")
+                + (minSalary != null || maxSalary != null ? " earning " + minSalary + ".." + maxSalary : "")
+                + (floor != null ? ", floor " + floor : "") + (cap != null ? ", cap " + cap : "");
+    }
+}
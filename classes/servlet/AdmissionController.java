@@ -0,0 +1,218 @@
+package servlet;
+
+import metrics.Metrics;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Caps how many requests run at once, with separate limits for reads and writes so a burst of one cannot
+// starve the other. A request over the limit waits in a short bounded queue, served in arrival order; when
+// the queue is full, or the wait runs out, it is turned away at once instead of piling up on the connection
+// pool.
+//
+// Each limit adapts to the database latency of the requests it lets through (AIMD, in the spirit of TCP Vegas):
+// the time each one spent in DAO queries on its own thread, waiting for a connection included, as Metrics
+// records it. Requests that never reached the database, such as cached reads, are left out. Every window of
+// completions is averaged and compared with a slow moving baseline: a window more than `tolerance` times the
+// baseline cuts the limit by `backoff`, while a window within it that kept the limit busy raises it by one. The
+// baseline follows the windows only up to `tolerance` times itself, so a sustained slowdown moves it gradually
+// rather than being mistaken for the new normal at once.
+class AdmissionController {
+
+    enum Kind { READ, WRITE }
+
+    private final Limit reads;
+    private final Limit writes;
+    private final long queueTimeoutMs;
+
+    AdmissionController(Limit reads, Limit writes, long queueTimeoutMs) {
+        this.reads = reads;
+        this.writes = writes;
+        this.queueTimeoutMs = queueTimeoutMs;
+    }
+
+    // Reads start at the pool size and may grow past it, since cached reads never borrow a connection;
+    // writes always need one and stay within the pool
+    static AdmissionController fromSystemProperties(int poolSize) {
+        int queue = Integer.getInteger("admission.queue", 50);
+        int minLimit = Integer.getInteger("admission.minLimit", 1);
+        double tolerance = Double.parseDouble(System.getProperty("admission.tolerance", "2.0"));
+        double backoff = Double.parseDouble(System.getProperty("admission.backoff", "0.8"));
+        Limit reads = new Limit(Integer.getInteger("admission.read.initialLimit", poolSize), minLimit,
+                Integer.getInteger("admission.read.maxLimit", poolSize * 4), queue, tolerance, backoff);
+        Limit writes = new Limit(Integer.getInteger("admission.write.initialLimit", poolSize), minLimit,
+                Integer.getInteger("admission.write.maxLimit", poolSize), queue, tolerance, backoff);
+        return new AdmissionController(reads, writes, Long.getLong("admission.queueTimeoutMs", 100L));
+    }
+
+    // null when the request has to be turned away
+    Permit acquire(Kind kind) throws InterruptedException {
+        Limit limit = kind == Kind.READ ? reads : writes;
+        return limit.acquire(queueTimeoutMs) ? new Permit(limit) : null;
+    }
+
+    // Seconds a rejected client should wait: about the time the queue ahead of it takes to drain
+    long retryAfterSeconds(Kind kind) {
+        Limit limit = kind == Kind.READ ? reads : writes;
+        double drainMs = limit.getAverageLatencyMs() * (limit.getQueued() + 1) / Math.max(1, limit.getLimit());
+        return Math.max(1, (long) Math.ceil(drainMs / 1000));
+    }
+
+    Limit getReads() {
+        return reads;
+    }
+
+    Limit getWrites() {
+        return writes;
+    }
+
+    // Released once, when the request has finished, with how long its queries took
+    static final class Permit {
+        private final Limit limit;
+        // the running thread's query time when the request started on it
+        private long queryStart = Metrics.get().getThreadQueryNanos();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(Limit limit) {
+            this.limit = limit;
+        }
+
+        // Called by a worker that runs the request on another thread than the one that acquired the permit,
+        // before it starts; release() must then be called on the worker too
+        void begin() {
+            queryStart = Metrics.get().getThreadQueryNanos();
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                long queryNanos = Metrics.get().getThreadQueryNanos() - queryStart;
+                limit.release(queryNanos, queryNanos > 0);
+            }
+        }
+
+        // For a request that never ran, so its latency says nothing about the database
+        void cancel() {
+            if (released.compareAndSet(false, true)) {
+                limit.release(0, false);
+            }
+        }
+    }
+
+    static final class Limit {
+        private final int minLimit;
+        private final int maxLimit;
+        private final int queueCapacity;
+        private final double tolerance;
+        private final double backoff;
+
+        private double limit;
+        private int inFlight;
+        // one token per waiting request, oldest first; only the head may take a free slot
+        private final ArrayDeque<Object> waiters = new ArrayDeque<>();
+
+        // current window
+        private int windowSamples;
+        private long windowNanos;
+        private int windowMaxInFlight;
+        // average latency of past windows, in nanoseconds; 0 until the first window closes
+        private double baseline;
+        private double lastWindow;
+
+        private final AtomicLong admitted = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong timedOut = new AtomicLong();
+        private final AtomicLong decreases = new AtomicLong();
+
+        Limit(int initialLimit, int minLimit, int maxLimit, int queueCapacity, double tolerance, double backoff) {
+            this.minLimit = Math.max(1, minLimit);
+            this.maxLimit = Math.max(this.minLimit, maxLimit);
+            this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+            this.queueCapacity = Math.max(0, queueCapacity);
+            this.tolerance = tolerance;
+            this.backoff = backoff;
+        }
+
+        // A new arrival goes straight in only when nobody is waiting, so a freed slot goes to the oldest waiter
+        synchronized boolean acquire(long timeoutMs) throws InterruptedException {
+            if (waiters.isEmpty() && inFlight < (int) limit) {
+                admit();
+                return true;
+            }
+            if (waiters.size() >= queueCapacity) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            Object waiter = new Object();
+            waiters.addLast(waiter);
+            try {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+                while (waiters.peekFirst() != waiter || inFlight >= (int) limit) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        timedOut.incrementAndGet();
+                        rejected.incrementAndGet();
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+                admit();
+                return true;
+            } finally {
+                waiters.remove(waiter);
+                // the next waiter is now the head, and there may be a slot left for it
+                notifyAll();
+            }
+        }
+
+        private void admit() {
+            inFlight++;
+            windowMaxInFlight = Math.max(windowMaxInFlight, inFlight);
+            admitted.incrementAndGet();
+        }
+
+        synchronized void release(long latencyNanos, boolean sample) {
+            inFlight--;
+            if (!sample) {
+                notifyAll();
+                return;
+            }
+            windowSamples++;
+            windowNanos += latencyNanos;
+            // a window is at least ten completions, or one full round of the limit
+            if (windowSamples >= Math.max(10, (int) limit)) {
+                adjust(windowNanos / (double) windowSamples);
+                windowSamples = 0;
+                windowNanos = 0;
+                windowMaxInFlight = inFlight;
+            }
+            notifyAll();
+        }
+
+        private void adjust(double average) {
+            lastWindow = average;
+            if (baseline == 0) {
+                baseline = average;
+                return;
+            }
+            if (average > baseline * tolerance) {
+                limit = Math.max(minLimit, limit * backoff);
+                decreases.incrementAndGet();
+            } else if (windowMaxInFlight >= (int) limit) {
+                limit = Math.min(maxLimit, limit + 1);
+            }
+            baseline += 0.05 * (Math.min(average, baseline * tolerance) - baseline);
+        }
+
+        synchronized int getLimit() { return (int) limit; }
+        synchronized int getInFlight() { return inFlight; }
+        synchronized int getQueued() { return waiters.size(); }
+        synchronized double getAverageLatencyMs() { return lastWindow / 1e6; }
+        synchronized long getBaselineMicros() { return (long) (baseline / 1e3); }
+        long getAdmitted() { return admitted.get(); }
+        long getRejected() { return rejected.get(); }
+        long getTimedOut() { return timedOut.get(); }
+        long getDecreases() { return decreases.get(); }
+    }
+}
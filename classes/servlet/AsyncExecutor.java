@@ -0,0 +1,100 @@
+package servlet;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs request work off the container threads. On JDK 21+ each task gets a virtual thread and a
+// semaphore caps how many run at once; on older JDKs a fixed pool of maxConcurrency threads does the
+// same job. Either way at most maxConcurrency + queueCapacity tasks are admitted.
+class AsyncExecutor {
+    private final ExecutorService executor;
+    private final Semaphore running;
+    private final int admissionLimit;
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final boolean virtualThreads;
+
+    AsyncExecutor(int maxConcurrency, int queueCapacity) {
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.admissionLimit = maxConcurrency + queueCapacity;
+        if (virtual != null) {
+            this.executor = virtual;
+            this.running = new Semaphore(maxConcurrency);
+        } else {
+            AtomicInteger count = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+                        Thread t = new Thread(r, "employee-async-" + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            this.running = null;
+        }
+    }
+
+    // Returns false when the request has to be turned away
+    boolean submit(Runnable task) {
+        if (admitted.incrementAndGet() > admissionLimit) {
+            admitted.decrementAndGet();
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    if (running != null) {
+                        running.acquireUninterruptibly();
+                    }
+                    try {
+                        task.run();
+                    } finally {
+                        if (running != null) {
+                            running.release();
+                        }
+                    }
+                } finally {
+                    admitted.decrementAndGet();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            admitted.decrementAndGet();
+            return false;
+        }
+    }
+
+    boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    int getAdmitted() {
+        return admitted.get();
+    }
+
+    // Stops taking tasks and waits up to timeoutMs for the admitted ones to finish, then interrupts the rest
+    void shutdown(long timeoutMs) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package servlet;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+// The response as an async worker sees it. Once detach() has returned, whatever the worker still writes or
+// sets is dropped, so a timeout can answer on the real response without the two interleaving. A write in
+// progress finishes before detach() returns.
+class DetachableResponse extends HttpServletResponseWrapper {
+    private final Object lock = new Object();
+    private boolean detached;
+    private PrintWriter writer;
+    private ServletOutputStream stream;
+
+    DetachableResponse(HttpServletResponse response) {
+        super(response);
+    }
+
+    // false if it was already detached
+    boolean detach() {
+        synchronized (lock) {
+            if (detached) {
+                return false;
+            }
+            detached = true;
+            return true;
+        }
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        synchronized (lock) {
+            if (writer == null) {
+                writer = new PrintWriter(new GuardedWriter(detached ? Writer.nullWriter() : super.getWriter()));
+            }
+            return writer;
+        }
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        synchronized (lock) {
+            if (stream == null) {
+                stream = new GuardedStream(detached ? null : super.getOutputStream());
+            }
+            return stream;
+        }
+    }
+
+    @Override
+    public void setStatus(int sc) {
+        synchronized (lock) {
+            if (!detached) {
+                super.setStatus(sc);
+            }
+        }
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+        synchronized (lock) {
+            if (!detached) {
+                super.sendError(sc);
+            }
+        }
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        synchronized (lock) {
+            if (!detached) {
+                super.sendError(sc, msg);
+            }
+        }
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        synchronized (lock) {
+            if (!detached) {
+                super.setHeader(name, value);
+            }
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        synchronized (lock) {
+            if (!detached) {
+                super.addHeader(name, value);
+            }
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        synchronized (lock) {
+            if (!detached) {
+                super.setIntHeader(name, value);
+            }
+        }
+    }
+
+    @Override
+    public void setDateHeader(String name, long date) {
+        synchronized (lock) {
+            if (!detached) {
+                super.setDateHeader(name, date);
+            }
+        }
+    }
+
+    @Override
+    public void addCookie(Cookie cookie) {
+        synchronized (lock) {
+            if (!detached) {
+                super.addCookie(cookie);
+            }
+        }
+    }
+
+    @Override
+    public void setContentType(String type) {
+        synchronized (lock) {
+            if (!detached) {
+                super.setContentType(type);
+            }
+        }
+    }
+
+    @Override
+    public void setCharacterEncoding(String charset) {
+        synchronized (lock) {
+            if (!detached) {
+                super.setCharacterEncoding(charset);
+            }
+        }
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        synchronized (lock) {
+            if (!detached) {
+                super.setContentLength(len);
+            }
+        }
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        synchronized (lock) {
+            if (!detached) {
+                super.setContentLengthLong(len);
+            }
+        }
+    }
+
+    @Override
+    public void resetBuffer() {
+        synchronized (lock) {
+            if (!detached) {
+                super.resetBuffer();
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        synchronized (lock) {
+            if (!detached) {
+                super.reset();
+            }
+        }
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        synchronized (lock) {
+            if (!detached) {
+                if (writer != null) {
+                    writer.flush();
+                }
+                super.flushBuffer();
+            }
+        }
+    }
+
+    private final class GuardedWriter extends Writer {
+        private final Writer delegate;
+
+        GuardedWriter(Writer delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(char[] buf, int off, int len) throws IOException {
+            synchronized (lock) {
+                if (!detached) {
+                    delegate.write(buf, off, len);
+                }
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            synchronized (lock) {
+                if (!detached) {
+                    delegate.write(str, off, len);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (lock) {
+                if (!detached) {
+                    delegate.flush();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (lock) {
+                if (!detached) {
+                    delegate.close();
+                }
+            }
+        }
+    }
+
+    private final class GuardedStream extends ServletOutputStream {
+        // null when the stream was first asked for after detaching
+        private final ServletOutputStream delegate;
+
+        GuardedStream(ServletOutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            synchronized (lock) {
+                if (!detached) {
+                    delegate.write(b);
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (lock) {
+                if (!detached) {
+                    delegate.write(b, off, len);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (lock) {
+                if (!detached) {
+                    delegate.flush();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (lock) {
+                if (!detached) {
+                    delegate.close();
+                }
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate == null || delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            if (delegate != null) {
+                delegate.setWriteListener(listener);
+            }
+        }
+    }
+}
@@ -1,28 +1,386 @@
 package servlet;
 
+import dao.BatchResult;
+import dao.DataVersion;
+import db.DBConnection;
 import dao.EmployeeDAO;
+import dao.EmployeeLoader;
+import dao.SalaryAdjustmentResult;
+import dao.SalaryAnalytics;
+import dao.SalarySnapshot;
+import dao.SingleFlight;
+import dao.SnapshotStore;
+import dao.WriteBehind;
+import metrics.Metrics;
 import model.Employee;
+import model.EmployeeTypeAdapter;
+import model.SalaryAdjustment;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
 import jakarta.servlet.*;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.*;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-@WebServlet("/api/employees")
+@WebServlet(value = "/api/employees", asyncSupported = true)
 public class EmployeeServlet extends HttpServlet {
     private EmployeeDAO employeeDAO;
+    private SalaryAnalytics salaryAnalytics;
+    private AsyncExecutor asyncExecutor;
+    private AdmissionController admission;
+    private ResponseCache responseCache;
+    private long asyncTimeoutMs;
     private Gson gson;
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final Set<String> ANALYTICS_ACTIONS = new HashSet<>(Arrays.asList(
+            "percentiles", "histogram", "salaryStats", "salaryBands"));
+    // Employees ordered by salary, current as of the request unlike the analytics snapshot
+    private static final Set<String> SALARY_ORDER_ACTIONS = new HashSet<>(Arrays.asList(
+            "topEarners", "lowestEarners", "salaryRange"));
+    private static final Type EMPLOYEE_LIST_TYPE = new TypeToken<List<Employee>>() {}.getType();
+    private static final EmployeeTypeAdapter EMPLOYEE_ADAPTER = new EmployeeTypeAdapter();
+
     @Override
     public void init() {
+        EmployeeDAO.startShared();
         employeeDAO = new EmployeeDAO();
-        gson = new Gson();
+        salaryAnalytics = employeeDAO.getSalaryAnalytics();
+        gson = new GsonBuilder().registerTypeAdapter(Employee.class, EMPLOYEE_ADAPTER).create();
+        if (Boolean.parseBoolean(System.getProperty("response.cache.enabled", "true"))) {
+            responseCache = ResponseCache.fromSystemProperties();
+        }
+        registerGauges();
+        
+        // Async mode hands DAO work to AsyncExecutor so container threads are not parked on JDBC calls.
+        // Concurrency defaults to the connection pool size, since more would only queue inside the pool.
+        if (Boolean.getBoolean("employees.async")) {
+            int maxConcurrency = Integer.getInteger("employees.async.maxConcurrency", DBConnection.getPool().getMaxSize());
+            asyncExecutor = new AsyncExecutor(maxConcurrency, Integer.getInteger("employees.async.queue", 1000));
+            asyncTimeoutMs = Long.getLong("employees.async.timeoutMs", 30000L);
+            Metrics.get().registerGauge("ems_async_admitted", "Requests admitted to the async executor",
+                    asyncExecutor::getAdmitted);
+        }
+        // Admission control sheds load with 503s before requests queue up on the connection pool
+        if (Boolean.getBoolean("admission.enabled")) {
+            admission = AdmissionController.fromSystemProperties(DBConnection.getPool().getMaxSize());
+            registerAdmissionGauges("read", admission.getReads());
+            registerAdmissionGauges("write", admission.getWrites());
+        }
+    }
+
+    private static void registerAdmissionGauges(String kind, AdmissionController.Limit limit) {
+        Metrics metrics = Metrics.get();
+        metrics.registerGauge("ems_admission_" + kind + "_limit", "Adaptive concurrency limit for " + kind + "s",
+                limit::getLimit);
+        metrics.registerGauge("ems_admission_" + kind + "_in_flight", "Admitted " + kind + "s still running",
+                limit::getInFlight);
+        metrics.registerGauge("ems_admission_" + kind + "_queued", kind + "s waiting for admission",
+                limit::getQueued);
+        metrics.registerGauge("ems_admission_" + kind + "_admitted", kind + "s admitted", limit::getAdmitted);
+        metrics.registerGauge("ems_admission_" + kind + "_rejected", kind + "s turned away with 503",
+                limit::getRejected);
+        metrics.registerGauge("ems_admission_" + kind + "_decreases", "Times the " + kind + " limit was cut",
+                limit::getDecreases);
+        metrics.registerGauge("ems_admission_" + kind + "_baseline_micros",
+                "Latency baseline the " + kind + " limit is measured against", limit::getBaselineMicros);
+    }
+
+    private void registerGauges() {
+        Metrics metrics = Metrics.get();
+        if (employeeDAO.getCache() != null) {
+            metrics.registerGauge("ems_cache_hits", "Employee cache hits", employeeDAO.getCache()::getHits);
+            metrics.registerGauge("ems_cache_negative_hits", "Employee cache hits on ids known not to exist",
+                    employeeDAO.getCache()::getNegativeHits);
+            metrics.registerGauge("ems_cache_misses", "Employee cache misses", employeeDAO.getCache()::getMisses);
+            metrics.registerGauge("ems_cache_evictions", "Employee cache LRU evictions", employeeDAO.getCache()::getEvictions);
+            metrics.registerGauge("ems_cache_size", "Employees currently cached", employeeDAO.getCache()::size);
+        }
+        if (responseCache != null) {
+            metrics.registerGauge("ems_response_cache_hits", "GETs answered from pre-serialized bodies",
+                    responseCache::getHits);
+            metrics.registerGauge("ems_response_cache_misses", "Cacheable GETs that had to be rendered",
+                    responseCache::getMisses);
+            metrics.registerGauge("ems_response_cache_size", "Cached response bodies", responseCache::size);
+        }
+        if (employeeDAO.getSearchIndex() != null) {
+            metrics.registerGauge("ems_search_index_size", "Employees in the search index",
+                    employeeDAO.getSearchIndex()::size);
+            metrics.registerGauge("ems_search_index_reloads", "Search index rebuilds from the database",
+                    employeeDAO.getSearchIndex()::getReloads);
+        }
+        if (employeeDAO.getSalaryIndex() != null) {
+            metrics.registerGauge("ems_salary_index_size", "Employees in the salary index",
+                    employeeDAO.getSalaryIndex()::size);
+            metrics.registerGauge("ems_salary_index_reloads", "Salary index rebuilds from the database",
+                    employeeDAO.getSalaryIndex()::getReloads);
+        }
+        if (employeeDAO.getStats() != null) {
+            metrics.registerGauge("ems_department_stats_reloads", "Department statistics reloads",
+                    employeeDAO.getStats()::getReloads);
+            metrics.registerGauge("ems_department_stats_drift_repairs", "Reconciles that found drifted statistics",
+                    employeeDAO.getStats()::getDriftRepairs);
+        }
+        SingleFlight singleFlight = employeeDAO.getSingleFlight();
+        if (singleFlight != null) {
+            metrics.registerGauge("ems_singleflight_executions", "Coalescable reads that ran their own query",
+                    singleFlight::getExecutions);
+            metrics.registerGauge("ems_singleflight_coalesced", "Reads answered by an identical read already in flight",
+                    singleFlight::getCoalesced);
+            metrics.registerGauge("ems_singleflight_bypassed", "Reads run uncoalesced because the key limit was reached",
+                    singleFlight::getBypassed);
+            metrics.registerGauge("ems_singleflight_in_flight", "Distinct coalescable reads running now",
+                    singleFlight::getInFlight);
+        }
+        SnapshotStore snapshots = employeeDAO.getSnapshotStore();
+        if (snapshots != null) {
+            metrics.registerGauge("ems_snapshot_refreshes", "Snapshot file refreshes", snapshots::getRefreshes);
+            metrics.registerGauge("ems_snapshot_full_loads", "Snapshot files written from the whole table",
+                    snapshots::getFullLoads);
+            metrics.registerGauge("ems_snapshot_blocks_reloaded", "Id blocks read again to refresh the snapshot",
+                    snapshots::getBlocksReloaded);
+            metrics.registerGauge("ems_snapshot_external_changes", "Rows found changed outside this JVM",
+                    snapshots::getExternalChanges);
+            metrics.registerGauge("ems_snapshot_failures", "Snapshot refreshes that failed", snapshots::getFailures);
+        }
+        EmployeeLoader loader = employeeDAO.getLoader();
+        if (loader != null) {
+            metrics.registerGauge("ems_loader_requests", "Lookups by id sent to the batching loader",
+                    loader::getRequests);
+            metrics.registerGauge("ems_loader_shared", "Lookups that joined one for the same id already waiting",
+                    loader::getShared);
+            metrics.registerGauge("ems_loader_batches", "Batched queries run by the loader", loader::getBatches);
+            metrics.registerGauge("ems_loader_loaded", "Ids read by the loader's batched queries", loader::getLoaded);
+        }
+        WriteBehind writeBehind = employeeDAO.getWriteBehind();
+        if (writeBehind != null) {
+            metrics.registerGauge("ems_writebehind_submitted", "Updates handed to the write-behind queue",
+                    writeBehind::getSubmitted);
+            metrics.registerGauge("ems_writebehind_merged", "Queued updates merged into an earlier one for the same id",
+                    writeBehind::getMerged);
+            metrics.registerGauge("ems_writebehind_batches", "Write-behind group commits", writeBehind::getBatches);
+            metrics.registerGauge("ems_writebehind_committed", "Rows committed by the write-behind flusher",
+                    writeBehind::getCommitted);
+            metrics.registerGauge("ems_writebehind_blocked", "Updates that waited for room in a full queue",
+                    writeBehind::getBlocked);
+            metrics.registerGauge("ems_writebehind_pending", "Updates queued or being committed now",
+                    writeBehind::getPending);
+        }
+    }
+
+    // Times every request and counts the bytes it writes, labelled with the operation it maps to
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        MeteredResponse metered = new MeteredResponse(response);
+        AdmissionController.Permit permit = null;
+        if (admission != null && !"OPTIONS".equals(request.getMethod())) {
+            AdmissionController.Kind kind = "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod())
+                    ? AdmissionController.Kind.READ : AdmissionController.Kind.WRITE;
+            permit = admit(kind);
+            if (permit == null) {
+                metered.setHeader("Retry-After", String.valueOf(admission.retryAfterSeconds(kind)));
+                writeError(metered, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Server busy, try again later");
+                Metrics.get().recordRequest(metricName(request, metered), System.nanoTime() - start,
+                        metered.getBytesWritten(), true);
+                return;
+            }
+        }
+        if (asyncExecutor != null && request.isAsyncSupported()) {
+            serviceAsync(request, metered, start, permit);
+            return;
+        }
+        boolean failed = true;
+        try {
+            ReadYourWrites.begin(request, metered);
+            super.service(request, metered);
+            failed = metered.getStatus() >= 400;
+        } finally {
+            if (permit != null) {
+                permit.release();
+            }
+            ReadYourWrites.end();
+            Metrics.get().recordRequest(metricName(request, metered), System.nanoTime() - start,
+                    metered.getBytesWritten(), failed);
+        }
+    }
+
+    private AdmissionController.Permit admit(AdmissionController.Kind kind) {
+        try {
+            return admission.acquire(kind);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    // permit, if any, is released when the worker is done, not when a timeout answers for it
+    private void serviceAsync(HttpServletRequest request, MeteredResponse metered, long start,
+                              AdmissionController.Permit permit) throws IOException {
+        AsyncContext async = request.startAsync(request, metered);
+        async.setTimeout(asyncTimeoutMs);
+        // Whichever of worker, timeout and error gets here first finishes the exchange. The worker writes
+        // through its own view of the response, cut off before a timeout or error takes the response over.
+        AtomicBoolean finished = new AtomicBoolean();
+        DetachableResponse workerResponse = new DetachableResponse(metered);
+        
+        async.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                if (finished.compareAndSet(false, true)) {
+                    workerResponse.detach();
+                    writeError(metered, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Request timed out");
+                    finishAsync(async, request, metered, start, true);
+                }
+            }
+            
+            @Override
+            public void onError(AsyncEvent event) {
+                if (finished.compareAndSet(false, true)) {
+                    workerResponse.detach();
+                    finishAsync(async, request, metered, start, true);
+                }
+            }
+            
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+            
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+        
+        boolean accepted = asyncExecutor.submit(() -> {
+            boolean failed = true;
+            if (permit != null) {
+                permit.begin();
+            }
+            try {
+                ReadYourWrites.begin(request, workerResponse);
+                EmployeeServlet.super.service(request, workerResponse);
+                failed = metered.getStatus() >= 400;
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                if (permit != null) {
+                    permit.release();
+                }
+                ReadYourWrites.end();
+                if (finished.compareAndSet(false, true)) {
+                    finishAsync(async, request, metered, start, failed);
+                }
+            }
+        });
+        if (!accepted && permit != null) {
+            permit.cancel();
+        }
+        if (!accepted && finished.compareAndSet(false, true)) {
+            metered.setHeader("Retry-After", "1");
+            writeError(metered, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Server busy, try again later");
+            finishAsync(async, request, metered, start, true);
+        }
+    }
+
+    private void finishAsync(AsyncContext async, HttpServletRequest request, MeteredResponse metered,
+                             long start, boolean failed) {
+        Metrics.get().recordRequest(metricName(request, metered), System.nanoTime() - start,
+                metered.getBytesWritten(), failed);
+        try {
+            async.complete();
+        } catch (IllegalStateException e) {
+            // already completed by the container
+        }
+    }
+
+    private void writeError(HttpServletResponse response, int status, String message) throws IOException {
+        if (response.isCommitted()) {
+            return;
+        }
+        response.resetBuffer();
+        response.setStatus(status);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Access-Control-Allow-Origin", "*");
+        JsonObject error = new JsonObject();
+        error.addProperty("success", false);
+        error.addProperty("message", message);
+        response.getWriter().write(gson.toJson(error));
+    }
+
+    // Revalidated reads are counted apart from the ones that produced a body
+    private static String metricName(HttpServletRequest request, HttpServletResponse response) {
+        String operation = operationName(request);
+        return response.getStatus() == HttpServletResponse.SC_NOT_MODIFIED ? operation + "NotModified" : operation;
+    }
+
+    // Mirrors the dispatch order of the doX methods
+    static String operationName(HttpServletRequest request) {
+        String action = request.getParameter("action");
+        switch (request.getMethod()) {
+            case "GET":
+                if (action != null && ANALYTICS_ACTIONS.contains(action)) {
+                    return action;
+                } else if ("departments".equals(action) || "departmentStats".equals(action)) {
+                    return action;
+                } else if (action != null && SALARY_ORDER_ACTIONS.contains(action)) {
+                    return action;
+                } else if ("search".equals(action) || request.getParameter("q") != null) {
+                    return "search";
+                } else if ("avgSalary".equals(action) && request.getParameter("department") != null) {
+                    return action;
+                } else if (request.getParameter("ids") != null) {
+                    return "byIds";
+                } else if (request.getParameter("id") != null) {
+                    return "byId";
+                } else if (request.getParameter("afterId") != null || request.getParameter("limit") != null) {
+                    return "page";
+                } else if (request.getParameter("department") != null) {
+                    return "byDepartment";
+                }
+                return "list";
+            case "POST":
+                return "bulk".equals(action) ? "bulkInsert" : "insert";
+            case "PUT":
+                return "bulk".equals(action) ? "bulkUpdate" : "update";
+            case "DELETE":
+                return "delete";
+            default:
+                return request.getMethod().toLowerCase();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        // requests still running finish before the DAO they write through, and queued updates are committed
+        // before anything they notify goes away; no request outlives the async timeout, so that bounds the wait
+        if (asyncExecutor != null) {
+            asyncExecutor.shutdown(asyncTimeoutMs);
+        }
+        employeeDAO.shutdown();
+        EmployeeDAO.stopShared();
     }
 
     @Override
@@ -32,25 +390,78 @@ public class EmployeeServlet extends HttpServlet {
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
         response.setHeader("Access-Control-Allow-Origin", "*");
-        PrintWriter out = response.getWriter();
+        
+        String action = request.getParameter("action");
+        String department = request.getParameter("department");
+        String id = request.getParameter("id");
+        String ids = request.getParameter("ids");
+        String afterId = request.getParameter("afterId");
+        String limit = request.getParameter("limit");
+        
+        // A lookup by id shows queued write-behind updates and the other reads commit them first, so while any
+        // are queued the version does not describe the answer; it is then neither tagged nor cached
+        boolean pending = employeeDAO.hasPendingWrites();
+        // Analytics answers come from a snapshot that trails the table, so they are not tagged with its version
+        long version = employeeDAO.getDataVersion().get();
+        boolean analytics = action != null && ANALYTICS_ACTIONS.contains(action);
+        boolean search = "search".equals(action) || request.getParameter("q") != null;
+        // Just after a write a replica may not have it yet; such an answer must not be cached or tagged
+        // with the new version, or it would outlive the lag
+        boolean stale = DBConnection.mayReadStale();
+        String cacheKey = responseCache != null && !search && !stale && !pending && ids == null
+                ? cacheKey(action, department, id, afterId, limit) : null;
+        if (cacheKey != null) {
+            response.setHeader("Vary", "Accept-Encoding");
+        }
+        if (stale || pending) {
+            response.setHeader("Cache-Control", "no-store");
+        } else if (!analytics && notModified(request, response, version)) {
+            return;
+        }
         
         try {
-            String action = request.getParameter("action");
-            String department = request.getParameter("department");
-            String id = request.getParameter("id");
+            if (cacheKey != null) {
+                ResponseCache.CachedBody cached = responseCache.get(cacheKey, version);
+                if (cached != null) {
+                    writeCached(request, response, cached);
+                    return;
+                }
+            }
             
             JsonObject result = new JsonObject();
+            // employee lists are encoded straight to text; everything else goes through result
+            String body = null;
             
             if ("departments".equals(action)) {
                 List<String> departments = employeeDAO.getAllDepartments();
                 result.addProperty("success", true);
                 result.add("data", gson.toJsonTree(departments));
                 
+            } else if ("departmentStats".equals(action)) {
+                result.addProperty("success", true);
+                result.add("data", gson.toJsonTree(employeeDAO.getDepartmentSummaries()));
+                
+            } else if (analytics) {
+                result = analyticsResult(action, request, department);
+                
+            } else if (action != null && SALARY_ORDER_ACTIONS.contains(action)) {
+                body = employeesJson(salaryOrdered(action, request, department, limit), null);
+                
+            } else if (search) {
+                String limitParam = limit != null ? limit : "20";
+                List<Employee> employees = employeeDAO.searchEmployees(request.getParameter("q"), department,
+                        doubleParameter(request, "minSalary"), doubleParameter(request, "maxSalary"),
+                        Integer.parseInt(limitParam));
+                body = employeesJson(employees, null);
+                
             } else if ("avgSalary".equals(action) && department != null) {
                 double avgSalary = employeeDAO.getAverageSalary(department);
                 result.addProperty("success", true);
                 result.addProperty("data", avgSalary);
                 
+            } else if (ids != null) {
+                body = employeesJson(employeeDAO.getEmployeesByIds(parseIds(ids)), null);
+                
             } else if (id != null) {
                 Employee emp = employeeDAO.getEmployeeById(Integer.parseInt(id));
                 if (emp != null) {
@@ -61,20 +472,260 @@ public class EmployeeServlet extends HttpServlet {
                     result.addProperty("message", "Employee not found");
                 }
                 
+            } else if (afterId != null || limit != null) {
+                int after = afterId != null ? Integer.parseInt(afterId) : 0;
+                int pageSize = limit != null ? Integer.parseInt(limit) : DEFAULT_PAGE_SIZE;
+                List<Employee> employees = employeeDAO.getEmployeesPage(department, after, pageSize);
+                boolean more = employees.size() == Math.max(1, Math.min(pageSize, EmployeeDAO.MAX_PAGE_SIZE));
+                body = employeesJson(employees, more ? employees.get(employees.size() - 1).getId() : null);
+                
             } else if (department != null) {
-                List<Employee> employees = employeeDAO.getEmployeesByDepartment(department);
-                result.addProperty("success", true);
-                result.add("data", gson.toJsonTree(employees));
+                body = employeesJson(employeeDAO.getEmployeesByDepartment(department), null);
+                
+            } else if (cacheKey != null) {
+                cacheAllEmployees(request, response, cacheKey, version);
+                return;
                 
             } else {
-                List<Employee> employees = employeeDAO.getAllEmployees();
-                result.addProperty("success", true);
-                result.add("data", gson.toJsonTree(employees));
+                streamAllEmployees(response, response.getWriter());
+                return;
             }
             
-            out.write(gson.toJson(result));
+            String json = body != null ? body : gson.toJson(result);
+            if (cacheKey != null) {
+                byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+                writeCached(request, response, responseCache.put(cacheKey, version, bytes));
+            } else {
+                response.getWriter().write(json);
+            }
             
         } catch (Exception e) {
+            JsonObject error = new JsonObject();
+            error.addProperty("success", false);
+            error.addProperty("message", "Error: " + e.getMessage());
+            response.getWriter().write(gson.toJson(error));
+            response.setHeader("ETag", null);
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    // Tags the response with the table's data version and answers 304 when the client already has it.
+    // The version is read before any data, so a write that lands in between only costs one extra refetch.
+    private boolean notModified(HttpServletRequest request, HttpServletResponse response, long version) {
+        DataVersion dataVersion = employeeDAO.getDataVersion();
+        String etag = dataVersion.etag(version);
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", dataVersion.getLastModified());
+        // let clients keep the body but make them revalidate every time
+        response.setHeader("Cache-Control", "no-cache");
+        
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag) || tag.equals(gzipTag(etag)) || tag.equals("*")) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ?ids=1,2,3 with at most MAX_PAGE_SIZE ids
+    private static List<Integer> parseIds(String ids) {
+        List<Integer> parsed = new ArrayList<>();
+        for (String part : ids.split(",")) {
+            if (!part.trim().isEmpty()) {
+                parsed.add(Integer.parseInt(part.trim()));
+            }
+        }
+        if (parsed.size() > EmployeeDAO.MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("At most " + EmployeeDAO.MAX_PAGE_SIZE + " ids per request");
+        }
+        return parsed;
+    }
+
+    // ?action=topEarners|lowestEarners[&department=][&limit=10], or
+    // ?action=salaryRange[&minSalary=][&maxSalary=][&department=][&limit=100]
+    private List<Employee> salaryOrdered(String action, HttpServletRequest request, String department, String limit) {
+        if ("salaryRange".equals(action)) {
+            return employeeDAO.getEmployeesBySalaryRange(department, doubleParameter(request, "minSalary"),
+                    doubleParameter(request, "maxSalary"), limit != null ? Integer.parseInt(limit) : 100);
+        }
+        int n = limit != null ? Integer.parseInt(limit) : 10;
+        return "topEarners".equals(action)
+                ? employeeDAO.getTopEarners(department, n)
+                : employeeDAO.getLowestEarners(department, n);
+    }
+
+    // Key of the response cache entry for a GET, or null for responses that are not cached. Follows the
+    // dispatch order of doGet; by-id and paged reads are left to the employee cache and the database.
+    private static String cacheKey(String action, String department, String id, String afterId, String limit) {
+        if ("departments".equals(action) || "departmentStats".equals(action)) {
+            return action;
+        } else if (action != null && ANALYTICS_ACTIONS.contains(action)) {
+            return null;
+        } else if ("avgSalary".equals(action) && department != null) {
+            return "avgSalary:" + department;
+        } else if ("topEarners".equals(action) || "lowestEarners".equals(action)) {
+            return action + ":" + department + ":" + limit;
+        } else if ("salaryRange".equals(action)) {
+            return null;
+        } else if (id != null || afterId != null || limit != null) {
+            return null;
+        }
+        return department != null ? "department:" + department : "list";
+    }
+
+    // Writes a cached body as is, gzip-compressed when the client accepts it
+    private void writeCached(HttpServletRequest request, HttpServletResponse response, ResponseCache.CachedBody entry)
+            throws IOException {
+        byte[] body = entry.identity;
+        if (entry.gzip != null && acceptsGzip(request)) {
+            body = entry.gzip;
+            response.setHeader("Content-Encoding", "gzip");
+            // the compressed bytes are a different representation and need their own strong tag
+            response.setHeader("ETag", gzipTag(employeeDAO.getDataVersion().etag(entry.version)));
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    private static Double doubleParameter(HttpServletRequest request, String name) {
+        String value = request.getParameter(name);
+        return value != null && !value.isEmpty() ? Double.valueOf(value) : null;
+    }
+
+    private static String gzipTag(String etag) {
+        return etag.substring(0, etag.length() - 1) + "-gzip\"";
+    }
+
+    static boolean acceptsGzip(HttpServletRequest request) {
+        String accept = request.getHeader("Accept-Encoding");
+        if (accept == null) {
+            return false;
+        }
+        for (String part : accept.split(",")) {
+            String[] coding = part.trim().split(";");
+            String name = coding[0].trim();
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+                continue;
+            }
+            for (int i = 1; i < coding.length; i++) {
+                String param = coding[i].trim();
+                if (param.startsWith("q=") && Double.parseDouble(param.substring(2)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // Salary analytics over the in-memory columnar snapshot; department narrows any of them to one department
+    private JsonObject analyticsResult(String action, HttpServletRequest request, String department) {
+        SalarySnapshot snapshot = salaryAnalytics.getSnapshot();
+        JsonObject result = new JsonObject();
+        
+        if ("salaryStats".equals(action)) {
+            JsonArray data = new JsonArray();
+            for (String name : department != null ? new String[] { department } : snapshot.getDepartments()) {
+                double[] sorted = snapshot.sorted(name);
+                if (sorted.length == 0) {
+                    continue;
+                }
+                JsonObject stats = new JsonObject();
+                stats.addProperty("department", name);
+                stats.addProperty("count", sorted.length);
+                stats.addProperty("min", sorted[0]);
+                stats.addProperty("max", sorted[sorted.length - 1]);
+                stats.addProperty("median", SalarySnapshot.median(sorted));
+                stats.addProperty("mean", snapshot.sum(name) / sorted.length);
+                data.add(stats);
+            }
+            result.addProperty("success", true);
+            result.add("data", data);
+            result.addProperty("snapshotTime", snapshot.getCreatedAt());
+            return result;
+        }
+        
+        double[] sorted = snapshot.sorted(department);
+        if (sorted.length == 0) {
+            result.addProperty("success", false);
+            result.addProperty("message", "No salary data");
+            return result;
+        }
+        
+        JsonObject data = new JsonObject();
+        if ("percentiles".equals(action)) {
+            String p = request.getParameter("p");
+            for (String value : (p != null ? p : "50,90,95,99").split(",")) {
+                double percentile = Double.parseDouble(value.trim());
+                if (percentile < 0 || percentile > 100) {
+                    throw new IllegalArgumentException("Percentile out of range: " + value);
+                }
+                data.addProperty("p" + value.trim(), SalarySnapshot.percentile(sorted, percentile));
+            }
+            
+        } else if ("histogram".equals(action)) {
+            String buckets = request.getParameter("buckets");
+            int n = Math.max(1, Math.min(buckets != null ? Integer.parseInt(buckets) : 10, 1000));
+            data.addProperty("min", sorted[0]);
+            data.addProperty("max", sorted[sorted.length - 1]);
+            data.addProperty("bucketWidth", (sorted[sorted.length - 1] - sorted[0]) / n);
+            data.add("counts", gson.toJsonTree(SalarySnapshot.histogram(sorted, n)));
+            
+        } else {
+            String bands = request.getParameter("bands");
+            if (bands == null) {
+                throw new IllegalArgumentException("bands is required, e.g. bands=0,50000,100000");
+            }
+            String[] parts = bands.split(",");
+            double[] bounds = new double[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                bounds[i] = Double.parseDouble(parts[i].trim());
+                if (i > 0 && bounds[i] <= bounds[i - 1]) {
+                    throw new IllegalArgumentException("bands must be ascending");
+                }
+            }
+            long[] counts = SalarySnapshot.bandCounts(sorted, bounds);
+            JsonArray list = new JsonArray();
+            for (int i = 0; i < bounds.length; i++) {
+                JsonObject band = new JsonObject();
+                band.addProperty("from", bounds[i]);
+                if (i + 1 < bounds.length) {
+                    band.addProperty("to", bounds[i + 1]);
+                }
+                band.addProperty("count", counts[i]);
+                list.add(band);
+            }
+            data.add("bands", list);
+        }
+        
+        result.addProperty("success", true);
+        result.add("data", data);
+        result.addProperty("snapshotTime", snapshot.getCreatedAt());
+        return result;
+    }
+
+    // Writes the full list row by row as it comes off the cursor instead of building it in memory first
+    private void streamAllEmployees(HttpServletResponse response, PrintWriter out) throws Exception {
+        try {
+            writeEmployeeList(out);
+        } catch (Exception e) {
+            if (response.isCommitted()) {
+                // Part of the body is already on the wire; the client sees a truncated document
+                e.printStackTrace();
+                return;
+            }
+            // Nothing has reached the client yet, so the normal error response can still be sent
+            response.resetBuffer();
+            response.setHeader("ETag", null);
             JsonObject error = new JsonObject();
             error.addProperty("success", false);
             error.addProperty("message", "Error: " + e.getMessage());
@@ -83,6 +734,71 @@ public class EmployeeServlet extends HttpServlet {
         }
     }
 
+    // Renders the full list into the response cache. A list too large to cache is streamed to the client
+    // as it is rendered, so memory stays bounded either way. Concurrent misses for the same version wait
+    // for one rendering instead of each reading the whole table.
+    private void cacheAllEmployees(HttpServletRequest request, HttpServletResponse response, String cacheKey,
+                                   long version) throws Exception {
+        boolean[] streamed = { false };
+        Callable<ResponseCache.CachedBody> render = () -> {
+            ResponseCache.SpillingOutputStream body = new ResponseCache.SpillingOutputStream(
+                    responseCache.getMaxBodyBytes(), response::getOutputStream);
+            try {
+                // JsonWriter emits many tiny writes; buffer them rather than encoding each one separately
+                writeEmployeeList(new BufferedWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8), 8192));
+            } catch (Exception e) {
+                if (body.isSpilled()) {
+                    streamed[0] = true;
+                    e.printStackTrace();
+                    return null;
+                }
+                throw e;
+            }
+            streamed[0] = body.isSpilled();
+            return streamed[0] ? null : responseCache.put(cacheKey, version, body.toByteArray());
+        };
+        SingleFlight singleFlight = employeeDAO.getSingleFlight();
+        ResponseCache.CachedBody entry = singleFlight != null
+                ? singleFlight.execute("renderEmployeeList", cacheKey + "@" + version, render)
+                : render.call();
+        if (entry != null) {
+            writeCached(request, response, entry);
+        } else if (!streamed[0]) {
+            // waited on a rendering that was too large to share
+            streamAllEmployees(response, response.getWriter());
+        }
+    }
+
+    private void writeEmployeeList(Writer out) throws Exception {
+        JsonWriter writer = gson.newJsonWriter(out);
+        writer.beginObject();
+        writer.name("success").value(true);
+        writer.name("data").beginArray();
+        employeeDAO.streamAllEmployees(emp -> EMPLOYEE_ADAPTER.write(writer, emp));
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+    }
+
+    // {"success":true,"data":[...]} for a list of employees, encoded without an intermediate JsonElement tree
+    private String employeesJson(List<Employee> employees, Integer nextAfterId) throws IOException {
+        StringWriter out = new StringWriter(64 + employees.size() * 80);
+        JsonWriter writer = gson.newJsonWriter(out);
+        writer.beginObject();
+        writer.name("success").value(true);
+        writer.name("data").beginArray();
+        for (Employee emp : employees) {
+            EMPLOYEE_ADAPTER.write(writer, emp);
+        }
+        writer.endArray();
+        if (nextAfterId != null) {
+            writer.name("nextAfterId").value(nextAfterId);
+        }
+        writer.endObject();
+        writer.flush();
+        return out.toString();
+    }
+
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response)
             throws IOException {
@@ -93,6 +809,11 @@ public class EmployeeServlet extends HttpServlet {
         PrintWriter out = response.getWriter();
         
         try {
+            if ("bulk".equals(request.getParameter("action"))) {
+                writeBulkResult(request, response, out, true);
+                return;
+            }
+            
             StringBuilder sb = new StringBuilder();
             try (BufferedReader reader = request.getReader()) {
                 String line;
@@ -135,6 +856,15 @@ public class EmployeeServlet extends HttpServlet {
         PrintWriter out = response.getWriter();
         
         try {
+            if ("bulk".equals(request.getParameter("action"))) {
+                writeBulkResult(request, response, out, false);
+                return;
+            }
+            if ("adjustSalaries".equals(request.getParameter("action"))) {
+                writeAdjustmentResult(request, out);
+                return;
+            }
+            
             StringBuilder sb = new StringBuilder();
             try (BufferedReader reader = request.getReader()) {
                 String line;
@@ -166,6 +896,51 @@ public class EmployeeServlet extends HttpServlet {
         }
     }
 
+    // One salary change for a department and/or salary band, e.g. {"department":"IT","percent":5,"cap":150000},
+    // applied set-based; ?chunkSize= splits it into transactions over that many ids each
+    private void writeAdjustmentResult(HttpServletRequest request, PrintWriter out) throws IOException {
+        SalaryAdjustment adjustment = gson.fromJson(request.getReader(), SalaryAdjustment.class);
+        if (adjustment == null) {
+            throw new IllegalArgumentException("An adjustment is required");
+        }
+        String chunkSize = request.getParameter("chunkSize");
+        SalaryAdjustmentResult adjusted = employeeDAO.adjustSalaries(adjustment,
+                chunkSize != null ? Integer.parseInt(chunkSize) : 0);
+        
+        JsonObject result = new JsonObject();
+        result.addProperty("success", adjusted.isComplete());
+        result.addProperty("message", adjusted.isComplete()
+                ? "Adjusted " + adjusted.getAffected() + " salaries"
+                : "Adjustment stopped after " + adjusted.getAffected() + " salaries");
+        result.add("data", gson.toJsonTree(adjusted));
+        out.write(gson.toJson(result));
+    }
+
+    // Bulk insert (POST) or update (PUT) of a JSON array of employees, batched in chunks of ?chunkSize= rows
+    private void writeBulkResult(HttpServletRequest request, HttpServletResponse response, PrintWriter out,
+                                 boolean insert) throws IOException {
+        List<Employee> employees = gson.fromJson(request.getReader(), EMPLOYEE_LIST_TYPE);
+        if (employees == null) {
+            employees = new ArrayList<>();
+        }
+        String chunkSize = request.getParameter("chunkSize");
+        int size = chunkSize != null ? Integer.parseInt(chunkSize) : EmployeeDAO.DEFAULT_BATCH_CHUNK_SIZE;
+        
+        BatchResult batch = insert
+                ? employeeDAO.addEmployees(employees, size)
+                : employeeDAO.updateEmployees(employees, size);
+        
+        JsonObject result = new JsonObject();
+        result.addProperty("success", batch.getFailed() == 0);
+        result.addProperty("message", batch.getSucceeded() + " of " + employees.size() + " employees "
+                + (insert ? "added" : "updated"));
+        result.add("data", gson.toJsonTree(batch));
+        if (insert && batch.getSucceeded() > 0) {
+            response.setStatus(HttpServletResponse.SC_CREATED);
+        }
+        out.write(gson.toJson(result));
+    }
+
     @Override
     protected void doDelete(HttpServletRequest request, HttpServletResponse response)
             throws IOException {
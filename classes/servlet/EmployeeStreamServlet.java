@@ -0,0 +1,338 @@
+package servlet;
+
+import dao.ChangeFeed;
+import dao.EmployeeDAO;
+import metrics.Metrics;
+import model.Employee;
+import model.EmployeeTypeAdapter;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Live change feed as Server-Sent Events:
+//   GET /api/employees/stream   event: inserted|updated|deleted with the employee as data, or resync
+// Connections are held with AsyncContext and written with non-blocking I/O, so an idle client costs a
+// small queue rather than a thread. Each change is encoded once and offered to every client's bounded
+// queue. A client whose queue fills up gets a single resync event in place of what it missed. One that
+// makes no progress for sse.stallTimeoutMs is disconnected.
+@WebServlet(value = "/api/employees/stream", asyncSupported = true)
+public class EmployeeStreamServlet extends HttpServlet implements ChangeFeed.Subscriber {
+    private ChangeFeed feed;
+    private Gson gson;
+    private ScheduledExecutorService heartbeat;
+    private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+
+    private int maxClients;
+    private int clientQueue;
+    private long stallTimeoutMs;
+
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong resyncs = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private static final byte[] PING = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+
+    @Override
+    public void init() {
+        feed = EmployeeDAO.sharedChangeFeed();
+        gson = new GsonBuilder().registerTypeAdapter(Employee.class, new EmployeeTypeAdapter()).create();
+        maxClients = Integer.getInteger("sse.maxClients", 10000);
+        clientQueue = Integer.getInteger("sse.clientQueue", 256);
+        stallTimeoutMs = Long.getLong("sse.stallTimeoutMs", 30000L);
+        if (feed != null) {
+            feed.subscribe(this);
+        }
+
+        long heartbeatMs = Long.getLong("sse.heartbeatMs", 15000L);
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "employee-stream-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        heartbeat.scheduleWithFixedDelay(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+
+        Metrics metrics = Metrics.get();
+        metrics.registerGauge("ems_sse_clients", "Connected change stream clients", clients::size);
+        metrics.registerGauge("ems_sse_connections", "Change stream connections accepted", connections::get);
+        metrics.registerGauge("ems_sse_resyncs", "Resync events sent to clients that fell behind", resyncs::get);
+        metrics.registerGauge("ems_sse_dropped", "Change stream clients disconnected for stalling", dropped::get);
+        if (feed != null) {
+            metrics.registerGauge("ems_events_published", "Employee change events published", feed::getPublished);
+            metrics.registerGauge("ems_events_overflows", "Times the change feed dispatcher fell behind",
+                    feed::getOverflows);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (feed != null) {
+            feed.unsubscribe(this);
+        }
+        heartbeat.shutdownNow();
+        for (Client client : clients) {
+            client.close();
+        }
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+
+        response.setHeader("Access-Control-Allow-Origin", "*");
+        if (feed == null || clients.size() >= maxClients) {
+            response.setContentType("application/json");
+            response.setCharacterEncoding("UTF-8");
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", "5");
+            JsonObject error = new JsonObject();
+            error.addProperty("success", false);
+            error.addProperty("message", feed == null ? "Change events are disabled" : "Too many stream clients");
+            response.getWriter().write(gson.toJson(error));
+            return;
+        }
+        long lastEventId = lastEventId(request);
+
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        // ask proxies such as nginx not to buffer the stream
+        response.setHeader("X-Accel-Buffering", "no");
+
+        AsyncContext async = request.startAsync();
+        async.setTimeout(0);
+        ServletOutputStream out = response.getOutputStream();
+        Client client = new Client(async, out);
+        async.addListener(client);
+        out.setWriteListener(client);
+        connections.incrementAndGet();
+
+        // Nothing is fanned out while the client is caught up, so it sees every event exactly once and in order
+        synchronized (this) {
+            long current = feed.getLastEventId();
+            boolean catchingUp = lastEventId >= 0 && lastEventId != current;
+            // ids restart with the server, so an id from the future means the client must start over
+            long readyId = catchingUp && lastEventId < current ? lastEventId : current;
+            client.enqueue(("retry: 3000\nid: " + readyId + "\nevent: ready\ndata: {\"lastEventId\":" + readyId
+                    + "}\n\n").getBytes(StandardCharsets.UTF_8));
+            if (catchingUp) {
+                List<ChangeFeed.Event> missed = lastEventId < current ? feed.eventsAfter(lastEventId) : null;
+                if (missed == null) {
+                    client.offer(current, resync(current));
+                } else {
+                    for (ChangeFeed.Event event : missed) {
+                        client.offer(event.getId(), encode(event));
+                    }
+                }
+            }
+            client.caughtUpTo(current);
+            clients.add(client);
+        }
+        client.drain();
+    }
+
+    // Last-Event-ID is sent by EventSource when it reconnects; ?lastEventId= does the same for other clients
+    private static long lastEventId(HttpServletRequest request) {
+        String value = request.getHeader("Last-Event-ID");
+        if (value == null) {
+            value = request.getParameter("lastEventId");
+        }
+        try {
+            return value != null ? Long.parseLong(value.trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Called on the feed's dispatcher thread
+    @Override
+    public synchronized void onEvent(ChangeFeed.Event event) {
+        if (clients.isEmpty()) {
+            return;
+        }
+        byte[] bytes = encode(event);
+        for (Client client : clients) {
+            client.offer(event.getId(), bytes);
+            client.drain();
+        }
+    }
+
+    private byte[] encode(ChangeFeed.Event event) {
+        if (event.getType() == ChangeFeed.Type.RESYNC) {
+            return resync(event.getId());
+        }
+        String data = gson.toJson(event.getEmployee(), Employee.class);
+        return ("id: " + event.getId() + "\nevent: " + event.getType().name().toLowerCase(Locale.ROOT)
+                + "\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] resync(long id) {
+        return ("id: " + id + "\nevent: resync\ndata: {}\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Keeps idle connections (and proxies in between) alive, notices dead ones and drops stalled clients
+    private void heartbeat() {
+        long now = System.currentTimeMillis();
+        for (Client client : clients) {
+            if (client.stalledSince(now) > stallTimeoutMs) {
+                dropped.incrementAndGet();
+                client.close();
+            } else {
+                client.ping();
+                client.drain();
+            }
+        }
+    }
+
+    private final class Client implements WriteListener, AsyncListener {
+        private final AsyncContext async;
+        private final ServletOutputStream out;
+        private final ArrayDeque<byte[]> queue = new ArrayDeque<>();
+        // id of the newest event this client has been given
+        private long lastId = -1;
+        private boolean resyncQueued;
+        private long lastProgress = System.currentTimeMillis();
+        private boolean closed;
+
+        Client(AsyncContext async, ServletOutputStream out) {
+            this.async = async;
+            this.out = out;
+        }
+
+        synchronized void enqueue(byte[] bytes) {
+            queue.addLast(bytes);
+        }
+
+        synchronized void caughtUpTo(long id) {
+            lastId = Math.max(lastId, id);
+        }
+
+        // Queues an event unless the client has already been given it. When the queue is full, everything
+        // waiting is replaced by a resync, and further events are skipped until the client has read it.
+        synchronized void offer(long id, byte[] event) {
+            if (closed || id <= lastId) {
+                return;
+            }
+            lastId = id;
+            if (resyncQueued) {
+                return;
+            }
+            if (queue.size() >= clientQueue) {
+                queue.clear();
+                queue.addLast(resync(id));
+                resyncQueued = true;
+                resyncs.incrementAndGet();
+            } else {
+                queue.addLast(event);
+            }
+        }
+
+        synchronized void ping() {
+            if (queue.isEmpty()) {
+                queue.addLast(PING);
+            }
+        }
+
+        // Writes as much as the connection takes without blocking; the container calls onWritePossible
+        // when it can take more
+        synchronized void drain() {
+            if (closed) {
+                return;
+            }
+            try {
+                boolean wrote = false;
+                while (!queue.isEmpty() && out.isReady()) {
+                    out.write(queue.pollFirst());
+                    wrote = true;
+                }
+                if (queue.isEmpty()) {
+                    resyncQueued = false;
+                    lastProgress = System.currentTimeMillis();
+                    if (wrote && out.isReady()) {
+                        out.flush();
+                    }
+                } else if (wrote) {
+                    lastProgress = System.currentTimeMillis();
+                }
+            } catch (IOException | IllegalStateException e) {
+                close();
+            }
+        }
+
+        // How long the client has had data waiting without taking any of it
+        synchronized long stalledSince(long now) {
+            return queue.isEmpty() ? 0 : now - lastProgress;
+        }
+
+        void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                queue.clear();
+            }
+            clients.remove(this);
+            try {
+                async.complete();
+            } catch (IllegalStateException e) {
+                // already completed by the container
+            }
+        }
+
+        @Override
+        public void onWritePossible() {
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            close();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+
+    @Override
+    protected void doOptions(HttpServletRequest request, HttpServletResponse response) {
+        response.setHeader("Access-Control-Allow-Origin", "*");
+        response.setHeader("Access-Control-Allow-Methods", "GET, OPTIONS");
+        response.setHeader("Access-Control-Allow-Headers", "Last-Event-ID");
+    }
+}
@@ -0,0 +1,382 @@
+package servlet;
+
+import dao.EmployeeDAO;
+import dao.EmployeeImporter;
+import dao.ImportResult;
+import metrics.Metrics;
+import model.Employee;
+import model.EmployeeTypeAdapter;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Bulk data transfer for migrations and backups:
+//   GET  /api/employees/export?format=csv|ndjson  streams the table straight from a JDBC cursor
+//   POST /api/employees/import?format=csv|ndjson  parses the upload line by line and writes it in
+//                                                 multi-row inserts through an EmployeeImporter
+// Neither side ever holds more than a few chunks of rows in memory.
+@WebServlet({ "/api/employees/export", "/api/employees/import" })
+public class EmployeeTransferServlet extends HttpServlet {
+    private EmployeeDAO employeeDAO;
+    private Gson gson;
+
+    // A quoted CSV field may span lines, but one record may not grow past this
+    private static final int MAX_RECORD_LENGTH = 64 * 1024;
+
+    @Override
+    public void init() {
+        employeeDAO = new EmployeeDAO();
+        gson = new GsonBuilder().registerTypeAdapter(Employee.class, new EmployeeTypeAdapter()).create();
+    }
+
+    // commits this DAO's queued updates and stops its write-behind and loader threads
+    @Override
+    public void destroy() {
+        employeeDAO.shutdown();
+    }
+
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        MeteredResponse metered = new MeteredResponse(response);
+        boolean failed = true;
+        try {
+            ReadYourWrites.begin(request, metered);
+            super.service(request, metered);
+            failed = metered.getStatus() >= 400;
+        } finally {
+            ReadYourWrites.end();
+            String operation = request.getServletPath().endsWith("/import") ? "import" : "export";
+            Metrics.get().recordRequest(operation, System.nanoTime() - start, metered.getBytesWritten(), failed);
+        }
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+
+        if (!request.getServletPath().endsWith("/export")) {
+            response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            return;
+        }
+        boolean csv = !"ndjson".equals(request.getParameter("format"));
+        response.setContentType(csv ? "text/csv" : "application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Access-Control-Allow-Origin", "*");
+        response.setHeader("Content-Disposition", "attachment; filename=\"employees." + (csv ? "csv" : "ndjson") + "\"");
+        PrintWriter out = response.getWriter();
+
+        try {
+            if (csv) {
+                out.write("id,name,department,salary\n");
+            }
+            StringBuilder line = new StringBuilder(128);
+            employeeDAO.streamAllEmployees(emp -> {
+                line.setLength(0);
+                if (csv) {
+                    line.append(emp.getId()).append(',');
+                    appendCsvField(line, emp.getName());
+                    line.append(',');
+                    appendCsvField(line, emp.getDepartment());
+                    line.append(',').append(emp.getSalary());
+                } else {
+                    gson.toJson(emp, Employee.class, line);
+                }
+                out.write(line.append('\n').toString());
+            });
+            out.flush();
+
+        } catch (Exception e) {
+            if (response.isCommitted()) {
+                // Part of the file is already on the wire; the client sees a truncated download
+                e.printStackTrace();
+                return;
+            }
+            response.resetBuffer();
+            response.setContentType("application/json");
+            response.setHeader("Content-Disposition", null);
+            JsonObject error = new JsonObject();
+            error.addProperty("success", false);
+            error.addProperty("message", "Error: " + e.getMessage());
+            out.write(gson.toJson(error));
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+
+        if (!request.getServletPath().endsWith("/import")) {
+            response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            return;
+        }
+        String format = request.getParameter("format");
+        if (format == null) {
+            String contentType = request.getContentType();
+            format = contentType != null && contentType.contains("ndjson") ? "ndjson" : "csv";
+        }
+        String chunkSize = request.getParameter("chunkSize");
+        int size;
+        try {
+            size = chunkSize != null ? Integer.parseInt(chunkSize) : EmployeeDAO.DEFAULT_BATCH_CHUNK_SIZE;
+        } catch (NumberFormatException e) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid chunkSize: " + chunkSize);
+            return;
+        }
+
+        // Parsing and writing overlap; the bounded queue inside the importer throttles the upload
+        EmployeeImporter importer = new EmployeeImporter(employeeDAO, size,
+                Integer.getInteger("import.maxPendingChunks", 4));
+        try (BufferedReader reader = request.getReader()) {
+            if ("ndjson".equals(format)) {
+                importNdjson(reader, importer);
+            } else {
+                importCsv(reader, importer);
+            }
+            ImportResult imported = importer.finish();
+
+            response.setContentType("application/json");
+            response.setCharacterEncoding("UTF-8");
+            response.setHeader("Access-Control-Allow-Origin", "*");
+            JsonObject result = new JsonObject();
+            result.addProperty("success", imported.getRejected() == 0);
+            result.addProperty("message", imported.getImported() + " employees imported, "
+                    + imported.getRejected() + " lines rejected");
+            result.add("data", gson.toJsonTree(imported));
+            if (imported.getImported() > 0) {
+                response.setStatus(HttpServletResponse.SC_CREATED);
+            }
+            response.getWriter().write(gson.toJson(result));
+
+        } catch (Exception e) {
+            importer.close();
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, "Error: " + e.getMessage());
+        }
+    }
+
+    private void writeError(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Access-Control-Allow-Origin", "*");
+        JsonObject error = new JsonObject();
+        error.addProperty("success", false);
+        error.addProperty("message", message);
+        response.getWriter().write(gson.toJson(error));
+    }
+
+    private void importNdjson(BufferedReader reader, EmployeeImporter importer) throws IOException, InterruptedException {
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            Employee emp;
+            try {
+                emp = gson.fromJson(line, Employee.class);
+            } catch (JsonParseException e) {
+                importer.reject(lineNumber, "Invalid JSON: " + e.getMessage());
+                continue;
+            }
+            if (emp == null || emp.getName() == null || emp.getDepartment() == null) {
+                importer.reject(lineNumber, "Name and department are required");
+                continue;
+            }
+            importer.add(lineNumber, emp);
+        }
+    }
+
+    // Columns are taken from a header line when there is one (any order, id ignored); without a header
+    // the layout is either name,department,salary or the export's id,name,department,salary
+    private void importCsv(BufferedReader reader, EmployeeImporter importer) throws IOException, InterruptedException {
+        long[] lineNumber = { 0 };
+        int nameCol = -1;
+        int deptCol = -1;
+        int salaryCol = -1;
+        boolean first = true;
+
+        while (true) {
+            long recordLine = lineNumber[0] + 1;
+            List<String> fields;
+            try {
+                fields = readCsvRecord(reader, lineNumber);
+            } catch (IllegalArgumentException e) {
+                importer.reject(recordLine, e.getMessage());
+                continue;
+            }
+            if (fields == null) {
+                return;
+            }
+            if (fields.size() == 1 && fields.get(0).trim().isEmpty()) {
+                continue;
+            }
+            if (first) {
+                first = false;
+                List<String> lower = new ArrayList<>();
+                for (String field : fields) {
+                    lower.add(field.trim().toLowerCase(Locale.ROOT));
+                }
+                if (lower.contains("name")) {
+                    nameCol = lower.indexOf("name");
+                    deptCol = lower.indexOf("department");
+                    salaryCol = lower.indexOf("salary");
+                    if (deptCol < 0 || salaryCol < 0) {
+                        throw new IllegalArgumentException("Header must have name, department and salary columns");
+                    }
+                    continue;
+                }
+                int offset = fields.size() >= 4 ? 1 : 0;
+                nameCol = offset;
+                deptCol = offset + 1;
+                salaryCol = offset + 2;
+            }
+
+            int needed = Math.max(nameCol, Math.max(deptCol, salaryCol)) + 1;
+            if (fields.size() < needed) {
+                importer.reject(recordLine, "Expected " + needed + " columns, found " + fields.size());
+                continue;
+            }
+            String name = fields.get(nameCol).trim();
+            String department = fields.get(deptCol).trim();
+            if (name.isEmpty() || department.isEmpty()) {
+                importer.reject(recordLine, "Name and department are required");
+                continue;
+            }
+            double salary;
+            try {
+                salary = Double.parseDouble(fields.get(salaryCol).trim());
+            } catch (NumberFormatException e) {
+                importer.reject(recordLine, "Invalid salary: " + fields.get(salaryCol));
+                continue;
+            }
+            importer.add(recordLine, new Employee(name, department, salary));
+        }
+    }
+
+    // Reads one RFC 4180 record: fields separated by commas, optionally quoted, "" for a quote inside a
+    // quoted field, and line breaks allowed inside quotes. Returns null at end of input.
+    static List<String> readCsvRecord(BufferedReader reader, long[] lineNumber) throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            return null;
+        }
+        lineNumber[0]++;
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int length = line.length();
+
+        for (int i = 0; ; i++) {
+            if (i == length) {
+                if (!quoted) {
+                    break;
+                }
+                // the quoted field continues on the next line
+                line = reader.readLine();
+                if (line == null) {
+                    throw new IllegalArgumentException("Unterminated quoted field");
+                }
+                lineNumber[0]++;
+                field.append('\n');
+                if (field.length() + line.length() > MAX_RECORD_LENGTH) {
+                    skipRestOfRecord(reader, line, lineNumber);
+                    throw new IllegalArgumentException("Record longer than " + MAX_RECORD_LENGTH + " characters");
+                }
+                length = line.length();
+                i = -1;
+                continue;
+            }
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < length && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    // Consumes lines until the open quote closes so the next record starts on a clean line
+    private static void skipRestOfRecord(BufferedReader reader, String line, long[] lineNumber) throws IOException {
+        boolean quoted = true;
+        while (line != null) {
+            for (int i = 0; i < line.length(); i++) {
+                if (line.charAt(i) == '"') {
+                    quoted = !quoted;
+                }
+            }
+            if (!quoted) {
+                return;
+            }
+            line = reader.readLine();
+            if (line != null) {
+                lineNumber[0]++;
+            }
+        }
+    }
+
+    static void appendCsvField(StringBuilder out, String value) {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+
+    @Override
+    protected void doOptions(HttpServletRequest request, HttpServletResponse response) {
+        response.setHeader("Access-Control-Allow-Origin", "*");
+        response.setHeader("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
+        response.setHeader("Access-Control-Allow-Headers", "Content-Type");
+    }
+}
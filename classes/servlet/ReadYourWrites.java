@@ -0,0 +1,61 @@
+package servlet;
+
+import db.DBConnection;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+// Read-your-writes across requests when reads go to replicas. A write leaves a short-lived cookie with
+// its time. While that cookie is fresh, the same client's reads are pinned to the primary, so it never
+// sees a replica that has not caught up with its own change.
+final class ReadYourWrites {
+
+    static final String COOKIE = "ems_last_write";
+
+    private ReadYourWrites() {}
+
+    // Call on the thread that will do the request's database work, before any of it
+    static void begin(HttpServletRequest request, HttpServletResponse response) {
+        if (DBConnection.getReplicas() == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long window = DBConnection.getStickyMs();
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method) && !"OPTIONS".equals(method)) {
+            // set before the body is written, while headers can still be added
+            Cookie cookie = new Cookie(COOKIE, String.valueOf(now));
+            cookie.setMaxAge((int) Math.max(1, (window + 999) / 1000));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            response.addCookie(cookie);
+            return;
+        }
+        long lastWrite = lastWrite(request);
+        if (lastWrite > 0 && now - lastWrite < window) {
+            DBConnection.readFromPrimaryUntil(lastWrite + window);
+        }
+    }
+
+    static void end() {
+        DBConnection.readFromPrimaryUntil(0);
+    }
+
+    private static long lastWrite(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return 0;
+        }
+        for (Cookie cookie : cookies) {
+            if (COOKIE.equals(cookie.getName())) {
+                try {
+                    return Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+}
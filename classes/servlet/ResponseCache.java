@@ -0,0 +1,147 @@
+package servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+// Finished response bodies, as UTF-8 bytes and gzip-compressed, keyed by the request they answer and
+// stamped with the data version they were built from. An entry is only served while the table is still
+// at that version, so any write invalidates every entry without having to know which ones it affected.
+class ResponseCache {
+
+    // Bodies smaller than this are not worth a gzip header and the client's inflate call
+    private static final int MIN_GZIP_BYTES = 1024;
+
+    static final class CachedBody {
+        final long version;
+        final byte[] identity;
+        final byte[] gzip;
+
+        CachedBody(long version, byte[] identity, byte[] gzip) {
+            this.version = version;
+            this.identity = identity;
+            this.gzip = gzip;
+        }
+    }
+
+    private final int maxEntries;
+    private final int maxBodyBytes;
+    private final LinkedHashMap<String, CachedBody> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    ResponseCache(int maxEntries, int maxBodyBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBodyBytes = maxBodyBytes;
+        this.entries = new LinkedHashMap<String, CachedBody>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedBody> eldest) {
+                return size() > ResponseCache.this.maxEntries;
+            }
+        };
+    }
+
+    static ResponseCache fromSystemProperties() {
+        return new ResponseCache(
+                Integer.getInteger("response.cache.maxEntries", 256),
+                Integer.getInteger("response.cache.maxBodyBytes", 16 * 1024 * 1024));
+    }
+
+    int getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    synchronized CachedBody get(String key, long version) {
+        CachedBody entry = entries.get(key);
+        if (entry == null || entry.version != version) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry;
+    }
+
+    // Compresses the body once and keeps both variants; never replaces an entry built from a newer version
+    CachedBody put(String key, long version, byte[] body) throws IOException {
+        byte[] gzip = null;
+        if (body.length >= MIN_GZIP_BYTES) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+            try (GZIPOutputStream out = new GZIPOutputStream(compressed, 8192)) {
+                out.write(body);
+            }
+            gzip = compressed.toByteArray();
+        }
+        CachedBody entry = new CachedBody(version, body, gzip);
+        synchronized (this) {
+            CachedBody current = entries.get(key);
+            if (current == null || current.version <= version) {
+                entries.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    long getHits() { return hits.get(); }
+    long getMisses() { return misses.get(); }
+
+    // Collects a body in memory for the cache. Once it grows past the limit it stops buffering: what it
+    // has is written to the real response stream and the rest passes straight through, uncached.
+    static final class SpillingOutputStream extends OutputStream {
+        interface Target {
+            OutputStream open() throws IOException;
+        }
+
+        private final int limit;
+        private final Target target;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+        private OutputStream spilled;
+
+        SpillingOutputStream(int limit, Target target) {
+            this.limit = limit;
+            this.target = target;
+        }
+
+        boolean isSpilled() {
+            return spilled != null;
+        }
+
+        byte[] toByteArray() {
+            return buffer.toByteArray();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (spilled == null && buffer.size() + len > limit) {
+                spilled = target.open();
+                buffer.writeTo(spilled);
+                buffer = null;
+            }
+            if (spilled != null) {
+                spilled.write(b, off, len);
+            } else {
+                buffer.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (spilled != null) {
+                spilled.flush();
+            }
+        }
+    }
+}